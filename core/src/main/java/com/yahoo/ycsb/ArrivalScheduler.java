@@ -0,0 +1,207 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.util.Properties;
+
+/**
+ * Generates the intended start times of the operations of one client thread for a target
+ * throughput, which may vary over the run (see {@link RateProfile}). The schedule only depends
+ * on the start time, the profile and the inter-arrival distribution, never on when earlier
+ * operations completed, so an operation that runs late does not push
+ * back the ones after it: they are issued as soon as possible and their intended start time
+ * (see {@link com.yahoo.ycsb.measurements.Measurements#setIntendedStartTimeNs(long)})
+ * still reflects the schedule, exposing the queueing delay.
+ *
+ * Each instance is used by a single client thread and is not thread safe.
+ */
+public abstract class ArrivalScheduler
+{
+  /**
+   * The distribution of the time between operations: "constant" (fixed ticks), "poisson"
+   * (exponential inter-arrival times) or "bursty" (Poisson arrivals of bursts of operations).
+   */
+  public static final String ARRIVAL_DISTRIBUTION_PROPERTY="arrivaldistribution";
+  public static final String ARRIVAL_DISTRIBUTION_PROPERTY_DEFAULT="constant";
+
+  /**
+   * The number of operations scheduled at the same instant by the "bursty" distribution.
+   */
+  public static final String BURST_SIZE_PROPERTY="arrival.burstsize";
+  public static final String BURST_SIZE_PROPERTY_DEFAULT="10";
+
+  private final RateProfile _profile;
+
+  /** The fraction of the profile's throughput this thread is responsible for. */
+  private final double _share;
+
+  private long _start;
+
+  /** Intended start time of the last scheduled operation; a double so ticks don't drift. */
+  private double _next;
+
+  /** The generation of the profile the schedule follows, see {@link RateProfile#setRate(double)}. */
+  private int _generation;
+
+  protected ArrivalScheduler(RateProfile profile, double share)
+  {
+    _profile=profile;
+    _share=share;
+  }
+
+  /**
+   * Create the scheduler selected by the properties.
+   *
+   * @param profile The target throughput of all threads together.
+   * @param share The fraction of that throughput this thread is responsible for.
+   */
+  public static ArrivalScheduler create(Properties props, RateProfile profile, double share)
+  {
+    String distribution=props.getProperty(ARRIVAL_DISTRIBUTION_PROPERTY, ARRIVAL_DISTRIBUTION_PROPERTY_DEFAULT);
+    if (distribution.equals("constant"))
+    {
+      return new Constant(profile, share);
+    }
+    else if (distribution.equals("poisson"))
+    {
+      return new Poisson(profile, share);
+    }
+    else if (distribution.equals("bursty"))
+    {
+      int burstsize=Integer.parseInt(props.getProperty(BURST_SIZE_PROPERTY, BURST_SIZE_PROPERTY_DEFAULT));
+      return new Bursty(profile, share, burstsize);
+    }
+    throw new IllegalArgumentException("unknown "+ARRIVAL_DISTRIBUTION_PROPERTY+"="+distribution);
+  }
+
+  /**
+   * Start the schedule; the first operation is intended to start at the given time.
+   */
+  public void start(long startTimeNanos)
+  {
+    _start=startTimeNanos;
+    _next=startTimeNanos;
+    _generation=_profile.getGeneration();
+  }
+
+  /**
+   * Advance the schedule by one operation.
+   *
+   * @return The intended start time (in System.nanoTime() terms) of the next operation,
+   * or -1 if the profile has ended.
+   */
+  public long nextIntendedStartNs()
+  {
+    int generation=_profile.getGeneration();
+    if (generation!=_generation)
+    {
+      // the target was changed: operations we are behind on at the old rate are dropped,
+      // the new rate is followed from now on
+      _generation=generation;
+      _next=Math.max(_next, System.nanoTime());
+    }
+    double rate=_profile.rateAt((long)_next-_start)*_share;
+    if (rate<=0)
+    {
+      return -1;
+    }
+    _next+=nextGapNs(1000000000/rate);
+    if ((long)_next-_start>=_profile.getDurationNs())
+    {
+      return -1;
+    }
+    return (long)_next;
+  }
+
+  /**
+   * The time between the last scheduled operation and the next one.
+   *
+   * @param meanGapNs The mean time between operations at the current target throughput.
+   */
+  protected abstract double nextGapNs(double meanGapNs);
+
+  /**
+   * An exponentially distributed gap with the given mean.
+   */
+  static double exponential(double mean)
+  {
+    return -mean*Math.log(1.0-Utils.random().nextDouble());
+  }
+
+  /**
+   * Operations at fixed ticks.
+   */
+  static class Constant extends ArrivalScheduler
+  {
+    Constant(RateProfile profile, double share)
+    {
+      super(profile, share);
+    }
+
+    protected double nextGapNs(double meanGapNs)
+    {
+      return meanGapNs;
+    }
+  }
+
+  /**
+   * Operations arriving as a Poisson process.
+   */
+  static class Poisson extends ArrivalScheduler
+  {
+    Poisson(RateProfile profile, double share)
+    {
+      super(profile, share);
+    }
+
+    protected double nextGapNs(double meanGapNs)
+    {
+      return exponential(meanGapNs);
+    }
+  }
+
+  /**
+   * Bursts of operations scheduled at the same instant, the bursts arriving as a Poisson
+   * process so the mean throughput matches the target.
+   */
+  static class Bursty extends ArrivalScheduler
+  {
+    final int _burstsize;
+    int _inburst;
+
+    Bursty(RateProfile profile, double share, int burstsize)
+    {
+      super(profile, share);
+      if (burstsize<1)
+      {
+        throw new IllegalArgumentException(BURST_SIZE_PROPERTY+" must be at least 1");
+      }
+      _burstsize=burstsize;
+    }
+
+    protected double nextGapNs(double meanGapNs)
+    {
+      if (++_inburst<_burstsize)
+      {
+        return 0;
+      }
+      _inburst=0;
+      return exponential(meanGapNs*_burstsize);
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.util.HashMap;
+import java.util.Set;
+import java.util.Vector;
+
+/**
+ * A layer for accessing a database that can have many operations outstanding at once.
+ * Each method issues the operation and returns a {@link DBFuture} that is completed with
+ * the return code once the database answers, so a single client thread can keep many
+ * requests in flight (see the "async" property of {@link Client}).
+ *
+ * The blocking methods of {@link DB} are implemented by waiting on the asynchronous ones,
+ * so a binding only needs to implement the methods below. The result HashMap/Vector
+ * passed to a read or scan must not be inspected until the returned handle is complete.
+ */
+public abstract class AsyncDB extends DB
+{
+	/**
+	 * Issue a read of a record. See {@link DB#read(String, String, Set, HashMap)}.
+	 */
+	public abstract DBFuture readAsync(String table, String key, Set<String> fields, HashMap<String,ByteIterator> result);
+
+	/**
+	 * Issue a range scan. See {@link DB#scan(String, String, int, Set, Vector)}.
+	 */
+	public abstract DBFuture scanAsync(String table, String startkey, int recordcount, Set<String> fields, Vector<HashMap<String,ByteIterator>> result);
+
+	/**
+	 * Issue an update of a record. See {@link DB#update(String, String, HashMap)}.
+	 */
+	public abstract DBFuture updateAsync(String table, String key, HashMap<String,ByteIterator> values);
+
+	/**
+	 * Issue an insert of a record. See {@link DB#insert(String, String, HashMap)}.
+	 */
+	public abstract DBFuture insertAsync(String table, String key, HashMap<String,ByteIterator> values);
+
+	/**
+	 * Issue a delete of a record. See {@link DB#delete(String, String)}.
+	 */
+	public abstract DBFuture deleteAsync(String table, String key);
+
+	public int read(String table, String key, Set<String> fields, HashMap<String,ByteIterator> result)
+	{
+		return readAsync(table,key,fields,result).join();
+	}
+
+	public int scan(String table, String startkey, int recordcount, Set<String> fields, Vector<HashMap<String,ByteIterator>> result)
+	{
+		return scanAsync(table,startkey,recordcount,fields,result).join();
+	}
+
+	public int update(String table, String key, HashMap<String,ByteIterator> values)
+	{
+		return updateAsync(table,key,values).join();
+	}
+
+	public int insert(String table, String key, HashMap<String,ByteIterator> values)
+	{
+		return insertAsync(table,key,values).join();
+	}
+
+	public int delete(String table, String key)
+	{
+		return deleteAsync(table,key).join();
+	}
+}
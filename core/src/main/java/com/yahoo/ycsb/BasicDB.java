@@ -229,6 +229,82 @@ public class BasicDB extends DB
 	}
 
 
+	/**
+	 * Read a record into a BufferRecord, which is left empty.
+	 */
+	public int read(String table, String key, Set<String> fields, BufferRecord result)
+	{
+		result.clear();
+		return read(table,key,fields,(HashMap<String,ByteIterator>)null);
+	}
+
+	/**
+	 * Update a record from a BufferRecord, without copying it unless it is printed.
+	 */
+	public int update(String table, String key, BufferRecord values)
+	{
+		if (verbose)
+		{
+			return super.update(table,key,values);
+		}
+		delay();
+		return 0;
+	}
+
+	/**
+	 * Insert a record from a BufferRecord, without copying it unless it is printed.
+	 */
+	public int insert(String table, String key, BufferRecord values)
+	{
+		if (verbose)
+		{
+			return super.insert(table,key,values);
+		}
+		delay();
+		return 0;
+	}
+
+	/**
+	 * Read a record into a BufferRecord, which is left empty, without making a String of the key
+	 * unless it is printed.
+	 */
+	public int read(String table, KeyBuffer key, Set<String> fields, BufferRecord result)
+	{
+		if (verbose)
+		{
+			return super.read(table,key,fields,result);
+		}
+		result.clear();
+		delay();
+		return 0;
+	}
+
+	/**
+	 * Update a record from a BufferRecord, without making a String of the key unless it is printed.
+	 */
+	public int update(String table, KeyBuffer key, BufferRecord values)
+	{
+		if (verbose)
+		{
+			return super.update(table,key,values);
+		}
+		delay();
+		return 0;
+	}
+
+	/**
+	 * Insert a record from a BufferRecord, without making a String of the key unless it is printed.
+	 */
+	public int insert(String table, KeyBuffer key, BufferRecord values)
+	{
+		if (verbose)
+		{
+			return super.insert(table,key,values);
+		}
+		delay();
+		return 0;
+	}
+
 	/**
 	 * Delete a record from the database. 
 	 *
@@ -0,0 +1,235 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A record kept as a list of fields, each a field index and a slice of one direct buffer.
+ * Unlike a HashMap of ByteIterators, nothing is allocated per operation: a client thread
+ * clears and refills the same record, and a DB can write the slices straight out.
+ *
+ * The field indexes refer to the field names the record was created with. A record is not
+ * thread safe; each client thread has its own.
+ */
+public class BufferRecord
+{
+	private final String[] _names;
+	private final Map<String,Integer> _indexes;
+
+	private ByteBuffer _buffer;
+	/** A view of the buffer to copy slices through, without moving the position of the buffer. */
+	private ByteBuffer _view;
+
+	private int[] _fields;
+	private int[] _offsets;
+	private int[] _lengths;
+	private int _size;
+	private int _end;
+
+	/**
+	 * @param names The names of the fields, by index.
+	 * @param capacity The initial size of the buffer, in bytes. It grows if needed.
+	 */
+	public BufferRecord(String[] names, int capacity)
+	{
+		_names=names;
+		_indexes=new HashMap<String,Integer>();
+		for (int i=0; i<names.length; i++)
+		{
+			_indexes.put(names[i], i);
+		}
+		_buffer=ByteBuffer.allocateDirect(Math.max(capacity, 16));
+		_view=_buffer.duplicate();
+		_fields=new int[names.length];
+		_offsets=new int[names.length];
+		_lengths=new int[names.length];
+	}
+
+	/**
+	 * Remove all fields, to reuse the record.
+	 */
+	public void clear()
+	{
+		_size=0;
+		_end=0;
+	}
+
+	/**
+	 * @return The number of fields in the record.
+	 */
+	public int size()
+	{
+		return _size;
+	}
+
+	/**
+	 * @return The index of the name of the i-th field of the record.
+	 */
+	public int field(int i)
+	{
+		return _fields[i];
+	}
+
+	/**
+	 * @return The name of the i-th field of the record.
+	 */
+	public String name(int i)
+	{
+		return _names[_fields[i]];
+	}
+
+	/**
+	 * @return The index of a field name, or -1 if the record has no such field.
+	 */
+	public int indexOf(String name)
+	{
+		Integer index=_indexes.get(name);
+		return index==null ? -1 : index;
+	}
+
+	/**
+	 * The buffer holding the values. Its position and limit are not used by the record,
+	 * so absolute gets and puts at offset(i) are the way to access a value.
+	 */
+	public ByteBuffer buffer()
+	{
+		return _buffer;
+	}
+
+	/**
+	 * @return Where the value of the i-th field starts in buffer().
+	 */
+	public int offset(int i)
+	{
+		return _offsets[i];
+	}
+
+	/**
+	 * @return The length of the value of the i-th field.
+	 */
+	public int length(int i)
+	{
+		return _lengths[i];
+	}
+
+	/**
+	 * Add a field, with room for its value in the buffer. The value is written to buffer()
+	 * at the returned offset. As the buffer may be replaced by a larger one when adding,
+	 * call buffer() after adding.
+	 *
+	 * @return Where the value starts in buffer().
+	 */
+	public int add(int field, int length)
+	{
+		if (_size==_fields.length)
+		{
+			int n=_fields.length*2+1;
+			_fields=Arrays.copyOf(_fields, n);
+			_offsets=Arrays.copyOf(_offsets, n);
+			_lengths=Arrays.copyOf(_lengths, n);
+		}
+		if (_end+length>_buffer.capacity())
+		{
+			ByteBuffer larger=ByteBuffer.allocateDirect(Math.max(_buffer.capacity()*2, _end+length));
+			_view.limit(_end).position(0);
+			larger.put(_view);
+			larger.clear();
+			_buffer=larger;
+			_view=_buffer.duplicate();
+		}
+		int offset=_end;
+		_fields[_size]=field;
+		_offsets[_size]=offset;
+		_lengths[_size]=length;
+		_size++;
+		_end+=length;
+		return offset;
+	}
+
+	/**
+	 * Add a field with a copy of the given bytes as its value.
+	 */
+	public void add(int field, byte[] value, int off, int len)
+	{
+		int offset=add(field, len);
+		_view.limit(offset+len).position(offset);
+		_view.put(value, off, len);
+	}
+
+	/**
+	 * Add a field with a copy of the remaining bytes of a buffer as its value, which moves the
+	 * position of the buffer to its limit.
+	 */
+	public void add(int field, ByteBuffer value)
+	{
+		int len=value.remaining();
+		int offset=add(field, len);
+		_view.limit(offset+len).position(offset);
+		_view.put(value);
+	}
+
+	/**
+	 * Copy the value of the i-th field to an array.
+	 *
+	 * @return The number of bytes copied, which is length(i).
+	 */
+	public int copyValue(int i, byte[] dst, int off)
+	{
+		int offset=_offsets[i];
+		_view.limit(offset+_lengths[i]).position(offset);
+		_view.get(dst, off, _lengths[i]);
+		return _lengths[i];
+	}
+
+	/**
+	 * Replace the fields of the record with those of a HashMap. Fields without an index
+	 * are left out.
+	 */
+	public void fromHashMap(Map<String,ByteIterator> values)
+	{
+		clear();
+		for (Map.Entry<String,ByteIterator> entry : values.entrySet())
+		{
+			int field=indexOf(entry.getKey());
+			if (field>=0)
+			{
+				byte[] value=entry.getValue().toArray();
+				add(field, value, 0, value.length);
+			}
+		}
+	}
+
+	/**
+	 * A copy of the record as a HashMap, for a DB that does not support records in buffers.
+	 */
+	public HashMap<String,ByteIterator> toHashMap()
+	{
+		HashMap<String,ByteIterator> values=new HashMap<String,ByteIterator>();
+		for (int i=0; i<_size; i++)
+		{
+			byte[] value=new byte[_lengths[i]];
+			copyValue(i, value, 0);
+			values.put(name(i), new ByteArrayByteIterator(value));
+		}
+		return values;
+	}
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A ByteIterator over a slice of a ByteBuffer, which is read with absolute gets so that
+ * several iterators can share the buffer. The slice must not change while it is iterated.
+ */
+public class ByteBufferByteIterator extends ByteIterator {
+	private final ByteBuffer buf;
+	private int off;
+	private final int end;
+
+	public ByteBufferByteIterator(ByteBuffer buf, int off, int len) {
+		this.buf = buf;
+		this.off = off;
+		this.end = off + len;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return off < end;
+	}
+
+	@Override
+	public byte nextByte() {
+		return buf.get(off++);
+	}
+
+	@Override
+	public int nextBuf(byte[] buffer, int bufferOffset) {
+		int n = Math.min(end - off, buffer.length - bufferOffset);
+		ByteBuffer view = buf.duplicate();
+		view.limit(off + n).position(off);
+		view.get(buffer, bufferOffset, n);
+		off += n;
+		return bufferOffset + n;
+	}
+
+	@Override
+	public long bytesLeft() {
+		return end - off;
+	}
+}
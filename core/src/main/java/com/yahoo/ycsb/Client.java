@@ -22,391 +22,19 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.text.DecimalFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Properties;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.LockSupport;
 
 import com.yahoo.ycsb.measurements.Measurements;
 import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
 import com.yahoo.ycsb.measurements.exporter.TextMeasurementsExporter;
 
-/**
- * A thread to periodically show the status of the experiment, to reassure you that progress is being made.
- *
- * @author cooperb
- */
-class StatusThread extends Thread
-{
-  /** Counts down each of the clients completing. */
-  private final CountDownLatch _completeLatch;
-
-  /** The clients that are running. */
-  private final List<ClientThread> _clients;
-
-  private final String _label;
-  private final boolean _standardstatus;
-
-  /** The interval for reporting status. */
-  private long _sleeptimeNs;
-
-  /**
-   * Creates a new StatusThread.
-   *
-   * @param completeLatch The latch that each client thread will {@link CountDownLatch#countDown()} as they complete.
-   * @param clients The clients to collect metrics from.
-   * @param label The label for the status.
-   * @param standardstatus If true the status is printed to stdout in addition to stderr.
-   * @param statusIntervalSeconds The number of seconds between status updates.
-   */
-  public StatusThread(CountDownLatch completeLatch, List<ClientThread> clients,
-      String label, boolean standardstatus, int statusIntervalSeconds)
-  {
-    _completeLatch=completeLatch;
-    _clients=clients;
-    _label=label;
-    _standardstatus=standardstatus;
-    _sleeptimeNs=TimeUnit.SECONDS.toNanos(statusIntervalSeconds);
-  }
-
-  /**
-   * Run and periodically report status.
-   */
-  @Override
-  public void run()
-  {
-    final long startTimeMs=System.currentTimeMillis();
-    final long startTimeNanos = System.nanoTime();
-    long deadline = startTimeNanos + _sleeptimeNs;
-    long startIntervalMs=startTimeMs;
-    long lastTotalOps=0;
-
-    boolean alldone;
-
-    do
-    {
-      long nowMs=System.currentTimeMillis();
-
-      lastTotalOps = computeStats(startTimeMs, startIntervalMs, nowMs, lastTotalOps);
-
-      alldone = waitForClientsUntil(deadline);
-
-      startIntervalMs=nowMs;
-      deadline+=_sleeptimeNs;
-    }
-    while (!alldone);
-
-    // Print the final stats.
-    computeStats(startTimeMs, startIntervalMs, System.currentTimeMillis(), lastTotalOps);
-  }
-
-  /**
-   * Computes and prints the stats.
-   *
-   * @param startTimeMs The start time of the test.
-   * @param startIntervalMs The start time of this interval.
-   * @param endIntervalMs The end time (now) for the interval.
-   * @param lastTotalOps The last total operations count.
-   *
-   * @return The current operation count.
-   */
-  private long computeStats(final long startTimeMs, long startIntervalMs, long endIntervalMs,
-      long lastTotalOps) {
-    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss:SSS");
-
-    long totalops=0;
-    long todoops=0;
-
-    // Calculate the total number of operations completed.
-    for (ClientThread t : _clients)
-    {
-      totalops+=t.getOpsDone();
-      todoops+=t.getOpsTodo();
-    }
-
-
-    long interval=endIntervalMs-startTimeMs;
-    double throughput=1000.0*(((double)totalops)/(double)interval);
-    double curthroughput=1000.0*(((double)(totalops-lastTotalOps))/((double)(endIntervalMs-startIntervalMs)));
-    long estremaining = (long) Math.ceil(todoops / throughput);
-
-
-    DecimalFormat d = new DecimalFormat("#.##");
-    String label = _label + format.format(new Date());
-
-    StringBuilder msg = new StringBuilder(label).append(" ").append(interval/1000).append(" sec: ");
-    msg.append(totalops).append(" operations; ");
-
-    if (totalops != 0) {
-      msg.append(d.format(curthroughput)).append(" current ops/sec; ");
-    }
-    if (todoops != 0) {
-        msg.append("est completion in ").append(RemainingFormatter.format(estremaining));
-    }
-
-    msg.append(Measurements.getMeasurements().getSummary());
-
-    System.err.println(msg);
-
-    if (_standardstatus) {
-      System.out.println(msg);
-    }
-    return totalops;
-  }
-
-  /**
-   * Waits for all of the client to finish or the deadline to expire.
-   *
-   * @param deadline The current deadline.
-   *
-   * @return True if all of the clients completed.
-   */
-  private boolean waitForClientsUntil(long deadline) {
-    boolean alldone=false;
-    long now=System.nanoTime();
-
-    while( !alldone && now < deadline ) {
-      try {
-        alldone = _completeLatch.await(deadline-now, TimeUnit.NANOSECONDS);
-      }
-      catch( InterruptedException ie) {
-        // If we are interrupted the thread is being asked to shutdown.
-        // Return true to indicate that and reset the interrupt state
-        // of the thread.
-        Thread.currentThread().interrupt();
-        alldone=true;
-      }
-      now=System.nanoTime();
-    }
-
-    return alldone;
-  }
-}
-
-/**
- * Turn seconds remaining into more useful units.
- * i.e. if there are hours or days worth of seconds, use them.
- */
-class RemainingFormatter {
-	public static StringBuilder format(long seconds) {
-		StringBuilder time = new StringBuilder();
-		long days = TimeUnit.SECONDS.toDays(seconds);
-		if (days > 0) {
-			time.append(days).append(" days ");
-			seconds -= TimeUnit.DAYS.toSeconds(days);
-		}
-		long hours = TimeUnit.SECONDS.toHours(seconds);
-		if (hours > 0) {
-			time.append(hours).append(" hours ");
-			seconds -= TimeUnit.HOURS.toSeconds(hours);
-		}
-		/* Only include minute granularity if we're < 1 day. */
-		if (days < 1) {
-			long minutes = TimeUnit.SECONDS.toMinutes(seconds);
-			if (minutes > 0) {
-				time.append(minutes).append(" minutes ");
-				seconds -= TimeUnit.MINUTES.toSeconds(seconds);
-			}
-		}
-		/* Only bother to include seconds if we're < 1 minute */
-		if (time.length() == 0) {
-			time.append(seconds).append(" seconds ");
-		}
-		return time;
-	}
-}
-
-/**
- * A thread for executing transactions or data inserts to the database.
- *
- * @author cooperb
- *
- */
-class ClientThread extends Thread
-{
-  /** Counts down each of the clients completing. */
-  private final CountDownLatch _completeLatch;
-
-  private static boolean _spinSleep;
-  DB _db;
-  boolean _dotransactions;
-  Workload _workload;
-  int _opcount;
-  double _targetOpsPerMs;
-
-  int _opsdone;
-  int _threadid;
-  int _threadcount;
-  Object _workloadstate;
-  Properties _props;
-  long _targetOpsTickNs;
-  final Measurements _measurements;
-
-  /**
-   * Constructor.
-   *
-   * @param db the DB implementation to use
-   * @param dotransactions true to do transactions, false to insert data
-   * @param workload the workload to use
-   * @param props the properties defining the experiment
-   * @param opcount the number of operations (transactions or inserts) to do
-   * @param targetperthreadperms target number of operations per thread per ms
-   * @param completeLatch The latch tracking the completion of all clients.
-   */
-  public ClientThread(DB db, boolean dotransactions, Workload workload, Properties props, int opcount, double targetperthreadperms, CountDownLatch completeLatch)
-  {
-    _db=db;
-    _dotransactions=dotransactions;
-    _workload=workload;
-    _opcount=opcount;
-    _opsdone=0;
-    if(targetperthreadperms > 0){
-      _targetOpsPerMs=targetperthreadperms;
-      _targetOpsTickNs=(long)(1000000/_targetOpsPerMs);
-    }
-    _props=props;
-    _measurements = Measurements.getMeasurements();
-    _spinSleep = Boolean.valueOf(_props.getProperty("spin.sleep", "false"));
-    _completeLatch=completeLatch;
-  }
-
-  public int getOpsDone()
-  {
-    return _opsdone;
-  }
-
-  @Override
-  public void run()
-  {
-    try
-    {
-      _db.init();
-    }
-    catch (DBException e)
-    {
-      e.printStackTrace();
-      e.printStackTrace(System.out);
-      return;
-    }
-
-    try
-    {
-      _workloadstate=_workload.initThread(_props,_threadid,_threadcount);
-    }
-    catch (WorkloadException e)
-    {
-      e.printStackTrace();
-      e.printStackTrace(System.out);
-      return;
-    }
-
-    //NOTE: Switching to using nanoTime and parkNanos for time management here such that the measurements
-    // and the client thread have the same view on time.
-
-    //spread the thread operations out so they don't all hit the DB at the same time
-    // GH issue 4 - throws exception if _target>1 because random.nextInt argument must be >0
-    // and the sleep() doesn't make sense for granularities < 1 ms anyway
-    if ((_targetOpsPerMs > 0) && (_targetOpsPerMs <= 1.0))
-    {
-      long randomMinorDelay = Utils.random().nextInt((int) _targetOpsTickNs);
-      sleepUntil(System.nanoTime() + randomMinorDelay);
-    }
-    try
-    {
-      if (_dotransactions)
-      {
-        long startTimeNanos = System.nanoTime();
-
-        while (((_opcount == 0) || (_opsdone < _opcount)) && !_workload.isStopRequested())
-        {
-
-          if (!_workload.doTransaction(_db,_workloadstate))
-          {
-            break;
-          }
-
-          _opsdone++;
-
-          throttleNanos(startTimeNanos);
-        }
-      }
-      else
-      {
-        long startTimeNanos = System.nanoTime();
-
-        while (((_opcount == 0) || (_opsdone < _opcount)) && !_workload.isStopRequested())
-        {
-
-          if (!_workload.doInsert(_db,_workloadstate))
-          {
-            break;
-          }
-
-          _opsdone++;
-
-          throttleNanos(startTimeNanos);
-        }
-      }
-    }
-    catch (Exception e)
-    {
-      e.printStackTrace();
-      e.printStackTrace(System.out);
-      System.exit(0);
-    }
-
-    try
-    {
-      _measurements.setIntendedStartTimeNs(0);
-      _db.cleanup();
-    }
-    catch (DBException e)
-    {
-      e.printStackTrace();
-      e.printStackTrace(System.out);
-      return;
-    }
-    finally
-    {
-      _completeLatch.countDown();
-    }
-  }
-
-  static void sleepUntil(long deadline) {
-    long now = System.nanoTime();
-    while((now = System.nanoTime()) < deadline) {
-      if (!_spinSleep) {
-        LockSupport.parkNanos(deadline - now);
-      }
-    }
-  }
-  private void throttleNanos(long startTimeNanos) {
-    //throttle the operations
-    if (_targetOpsPerMs > 0)
-    {
-      // delay until next tick
-      long deadline = startTimeNanos + _opsdone*_targetOpsTickNs;
-      sleepUntil(deadline);
-      _measurements.setIntendedStartTimeNs(deadline);
-    }
-  }
-  
-  /**
-   * the total amount of work this thread is still expected to do
-   */
-  public int getOpsTodo()
-  {
-    int todo = _opcount - _opsdone;
-    return todo < 0 ? 0 : todo;
-  }
-}
-
 /**
  * Main class for executing YCSB.
  */
@@ -459,6 +87,12 @@ public class Client
    */
   public static final String INSERT_COUNT_PROPERTY="insertcount";
 
+  /**
+   * Whether the run does transactions (-t) rather than load the data (-load); set by the
+   * client for the workload to read.
+   */
+  public static final String DO_TRANSACTIONS_PROPERTY="dotransactions";
+
   /**
    * Target number of operations per second
    */
@@ -469,6 +103,20 @@ public class Client
    */
   public static final String MAX_EXECUTION_TIME = "maxexecutiontime";
 
+  /**
+   * If true, each client thread issues operations through {@link AsyncDB} without waiting for
+   * earlier ones to complete (open loop). DB bindings that do not implement AsyncDB still work,
+   * but complete each operation before the next one is issued.
+   */
+  public static final String ASYNC_PROPERTY="async";
+  public static final String ASYNC_PROPERTY_DEFAULT="false";
+
+  /**
+   * The maximum number of operations each client thread keeps in flight in asynchronous mode.
+   */
+  public static final String ASYNC_MAX_INFLIGHT_PROPERTY="async.maxinflight";
+  public static final String ASYNC_MAX_INFLIGHT_PROPERTY_DEFAULT="1000";
+
 
   public static void usageMessage()
   {
@@ -478,6 +126,8 @@ public class Client
         "        \"threadcount\" property using -p");
     System.out.println("  -target n: attempt to do n operations per second (default: unlimited) - can also\n" +
         "       be specified as the \"target\" property using -p");
+    System.out.println("  -p target.profile=60s:10k,120s:10k->50k,60s:50k,60s:20k: vary the target over the run,\n" +
+        "       reporting latency per offered rate (see com.yahoo.ycsb.RateProfile)");
     System.out.println("  -load:  run the loading phase of the workload");
     System.out.println("  -t:  run the transactions phase of the workload (default)");
     System.out.println("  -db dbname: specify the name of the DB to use (default: com.yahoo.ycsb.BasicDB) - \n" +
@@ -515,40 +165,29 @@ public class Client
    * loaded from conf.
    * @throws IOException Either failed to write to output stream or failed to close it.
    */
-  private static void exportMeasurements(Properties props, int opcount, long runtime)
+  private static void exportMeasurements(Properties props, long opcount, long runtime, SaturationSearch search,
+      ControlChannel control)
       throws IOException
   {
     MeasurementsExporter exporter = null;
     try
     {
-      // if no destination file is provided the results will be written to stdout
-      OutputStream out;
-      String exportFile = props.getProperty(EXPORT_FILE_PROPERTY);
-      if (exportFile == null)
-      {
-        out = System.out;
-      } else
+      exporter = createExporter(props);
+
+      exporter.write("OVERALL", "RunTime(ms)", runtime);
+      double throughput = 1000.0 * (opcount) / (runtime);
+      exporter.write("OVERALL", "Throughput(ops/sec)", throughput);
+
+      if (search != null)
       {
-        out = new FileOutputStream(exportFile);
+        search.exportMeasurements(exporter);
       }
 
-      // if no exporter is provided the default text one will be used
-      String exporterStr = props.getProperty(EXPORTER_PROPERTY, "com.yahoo.ycsb.measurements.exporter.TextMeasurementsExporter");
-      try
-      {
-        exporter = (MeasurementsExporter) Class.forName(exporterStr).getConstructor(OutputStream.class).newInstance(out);
-      } catch (Exception e)
+      if (control != null)
       {
-        System.err.println("Could not find exporter " + exporterStr
-            + ", will use default text reporter.");
-        e.printStackTrace();
-        exporter = new TextMeasurementsExporter(out);
+        control.exportMeasurements(exporter);
       }
 
-      exporter.write("OVERALL", "RunTime(ms)", runtime);
-      double throughput = 1000.0 * (opcount) / (runtime);
-      exporter.write("OVERALL", "Throughput(ops/sec)", throughput);
-
       Measurements.getMeasurements().exportMeasurements(exporter);
     } finally
     {
@@ -559,6 +198,65 @@ public class Client
     }
   }
 
+  /**
+   * Create the exporter configured in the properties, writing to either sysout or a file.
+   * @throws IOException Failed to open the output file.
+   */
+  static MeasurementsExporter createExporter(Properties props) throws IOException
+  {
+    // if no destination file is provided the results will be written to stdout
+    OutputStream out;
+    String exportFile = props.getProperty(EXPORT_FILE_PROPERTY);
+    if (exportFile == null)
+    {
+      out = System.out;
+    } else
+    {
+      out = new FileOutputStream(exportFile);
+    }
+
+    // if no exporter is provided the default text one will be used
+    String exporterStr = props.getProperty(EXPORTER_PROPERTY, "com.yahoo.ycsb.measurements.exporter.TextMeasurementsExporter");
+    try
+    {
+      return (MeasurementsExporter) Class.forName(exporterStr).getConstructor(OutputStream.class).newInstance(out);
+    } catch (Exception e)
+    {
+      System.err.println("Could not find exporter " + exporterStr
+          + ", will use default text reporter.");
+      e.printStackTrace();
+      return new TextMeasurementsExporter(out);
+    }
+  }
+
+  /**
+   * Switch the measurements to each phase of the target throughput profile as the run
+   * reaches it, so the latency is reported per offered rate.
+   */
+  private static Timer schedulePhases(RateProfile profile, final List<ClientThread> clients)
+  {
+    Timer timer=new Timer("phases", true);
+    int i=0;
+    for (final RateProfile.Phase phase : profile.getPhases())
+    {
+      final String name="P"+(++i)+"-"+phase.getLabel();
+      timer.schedule(new TimerTask()
+      {
+        @Override
+        public void run()
+        {
+          long totalops=0;
+          for (ClientThread t : clients)
+          {
+            totalops+=t.getOpsDone();
+          }
+          Measurements.getMeasurements().startPhase(name, phase.meanRate, totalops);
+        }
+      }, TimeUnit.NANOSECONDS.toMillis(phase.offsetNs));
+    }
+    return timer;
+  }
+
   @SuppressWarnings("unchecked")
   public static void main(String[] args)
   {
@@ -729,11 +427,53 @@ public class Client
 
     props=fileprops;
 
+    //a worker gets the properties of the run from the coordinator
+    Worker worker=null;
+    if (props.getProperty(Worker.WORKER_COORDINATOR_PROPERTY)!=null)
+    {
+      try
+      {
+        worker=new Worker(props);
+      }
+      catch (IOException e)
+      {
+        System.out.println("Could not join the coordinator: "+e.getMessage());
+        System.exit(0);
+      }
+      props=worker.getProperties();
+      dotransactions=worker.isTransactions();
+      if (status)
+      {
+        System.err.println("The status is shown by the coordinator");
+        status=false;
+      }
+    }
+
     if (!checkRequiredProperties(props))
     {
       System.exit(0);
     }
 
+    if (props.getProperty(Coordinator.COORDINATOR_WORKERS_PROPERTY)!=null)
+    {
+      try
+      {
+        new Coordinator(props,dotransactions).run(status);
+      }
+      catch (IllegalArgumentException e)
+      {
+        System.out.println("Invalid coordinator settings: "+e.getMessage());
+        System.exit(0);
+      }
+      catch (Exception e)
+      {
+        e.printStackTrace();
+        e.printStackTrace(System.out);
+        System.exit(-1);
+      }
+      System.exit(0);
+    }
+
     long maxExecutionTime = Integer.parseInt(props.getProperty(MAX_EXECUTION_TIME, "0"));
 
     //get number of threads, target and db
@@ -741,12 +481,53 @@ public class Client
     dbname=props.getProperty(DB_PROPERTY,"com.yahoo.ycsb.BasicDB");
     target=Integer.parseInt(props.getProperty(TARGET_PROPERTY,"0"));
 
-    //compute the target throughput
-    double targetperthreadperms=-1;
-    if (target>0)
+    //compute the target throughput, each thread doing an even share of it
+    RateProfile targetprofile=null;
+    String profile=props.getProperty(RateProfile.TARGET_PROFILE_PROPERTY);
+    boolean saturation=Boolean.parseBoolean(props.getProperty(SaturationSearch.SATURATION_PROPERTY, SaturationSearch.SATURATION_PROPERTY_DEFAULT));
+    if (saturation)
     {
-      double targetperthread=((double)target)/((double)threadcount);
-      targetperthreadperms=targetperthread/1000.0;
+      if (!dotransactions)
+      {
+        System.out.println("The saturation search can only run the transaction phase");
+        System.exit(0);
+      }
+      if (target>0 || profile!=null)
+      {
+        System.err.println("Warning: running the saturation search, ignoring "+TARGET_PROPERTY+" and "+RateProfile.TARGET_PROFILE_PROPERTY);
+      }
+      // the search changes the target between probes
+      profile=null;
+      targetprofile=RateProfile.constant(Double.parseDouble(
+          props.getProperty(SaturationSearch.START_PROPERTY, SaturationSearch.START_PROPERTY_DEFAULT)));
+    }
+    else if (profile!=null)
+    {
+      if (worker!=null)
+      {
+        // the phases of the profile are not sent to the coordinator
+        System.out.println("A worker can not run a "+RateProfile.TARGET_PROFILE_PROPERTY);
+        System.exit(0);
+      }
+      if (target>0)
+      {
+        System.err.println("Warning: "+RateProfile.TARGET_PROFILE_PROPERTY+" is set, ignoring "+TARGET_PROPERTY);
+      }
+      long slice=TimeUnit.SECONDS.toNanos(Integer.parseInt(
+          props.getProperty(RateProfile.TARGET_PROFILE_SLICE_PROPERTY, RateProfile.TARGET_PROFILE_SLICE_PROPERTY_DEFAULT)));
+      try
+      {
+        targetprofile=RateProfile.parse(profile, slice);
+      }
+      catch (IllegalArgumentException e)
+      {
+        System.out.println("Invalid "+RateProfile.TARGET_PROFILE_PROPERTY+": "+e.getMessage());
+        System.exit(0);
+      }
+    }
+    else if (target>0)
+    {
+      targetprofile=RateProfile.constant(target);
     }
 
     System.out.println("YCSB Client 0.1");
@@ -782,6 +563,11 @@ public class Client
 
     //set up measurements
     Measurements.setProperties(props);
+    if (saturation && !Measurements.getMeasurements().hasHdrHistograms())
+    {
+      System.out.println("The saturation search requires "+Measurements.MEASUREMENT_TYPE_PROPERTY+"=hdrhistogram");
+      System.exit(0);
+    }
 
     //load the workload
     ClassLoader classLoader = Client.class.getClassLoader();
@@ -801,6 +587,7 @@ public class Client
       System.exit(0);
     }
 
+    props.setProperty(DO_TRANSACTIONS_PROPERTY, String.valueOf(dotransactions));
     try
     {
       workload.init(props);
@@ -818,25 +605,38 @@ public class Client
 
     System.err.println("Starting test.");
 
-    int opcount;
-    if (dotransactions)
+    long opcount;
+    if (saturation)
     {
-      opcount=Integer.parseInt(props.getProperty(OPERATION_COUNT_PROPERTY,"0"));
+      // run until the search is done
+      opcount=0;
+    }
+    else if (dotransactions)
+    {
+      opcount=Long.parseLong(props.getProperty(OPERATION_COUNT_PROPERTY,"0"));
     }
     else
     {
       if (props.containsKey(INSERT_COUNT_PROPERTY))
       {
-        opcount=Integer.parseInt(props.getProperty(INSERT_COUNT_PROPERTY,"0"));
+        opcount=Long.parseLong(props.getProperty(INSERT_COUNT_PROPERTY,"0"));
       }
       else
       {
-        opcount=Integer.parseInt(props.getProperty(RECORD_COUNT_PROPERTY, DEFAULT_RECORD_COUNT));
+        opcount=Long.parseLong(props.getProperty(RECORD_COUNT_PROPERTY, DEFAULT_RECORD_COUNT));
       }
     }
 
     CountDownLatch completeLatch=new CountDownLatch(threadcount);
     final List<ClientThread> clients=new ArrayList<ClientThread>(threadcount);
+
+    // the warm-up starts before the clients are created, so they know to expect it
+    WarmupThread warmupthread=null;
+    if (WarmupThread.isEnabled(props))
+    {
+      warmupthread=new WarmupThread(props,clients);
+    }
+
     for (int threadid=0; threadid<threadcount; threadid++)
     {
       DB db=null;
@@ -851,7 +651,13 @@ public class Client
       }
 
 
-      int threadopcount = opcount/threadcount;
+      if (threadid==0 && Boolean.parseBoolean(props.getProperty(ASYNC_PROPERTY, ASYNC_PROPERTY_DEFAULT))
+          && !(db instanceof DBWrapper && ((DBWrapper)db).isAsync()))
+      {
+        System.err.println("Warning: "+dbname+" does not implement AsyncDB, operations will not overlap.");
+      }
+
+      long threadopcount = opcount/threadcount;
 
       // ensure correct number of operations, in case opcount is not a multiple of threadcount
       if (threadid<opcount%threadcount)
@@ -859,11 +665,39 @@ public class Client
         ++threadopcount;
       }
 
-      ClientThread t=new ClientThread(db,dotransactions,workload,props,threadopcount, targetperthreadperms, completeLatch);
+      double targetshare=worker!=null ? worker.getTargetShare()/threadcount : 1.0/threadcount;
+      ClientThread t=new ClientThread(db,dotransactions,workload,props,threadopcount, targetprofile, targetshare, threadid, threadcount, completeLatch);
 
       clients.add(t);
     }
 
+    SaturationSearch search=null;
+    if (saturation)
+    {
+      try
+      {
+        search=new SaturationSearch(props,targetprofile,clients);
+      }
+      catch (IllegalArgumentException e)
+      {
+        System.out.println("Invalid saturation search settings: "+e.getMessage());
+        System.exit(0);
+      }
+    }
+
+    if (worker!=null)
+    {
+      try
+      {
+        worker.awaitStart();
+      }
+      catch (IOException e)
+      {
+        System.out.println("Lost the coordinator: "+e.getMessage());
+        System.exit(0);
+      }
+    }
+
     StatusThread statusthread=null;
 
     if (status)
@@ -874,10 +708,24 @@ public class Client
         standardstatus=true;
       }
       int statusIntervalSeconds = Integer.parseInt(props.getProperty("status.interval","10"));
-      statusthread=new StatusThread(completeLatch,clients,label,standardstatus,statusIntervalSeconds);
+      statusthread=new StatusThread(completeLatch,clients,label,standardstatus,statusIntervalSeconds,targetprofile);
       statusthread.start();
     }
 
+    ControlChannel control=null;
+    if (props.containsKey(ControlChannel.CONTROL_PORT_PROPERTY))
+    {
+      try
+      {
+        control=new ControlChannel(props,workload,targetprofile,statusthread);
+      }
+      catch (IOException e)
+      {
+        System.out.println("Could not open the control channel: "+e.getMessage());
+        System.exit(0);
+      }
+    }
+
     long st=System.currentTimeMillis();
 
     for (Thread t : clients)
@@ -885,6 +733,24 @@ public class Client
       t.start();
     }
 
+    if (warmupthread != null) {
+      warmupthread.start();
+    }
+
+    if (worker != null) {
+      worker.startSending(clients, warmupthread);
+    }
+
+    if (control != null) {
+      control.start(st);
+    }
+
+    Timer phasetimer = null;
+
+    if (profile != null) {
+      phasetimer = schedulePhases(targetprofile, clients);
+    }
+
     Thread terminator = null;
 
     if (maxExecutionTime > 0) {
@@ -892,7 +758,20 @@ public class Client
       terminator.start();
     }
 
-    int opsDone = 0;
+    if (search != null) {
+      try {
+        double knee = search.run();
+        if (knee > 0) {
+          System.err.println("Maximum sustainable throughput: " + knee + " ops/sec");
+        } else {
+          System.err.println("No passing target");
+        }
+      } catch (InterruptedException e) {
+      }
+      workload.requestStop();
+    }
+
+    long opsDone = 0;
 
     for (Thread t : clients)
     {
@@ -908,6 +787,26 @@ public class Client
 
     long en=System.currentTimeMillis();
 
+    if (control != null) {
+      control.close();
+    }
+
+    if (phasetimer != null) {
+      // the phases count the operations of the whole run, and leave out the warm-up themselves
+      phasetimer.cancel();
+      Measurements.getMeasurements().endPhase(opsDone);
+    }
+
+    if (warmupthread != null) {
+      // only report the throughput after the warm-up
+      try {
+        warmupthread.join();
+      } catch (InterruptedException e) {
+      }
+      st = warmupthread.getEndTimeMs();
+      opsDone -= warmupthread.getOpsDone();
+    }
+
     if (terminator != null && !terminator.isInterrupted()) {
       terminator.interrupt();
     }
@@ -936,7 +835,14 @@ public class Client
 
     try
     {
-      exportMeasurements(props, opsDone, en - st);
+      if (worker != null)
+      {
+        worker.finish(opsDone, en - st);
+      }
+      else
+      {
+        exportMeasurements(props, opsDone, en - st, search, control);
+      }
     } catch (IOException e)
     {
       System.err.println("Could not export measurements, error: " + e.getMessage());
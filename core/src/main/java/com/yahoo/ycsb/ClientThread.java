@@ -0,0 +1,352 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.yahoo.ycsb.measurements.Measurements;
+
+/**
+ * A thread for executing transactions or data inserts to the database.
+ *
+ * @author cooperb
+ *
+ */
+class ClientThread extends Thread
+{
+  /** Counts down each of the clients completing. */
+  private final CountDownLatch _completeLatch;
+
+  private static boolean _spinSleep;
+  DB _db;
+  boolean _dotransactions;
+  Workload _workload;
+  long _opcount;
+  double _targetOpsPerMs;
+
+  long _opsdone;
+  /** The operations done during the warm-up, which do not count towards _opcount. */
+  long _warmupops;
+  boolean _warmingup;
+  int _threadid;
+  int _threadcount;
+  Object _workloadstate;
+  Properties _props;
+  long _targetOpsTickNs;
+  ArrivalScheduler _scheduler;
+  final Measurements _measurements;
+
+  /** If true, operations are issued through AsyncDB without waiting for earlier ones. */
+  boolean _async;
+  int _maxinflight;
+  final AtomicLong _opscompleted=new AtomicLong();
+  volatile boolean _insertfailed;
+
+  /**
+   * Constructor.
+   *
+   * @param db the DB implementation to use
+   * @param dotransactions true to do transactions, false to insert data
+   * @param workload the workload to use
+   * @param props the properties defining the experiment
+   * @param opcount the number of operations (transactions or inserts) to do
+   * @param target target throughput of all threads together, or null for no throttling
+   * @param targetshare the fraction of the target throughput this thread is responsible for
+   * @param threadid the number of this thread, from 0
+   * @param threadcount the number of client threads
+   * @param completeLatch The latch tracking the completion of all clients.
+   */
+  public ClientThread(DB db, boolean dotransactions, Workload workload, Properties props, long opcount, RateProfile target, double targetshare, int threadid, int threadcount, CountDownLatch completeLatch)
+  {
+    _db=db;
+    _dotransactions=dotransactions;
+    _workload=workload;
+    _opcount=opcount;
+    _opsdone=0;
+    _threadid=threadid;
+    _threadcount=threadcount;
+    if(target != null){
+      _targetOpsPerMs=target.rateAt(0)*targetshare/1000.0;
+      _targetOpsTickNs=(long)(1000000/_targetOpsPerMs);
+      _scheduler=ArrivalScheduler.create(props, target, targetshare);
+    }
+    _props=props;
+    _measurements = Measurements.getMeasurements();
+    _warmingup = _measurements.isWarmingUp();
+    _spinSleep = Boolean.valueOf(_props.getProperty("spin.sleep", "false"));
+    _async = Boolean.parseBoolean(_props.getProperty(Client.ASYNC_PROPERTY, Client.ASYNC_PROPERTY_DEFAULT));
+    _maxinflight = Integer.parseInt(_props.getProperty(Client.ASYNC_MAX_INFLIGHT_PROPERTY, Client.ASYNC_MAX_INFLIGHT_PROPERTY_DEFAULT));
+    _completeLatch=completeLatch;
+  }
+
+  public long getOpsDone()
+  {
+    // in asynchronous mode _opsdone counts the operations issued so far
+    return _async ? _opscompleted.get() : _opsdone;
+  }
+
+  @Override
+  public void run()
+  {
+    try
+    {
+      _db.init();
+    }
+    catch (DBException e)
+    {
+      e.printStackTrace();
+      e.printStackTrace(System.out);
+      return;
+    }
+
+    try
+    {
+      _workloadstate=_workload.initThread(_props,_threadid,_threadcount);
+    }
+    catch (WorkloadException e)
+    {
+      e.printStackTrace();
+      e.printStackTrace(System.out);
+      return;
+    }
+
+    //NOTE: Switching to using nanoTime and parkNanos for time management here such that the measurements
+    // and the client thread have the same view on time.
+
+    //spread the thread operations out so they don't all hit the DB at the same time
+    // GH issue 4 - throws exception if _target>1 because random.nextInt argument must be >0
+    // and the sleep() doesn't make sense for granularities < 1 ms anyway
+    if ((_targetOpsPerMs > 0) && (_targetOpsPerMs <= 1.0))
+    {
+      long randomMinorDelay = Utils.random().nextInt((int) _targetOpsTickNs);
+      sleepUntil(System.nanoTime() + randomMinorDelay);
+    }
+    try
+    {
+      if (_async)
+      {
+        runAsync();
+      }
+      else if (_dotransactions)
+      {
+        startSchedule();
+
+        while (moreOps())
+        {
+
+          int done=_workload.doTransactions(_db,_workloadstate,maxBatch());
+          if (done==0)
+          {
+            break;
+          }
+
+          _opsdone+=done;
+
+          // the target is in records per second, however they are batched
+          if (!throttleNanos(done))
+          {
+            break;
+          }
+        }
+      }
+      else
+      {
+        startSchedule();
+
+        while (moreOps())
+        {
+
+          int done=_workload.doInserts(_db,_workloadstate,maxBatch());
+          if (done==0)
+          {
+            break;
+          }
+
+          _opsdone+=done;
+
+          // the target is in records per second, however they are batched
+          if (!throttleNanos(done))
+          {
+            break;
+          }
+        }
+      }
+    }
+    catch (Exception e)
+    {
+      e.printStackTrace();
+      e.printStackTrace(System.out);
+      System.exit(0);
+    }
+
+    try
+    {
+      _measurements.setIntendedStartTimeNs(0);
+      _db.cleanup();
+    }
+    catch (DBException e)
+    {
+      e.printStackTrace();
+      e.printStackTrace(System.out);
+      return;
+    }
+    finally
+    {
+      _completeLatch.countDown();
+    }
+  }
+
+  /**
+   * Issue operations without waiting for earlier ones to complete, keeping at most
+   * _maxinflight of them outstanding. The schedule set by the target throughput is
+   * followed independently of when operations complete.
+   */
+  private void runAsync()
+  {
+    final AsyncDB db=(AsyncDB)_db;
+    final Semaphore inflight=new Semaphore(_maxinflight);
+    DBFuture.Listener onComplete=new DBFuture.Listener()
+    {
+      public void onComplete(DBFuture future, int result)
+      {
+        if (!_dotransactions && result!=0)
+        {
+          // like the synchronous load, stop after the first failed insert
+          _insertfailed=true;
+        }
+        _opscompleted.incrementAndGet();
+        inflight.release();
+      }
+    };
+
+    startSchedule();
+
+    while (moreOps() && !_insertfailed)
+    {
+      inflight.acquireUninterruptibly();
+
+      DBFuture f=_dotransactions ?
+          _workload.doTransactionAsync(db,_workloadstate) :
+          _workload.doInsertAsync(db,_workloadstate);
+      if (f == null)
+      {
+        inflight.release();
+        break;
+      }
+      f.addListener(onComplete);
+
+      _opsdone++;
+
+      if (!throttleNanos())
+      {
+        break;
+      }
+    }
+
+    // wait for the operations still in flight
+    inflight.acquireUninterruptibly(_maxinflight);
+  }
+
+  /**
+   * @return true if the thread should do another operation.
+   */
+  private boolean moreOps() {
+    if (_warmingup && !_measurements.isWarmingUp())
+    {
+      _warmingup = false;
+      _warmupops = _opsdone;
+    }
+    return ((_opcount == 0) || (_opsdone - _warmupops < _opcount)) && !_workload.isStopRequested();
+  }
+
+  static void sleepUntil(long deadline) {
+    long now = System.nanoTime();
+    while((now = System.nanoTime()) < deadline) {
+      if (!_spinSleep) {
+        LockSupport.parkNanos(deadline - now);
+      }
+    }
+  }
+
+  private void startSchedule() {
+    if (_scheduler != null)
+    {
+      _scheduler.start(System.nanoTime());
+    }
+  }
+
+  /**
+   * The most operations the next batch may do without going past the operation count.
+   */
+  private int maxBatch() {
+    if (_opcount == 0)
+    {
+      return Integer.MAX_VALUE;
+    }
+    return (int)Math.min(Integer.MAX_VALUE, Math.max(1, _opcount - (_opsdone - _warmupops)));
+  }
+
+  /**
+   * Throttle for n operations done at once.
+   *
+   * @return false if the target throughput profile has ended and no more operations should be done.
+   */
+  private boolean throttleNanos(int n) {
+    for (int i=0; i<n; i++)
+    {
+      if (!throttleNanos())
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return false if the target throughput profile has ended and no more operations should be done.
+   */
+  private boolean throttleNanos() {
+    //throttle the operations
+    if (_scheduler != null)
+    {
+      // delay until the intended start of the next operation; if we are running
+      // behind it is issued right away, but keeps its intended start time
+      long deadline = _scheduler.nextIntendedStartNs();
+      if (deadline < 0)
+      {
+        return false;
+      }
+      sleepUntil(deadline);
+      _measurements.setIntendedStartTimeNs(deadline);
+    }
+    return true;
+  }
+  
+  /**
+   * the total amount of work this thread is still expected to do
+   */
+  public long getOpsTodo()
+  {
+    long todo = _opcount - (_opsdone - _warmupops);
+    return todo < 0 ? 0 : todo;
+  }
+}
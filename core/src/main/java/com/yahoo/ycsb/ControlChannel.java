@@ -0,0 +1,248 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
+
+/**
+ * Lets a running benchmark be changed without restarting it, so the warmed-up clients and
+ * their connections are kept. It listens on control.port of the local host for one command
+ * per line, and answers each with "OK" or "ERROR" and a reason:
+ * <ul>
+ * <li><b>target</b> ops/sec: change the target throughput (the run must have a fixed target)
+ * <li><b>set</b> name=value ...: change properties of the workload, e.g. readproportion
+ * <li><b>status</b> seconds: change the status interval
+ * <li><b>stop</b>: stop issuing operations, and end the run once the ones in flight complete
+ * </ul>
+ * Every change is exported with the measurements as an event, with the time it was made.
+ */
+public class ControlChannel
+{
+  /**
+   * The local port to listen for commands on. Setting this enables the control channel.
+   */
+  public static final String CONTROL_PORT_PROPERTY="control.port";
+
+  /**
+   * A change made through the control channel.
+   */
+  static class Event
+  {
+    final long timeMs;
+    final String description;
+
+    Event(long timeMs, String description)
+    {
+      this.timeMs=timeMs;
+      this.description=description;
+    }
+  }
+
+  private final ServerSocket _server;
+  private final Workload _workload;
+  private final RateProfile _target;
+  private final StatusThread _status;
+  private final List<Event> _events=new ArrayList<Event>();
+  private long _startTimeMs;
+
+  /**
+   * @param target The target of the clients, or null if they are not throttled.
+   * @param status The status thread, or null if the status is not shown.
+   */
+  public ControlChannel(Properties props, Workload workload, RateProfile target, StatusThread status) throws IOException
+  {
+    _server=new ServerSocket(Integer.parseInt(props.getProperty(CONTROL_PORT_PROPERTY)), 1, InetAddress.getByName(null));
+    _workload=workload;
+    _target=target;
+    _status=status;
+  }
+
+  /**
+   * Start accepting commands.
+   *
+   * @param startTimeMs The start of the run, which the times of the events are relative to.
+   */
+  public void start(long startTimeMs)
+  {
+    _startTimeMs=startTimeMs;
+    Thread acceptor=new Thread("control")
+    {
+      @Override
+      public void run()
+      {
+        while (!_server.isClosed())
+        {
+          try
+          {
+            Socket socket=_server.accept();
+            try
+            {
+              serve(socket);
+            }
+            finally
+            {
+              socket.close();
+            }
+          }
+          catch (IOException e)
+          {
+            // closed, or the connection was lost
+          }
+        }
+      }
+    };
+    acceptor.setDaemon(true);
+    acceptor.start();
+    System.err.println("Accepting commands on port "+_server.getLocalPort());
+  }
+
+  private void serve(Socket socket) throws IOException
+  {
+    BufferedReader in=new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+    PrintWriter out=new PrintWriter(socket.getOutputStream(), true);
+    String line;
+    while ((line=in.readLine())!=null)
+    {
+      line=line.trim();
+      if (line.length()>0)
+      {
+        out.println(execute(line));
+      }
+    }
+  }
+
+  /**
+   * Run one command.
+   *
+   * @return The answer to the command.
+   */
+  String execute(String command)
+  {
+    String[] words=command.split("\\s+");
+    try
+    {
+      if (words[0].equals("target") && words.length==2)
+      {
+        if (_target==null)
+        {
+          return "ERROR the run has no target throughput to change";
+        }
+        _target.setRate(Double.parseDouble(words[1]));
+      }
+      else if (words[0].equals("set") && words.length>1)
+      {
+        Properties changes=new Properties();
+        for (int i=1; i<words.length; i++)
+        {
+          int eq=words[i].indexOf('=');
+          if (eq<=0)
+          {
+            return "ERROR expected name=value: "+words[i];
+          }
+          changes.setProperty(words[i].substring(0, eq), words[i].substring(eq+1));
+        }
+        if (!_workload.reconfigure(changes))
+        {
+          return "ERROR the workload can not be changed while running";
+        }
+      }
+      else if (words[0].equals("status") && words.length==2)
+      {
+        if (_status==null)
+        {
+          return "ERROR the status is not shown";
+        }
+        _status.setStatusInterval(Integer.parseInt(words[1]));
+      }
+      else if (words[0].equals("stop") && words.length==1)
+      {
+        _workload.requestStop();
+      }
+      else
+      {
+        return "ERROR unknown command: "+command;
+      }
+    }
+    catch (NumberFormatException e)
+    {
+      return "ERROR not a number: "+e.getMessage();
+    }
+    catch (IllegalStateException e)
+    {
+      return "ERROR "+e.getMessage();
+    }
+    catch (IllegalArgumentException e)
+    {
+      return "ERROR "+e.getMessage();
+    }
+    catch (WorkloadException e)
+    {
+      return "ERROR "+e.getMessage();
+    }
+
+    long timeMs=System.currentTimeMillis()-_startTimeMs;
+    synchronized (_events)
+    {
+      _events.add(new Event(timeMs, command));
+    }
+    System.err.println("Control: "+command+" after "+timeMs+" ms");
+    return "OK";
+  }
+
+  /**
+   * Stop accepting commands.
+   */
+  public void close()
+  {
+    try
+    {
+      _server.close();
+    }
+    catch (IOException e)
+    {
+      // nothing to do
+    }
+  }
+
+  /**
+   * Export the changes, in the order they were made, with their time (in milliseconds
+   * since the start of the run).
+   */
+  public void exportMeasurements(MeasurementsExporter exporter) throws IOException
+  {
+    synchronized (_events)
+    {
+      for (int i=0; i<_events.size(); i++)
+      {
+        Event event=_events.get(i);
+        exporter.write("EVENT"+(i+1), event.description, event.timeMs);
+      }
+    }
+  }
+}
@@ -0,0 +1,373 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+
+import org.HdrHistogram.Histogram;
+
+import com.yahoo.ycsb.measurements.Measurements;
+import com.yahoo.ycsb.measurements.OneMeasurementHdrHistogram;
+import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
+
+/**
+ * Runs one benchmark with the clients of several processes, possibly on several hosts, and
+ * reports their measurements together. The coordinator does not run any operations itself:
+ * it waits for coordinator.workers workers (clients started with worker.coordinator set to
+ * its address) to connect, and hands each its properties. The records to insert, the
+ * operations to do and the target throughput are split evenly between the workers. Once
+ * all workers are ready, they are started together.
+ *
+ * The workers stream their interval HdrHistograms, which are merged into a single report,
+ * so percentiles are those of all operations rather than an average of each worker's.
+ */
+public class Coordinator
+{
+  /**
+   * The number of workers to wait for. Setting this makes the client the coordinator.
+   */
+  public static final String COORDINATOR_WORKERS_PROPERTY="coordinator.workers";
+
+  /**
+   * The port the coordinator listens on.
+   */
+  public static final String COORDINATOR_PORT_PROPERTY="coordinator.port";
+  public static final String COORDINATOR_PORT_PROPERTY_DEFAULT="7878";
+
+  // messages from the workers
+  static final byte READY=1;
+  static final byte INTERVAL=2;
+  static final byte DONE=3;
+
+  // messages to the workers
+  static final byte START=1;
+
+  private final Properties _props;
+  private final boolean _dotransactions;
+  private final int _workers;
+  private final int _port;
+
+  /** The merged measurements, by measurement name. */
+  private final ConcurrentHashMap<String,OneMeasurementHdrHistogram> _measurements=
+      new ConcurrentHashMap<String,OneMeasurementHdrHistogram>();
+
+  /** The counters summed over the workers, by counter name; see {@link Measurements#count}. */
+  private final ConcurrentHashMap<String,AtomicLong> _counts=new ConcurrentHashMap<String,AtomicLong>();
+
+  /** The operations done and the run time of each worker, as last reported. */
+  private final long[] _opsdone;
+  private final long[] _runtimeMs;
+
+  public Coordinator(Properties props, boolean dotransactions)
+  {
+    _props=props;
+    _dotransactions=dotransactions;
+    _workers=Integer.parseInt(props.getProperty(COORDINATOR_WORKERS_PROPERTY));
+    _port=Integer.parseInt(props.getProperty(COORDINATOR_PORT_PROPERTY, COORDINATOR_PORT_PROPERTY_DEFAULT));
+    if (_workers<1)
+    {
+      throw new IllegalArgumentException(COORDINATOR_WORKERS_PROPERTY+" must be at least 1");
+    }
+    if (Boolean.parseBoolean(props.getProperty(SaturationSearch.SATURATION_PROPERTY, SaturationSearch.SATURATION_PROPERTY_DEFAULT)))
+    {
+      throw new IllegalArgumentException("The saturation search can not be coordinated");
+    }
+    if (props.getProperty(RateProfile.TARGET_PROFILE_PROPERTY)!=null)
+    {
+      // the workers do not send the measurements of the phases
+      throw new IllegalArgumentException("A target profile can not be coordinated");
+    }
+    _opsdone=new long[_workers];
+    _runtimeMs=new long[_workers];
+  }
+
+  /**
+   * Run the benchmark on the workers and export the merged measurements.
+   *
+   * @param status If true, show the merged status every status.interval seconds.
+   */
+  public void run(boolean status) throws IOException, InterruptedException
+  {
+    List<Socket> sockets=new ArrayList<Socket>(_workers);
+    ServerSocket server=new ServerSocket(_port);
+    try
+    {
+      System.err.println("Waiting for "+_workers+" workers on port "+_port+"...");
+      for (int workerid=0; workerid<_workers; workerid++)
+      {
+        Socket socket=server.accept();
+        socket.setTcpNoDelay(true);
+        sockets.add(socket);
+        sendProperties(new DataOutputStream(socket.getOutputStream()), workerid);
+        System.err.println("Worker "+workerid+" connected from "+socket.getRemoteSocketAddress());
+      }
+    }
+    finally
+    {
+      server.close();
+    }
+
+    // the barrier: start the workers together once all of them are ready
+    List<DataInputStream> ins=new ArrayList<DataInputStream>(_workers);
+    for (Socket socket : sockets)
+    {
+      DataInputStream in=new DataInputStream(socket.getInputStream());
+      if (in.readByte()!=READY)
+      {
+        throw new IOException("Unexpected message from worker "+socket.getRemoteSocketAddress());
+      }
+      ins.add(in);
+    }
+    System.err.println("Starting test.");
+    for (Socket socket : sockets)
+    {
+      socket.getOutputStream().write(START);
+      socket.getOutputStream().flush();
+    }
+
+    final CountDownLatch done=new CountDownLatch(_workers);
+    for (int workerid=0; workerid<_workers; workerid++)
+    {
+      final int id=workerid;
+      final DataInputStream in=ins.get(workerid);
+      Thread reader=new Thread("worker-"+workerid)
+      {
+        @Override
+        public void run()
+        {
+          try
+          {
+            receive(id, in);
+          }
+          catch (Exception e)
+          {
+            System.err.println("Lost worker "+id+": "+e);
+          }
+          finally
+          {
+            done.countDown();
+          }
+        }
+      };
+      reader.setDaemon(true);
+      reader.start();
+    }
+
+    long sleeptimeNs=TimeUnit.SECONDS.toNanos(Integer.parseInt(_props.getProperty("status.interval","10")));
+    long st=System.currentTimeMillis();
+    long lastops=0;
+    long lastMs=st;
+    while (!done.await(sleeptimeNs, TimeUnit.NANOSECONDS))
+    {
+      if (status)
+      {
+        long nowMs=System.currentTimeMillis();
+        long ops=totalOps();
+        showStatus(st, lastMs, nowMs, lastops, ops);
+        lastops=ops;
+        lastMs=nowMs;
+      }
+    }
+
+    for (Socket socket : sockets)
+    {
+      socket.close();
+    }
+    exportMeasurements();
+  }
+
+  /**
+   * Hand a worker its properties: all of ours, with its share of the records to insert and
+   * the operations to do.
+   */
+  private void sendProperties(DataOutputStream out, int workerid) throws IOException
+  {
+    Properties props=new Properties();
+    props.putAll(_props);
+    props.remove(COORDINATOR_WORKERS_PROPERTY);
+    // the merged report needs the histograms
+    props.setProperty(Measurements.MEASUREMENT_TYPE_PROPERTY, "hdrhistogram");
+
+    if (_dotransactions)
+    {
+      long opcount=Long.parseLong(_props.getProperty(Client.OPERATION_COUNT_PROPERTY, "0"));
+      props.setProperty(Client.OPERATION_COUNT_PROPERTY, ""+(share(opcount, workerid+1)-share(opcount, workerid)));
+    }
+    else
+    {
+      long insertstart=Long.parseLong(_props.getProperty(Workload.INSERT_START_PROPERTY, Workload.INSERT_START_PROPERTY_DEFAULT));
+      long insertcount=_props.containsKey(Client.INSERT_COUNT_PROPERTY) ?
+          Long.parseLong(_props.getProperty(Client.INSERT_COUNT_PROPERTY)) :
+          Long.parseLong(_props.getProperty(Client.RECORD_COUNT_PROPERTY, Client.DEFAULT_RECORD_COUNT));
+      props.setProperty(Workload.INSERT_START_PROPERTY, ""+(insertstart+share(insertcount, workerid)));
+      props.setProperty(Client.INSERT_COUNT_PROPERTY, ""+(share(insertcount, workerid+1)-share(insertcount, workerid)));
+    }
+
+    out.writeInt(workerid);
+    out.writeInt(_workers);
+    out.writeBoolean(_dotransactions);
+    out.writeInt(props.size());
+    for (String name : props.stringPropertyNames())
+    {
+      out.writeUTF(name);
+      out.writeUTF(props.getProperty(name));
+    }
+    out.flush();
+  }
+
+  /**
+   * Where the share of the given worker starts when dividing count between the workers.
+   */
+  private long share(long count, int workerid)
+  {
+    return count/_workers*workerid+Math.min(workerid, count%_workers);
+  }
+
+  private void receive(int workerid, DataInputStream in) throws IOException, DataFormatException
+  {
+    while (true)
+    {
+      byte message=in.readByte();
+      if (message==INTERVAL)
+      {
+        _opsdone[workerid]=in.readLong();
+        int count=in.readInt();
+        for (int i=0; i<count; i++)
+        {
+          String name=in.readUTF();
+          byte[] encoded=new byte[in.readInt()];
+          in.readFully(encoded);
+          getMeasurement(name).add(Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(encoded), 0));
+        }
+      }
+      else if (message==DONE)
+      {
+        _opsdone[workerid]=in.readLong();
+        _runtimeMs[workerid]=in.readLong();
+        int count=in.readInt();
+        for (int i=0; i<count; i++)
+        {
+          OneMeasurementHdrHistogram m=getMeasurement(in.readUTF());
+          int codes=in.readInt();
+          for (int j=0; j<codes; j++)
+          {
+            m.reportReturnCode(in.readInt(), in.readInt());
+          }
+        }
+        count=in.readInt();
+        for (int i=0; i<count; i++)
+        {
+          String name=in.readUTF();
+          AtomicLong counter=new AtomicLong();
+          AtomicLong oldCounter=_counts.putIfAbsent(name, counter);
+          (oldCounter==null ? counter : oldCounter).addAndGet(in.readLong());
+        }
+        return;
+      }
+      else
+      {
+        throw new IOException("Unexpected message "+message);
+      }
+    }
+  }
+
+  private OneMeasurementHdrHistogram getMeasurement(String name)
+  {
+    OneMeasurementHdrHistogram m=_measurements.get(name);
+    if (m==null)
+    {
+      m=new OneMeasurementHdrHistogram(name, _props);
+      OneMeasurementHdrHistogram oldM=_measurements.putIfAbsent(name, m);
+      if (oldM!=null)
+      {
+        m=oldM;
+      }
+    }
+    return m;
+  }
+
+  private long totalOps()
+  {
+    long totalops=0;
+    for (long ops : _opsdone)
+    {
+      totalops+=ops;
+    }
+    return totalops;
+  }
+
+  private void showStatus(long startTimeMs, long startIntervalMs, long endIntervalMs, long lastTotalOps, long totalops)
+  {
+    SimpleDateFormat format=new SimpleDateFormat("yyyy-MM-dd HH:mm:ss:SSS");
+    DecimalFormat d=new DecimalFormat("#.##");
+    StringBuilder msg=new StringBuilder(format.format(new Date())).append(" ")
+        .append((endIntervalMs-startTimeMs)/1000).append(" sec: ")
+        .append(totalops).append(" operations; ")
+        .append(d.format(1000.0*(totalops-lastTotalOps)/(endIntervalMs-startIntervalMs))).append(" current ops/sec; ");
+    for (OneMeasurementHdrHistogram m : _measurements.values())
+    {
+      msg.append(m.getSummary()).append(" ");
+    }
+    System.err.println(msg);
+  }
+
+  private void exportMeasurements() throws IOException
+  {
+    long runtime=0;
+    for (long ms : _runtimeMs)
+    {
+      runtime=Math.max(runtime, ms);
+    }
+    MeasurementsExporter exporter=Client.createExporter(_props);
+    try
+    {
+      exporter.write("OVERALL", "RunTime(ms)", runtime);
+      exporter.write("OVERALL", "Throughput(ops/sec)", 1000.0*totalOps()/runtime);
+      exporter.write("OVERALL", "Workers", _workers);
+      for (Map.Entry<String,OneMeasurementHdrHistogram> entry : _measurements.entrySet())
+      {
+        entry.getValue().exportMeasurements(exporter);
+      }
+      for (Map.Entry<String,AtomicLong> entry : _counts.entrySet())
+      {
+        exporter.write(entry.getKey(), "Count", (double)entry.getValue().get());
+      }
+    }
+    finally
+    {
+      exporter.close();
+    }
+  }
+}
@@ -18,6 +18,7 @@
 package com.yahoo.ycsb;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Properties;
 import java.util.Set;
 import java.util.Vector;
@@ -134,4 +135,166 @@ public abstract class DB
 	 * @return Zero on success, a non-zero error code on error.  See this class's description for a discussion of error codes.
 	 */
 	public abstract int delete(String table, String key);
+
+	/**
+	 * Read a record from the database into a BufferRecord, which is cleared first. The default
+	 * implementation reads it into a HashMap and copies that; override it to fill the record
+	 * without allocating.
+	 *
+	 * @param table The name of the table
+	 * @param key The record key of the record to read.
+	 * @param fields The list of fields to read, or null for all of them
+	 * @param result The record to fill with the fields read
+	 * @return Zero on success, a non-zero error code on error or "not found".
+	 */
+	public int read(String table, String key, Set<String> fields, BufferRecord result)
+	{
+		HashMap<String,ByteIterator> values=new HashMap<String,ByteIterator>();
+		int res=read(table,key,fields,values);
+		result.fromHashMap(values);
+		return res;
+	}
+
+	/**
+	 * Update a record in the database with the fields of a BufferRecord. The default
+	 * implementation copies the record to a HashMap; override it to write the values
+	 * straight from the buffer of the record.
+	 *
+	 * @param table The name of the table
+	 * @param key The record key of the record to write.
+	 * @param values The fields to update in the record
+	 * @return Zero on success, a non-zero error code on error.  See this class's description for a discussion of error codes.
+	 */
+	public int update(String table, String key, BufferRecord values)
+	{
+		return update(table,key,values.toHashMap());
+	}
+
+	/**
+	 * Insert a record in the database with the fields of a BufferRecord. The default
+	 * implementation copies the record to a HashMap; override it to write the values
+	 * straight from the buffer of the record.
+	 *
+	 * @param table The name of the table
+	 * @param key The record key of the record to insert.
+	 * @param values The fields to insert in the record
+	 * @return Zero on success, a non-zero error code on error.  See this class's description for a discussion of error codes.
+	 */
+	public int insert(String table, String key, BufferRecord values)
+	{
+		return insert(table,key,values.toHashMap());
+	}
+
+	/**
+	 * Read a record from the database into a BufferRecord, with the key as bytes. The default
+	 * implementation makes a String of the key; override it if the database takes binary keys.
+	 *
+	 * @param table The name of the table
+	 * @param key The record key of the record to read.
+	 * @param fields The list of fields to read, or null for all of them
+	 * @param result The record to fill with the fields read
+	 * @return Zero on success, a non-zero error code on error or "not found".
+	 */
+	public int read(String table, KeyBuffer key, Set<String> fields, BufferRecord result)
+	{
+		return read(table,key.toString(),fields,result);
+	}
+
+	/**
+	 * Update a record in the database from a BufferRecord, with the key as bytes. The default
+	 * implementation makes a String of the key; override it if the database takes binary keys.
+	 *
+	 * @param table The name of the table
+	 * @param key The record key of the record to write.
+	 * @param values The fields to update in the record
+	 * @return Zero on success, a non-zero error code on error.  See this class's description for a discussion of error codes.
+	 */
+	public int update(String table, KeyBuffer key, BufferRecord values)
+	{
+		return update(table,key.toString(),values);
+	}
+
+	/**
+	 * Insert a record in the database from a BufferRecord, with the key as bytes. The default
+	 * implementation makes a String of the key; override it if the database takes binary keys.
+	 *
+	 * @param table The name of the table
+	 * @param key The record key of the record to insert.
+	 * @param values The fields to insert in the record
+	 * @return Zero on success, a non-zero error code on error.  See this class's description for a discussion of error codes.
+	 */
+	public int insert(String table, KeyBuffer key, BufferRecord values)
+	{
+		return insert(table,key.toString(),values);
+	}
+
+	/**
+	 * Read several records from the database in one go. The default implementation reads them one
+	 * at a time; override it if the database can read several records in a single request.
+	 *
+	 * @param table The name of the table
+	 * @param keys The record keys of the records to read.
+	 * @param fields The list of fields to read, or null for all of them
+	 * @param results One HashMap per key, in the same order, for the field/value pairs of that record
+	 * @return Zero if all reads succeeded, otherwise the error code of a failed read.
+	 */
+	public int batchRead(String table, List<String> keys, Set<String> fields, List<HashMap<String,ByteIterator>> results)
+	{
+		int res=0;
+		for (int i=0; i<keys.size(); i++)
+		{
+			int r=read(table,keys.get(i),fields,results.get(i));
+			if (res==0)
+			{
+				res=r;
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Insert several records in the database in one go. The default implementation inserts them one
+	 * at a time; override it if the database can insert several records in a single request.
+	 *
+	 * @param table The name of the table
+	 * @param keys The record keys of the records to insert.
+	 * @param values One HashMap per key, in the same order, with the field/value pairs to insert in that record
+	 * @return Zero if all inserts succeeded, otherwise the error code of a failed insert.
+	 */
+	public int batchInsert(String table, List<String> keys, List<HashMap<String,ByteIterator>> values)
+	{
+		int res=0;
+		for (int i=0; i<keys.size(); i++)
+		{
+			int r=insert(table,keys.get(i),values.get(i));
+			if (res==0)
+			{
+				res=r;
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Update several records in the database in one go. The default implementation updates them one
+	 * at a time; override it if the database can update several records in a single request.
+	 *
+	 * @param table The name of the table
+	 * @param keys The record keys of the records to write.
+	 * @param values One HashMap per key, in the same order, with the field/value pairs to update in that record
+	 * @return Zero if all updates succeeded, otherwise the error code of a failed update.
+	 */
+	public int batchUpdate(String table, List<String> keys, List<HashMap<String,ByteIterator>> values)
+	{
+		int res=0;
+		for (int i=0; i<keys.size(); i++)
+		{
+			int r=update(table,keys.get(i),values.get(i));
+			if (res==0)
+			{
+				res=r;
+			}
+		}
+		return res;
+	}
 }
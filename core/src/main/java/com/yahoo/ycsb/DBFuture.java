@@ -0,0 +1,176 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A completion handle for a database operation issued through {@link AsyncDB}.
+ * The result is the same return code the blocking {@link DB} methods return: zero on
+ * success, non-zero on error.
+ *
+ * Listeners are run by whichever thread completes the operation (usually a thread owned by
+ * the DB binding), so they must be thread safe and should not block.
+ */
+public class DBFuture
+{
+  /**
+   * Notified once when the operation completes.
+   */
+  public interface Listener
+  {
+    void onComplete(DBFuture future, int result);
+  }
+
+  private final CountDownLatch _done=new CountDownLatch(1);
+  private final AtomicBoolean _completed=new AtomicBoolean(false);
+  private volatile int _result;
+
+  /** Listeners added before completion; guarded by this. */
+  private List<Listener> _listeners;
+
+  /**
+   * Return a handle that is already completed with the given return code.
+   */
+  public static DBFuture completed(int result)
+  {
+    DBFuture f=new DBFuture();
+    f.complete(result);
+    return f;
+  }
+
+  /**
+   * Complete the operation with the given return code and run the listeners.
+   * Only the first call has any effect.
+   *
+   * @return true if this call completed the operation, false if it was already complete.
+   */
+  public boolean complete(int result)
+  {
+    if (!_completed.compareAndSet(false,true))
+    {
+      return false;
+    }
+    _result=result;
+
+    List<Listener> listeners;
+    synchronized (this)
+    {
+      listeners=_listeners;
+      _listeners=null;
+      _done.countDown();
+    }
+    if (listeners!=null)
+    {
+      for (Listener l : listeners)
+      {
+        l.onComplete(this,result);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Run the listener when the operation completes, or right away in the calling thread
+   * if it already has.
+   */
+  public void addListener(Listener l)
+  {
+    synchronized (this)
+    {
+      if (_done.getCount()>0)
+      {
+        if (_listeners==null)
+        {
+          _listeners=new ArrayList<Listener>(2);
+        }
+        _listeners.add(l);
+        return;
+      }
+    }
+    l.onComplete(this,_result);
+  }
+
+  public boolean isDone()
+  {
+    return _done.getCount()==0;
+  }
+
+  /**
+   * Wait for the operation to complete.
+   *
+   * @return The return code of the operation.
+   */
+  public int get() throws InterruptedException
+  {
+    _done.await();
+    return _result;
+  }
+
+  /**
+   * Wait at most the given time for the operation to complete.
+   *
+   * @return The return code of the operation.
+   * @throws TimeoutException if the operation did not complete in time.
+   */
+  public int get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException
+  {
+    if (!_done.await(timeout,unit))
+    {
+      throw new TimeoutException();
+    }
+    return _result;
+  }
+
+  /**
+   * Wait for the operation to complete without giving up on interrupts. The interrupt
+   * status of the thread is restored before returning.
+   *
+   * @return The return code of the operation.
+   */
+  public int join()
+  {
+    boolean interrupted=false;
+    try
+    {
+      while (true)
+      {
+        try
+        {
+          return get();
+        }
+        catch (InterruptedException e)
+        {
+          interrupted=true;
+        }
+      }
+    }
+    finally
+    {
+      if (interrupted)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
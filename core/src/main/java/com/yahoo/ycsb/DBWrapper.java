@@ -18,6 +18,7 @@
 package com.yahoo.ycsb;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Properties;
 import java.util.Set;
 import java.util.Vector;
@@ -26,16 +27,53 @@ import com.yahoo.ycsb.measurements.Measurements;
 
 /**
  * Wrapper around a "real" DB that measures latencies and counts return codes.
+ *
+ * The asynchronous operations are timed from the moment they are issued until their
+ * {@link DBFuture} completes. If the wrapped DB is not an {@link AsyncDB}, they are run
+ * synchronously and return an already completed handle.
  */
-public class DBWrapper extends DB
+public class DBWrapper extends AsyncDB
 {
 	DB _db;
+	AsyncDB _asyncdb;
 	Measurements _measurements;
 
+	/** The measurements of each operation, resolved once; a DBWrapper belongs to one client thread. */
+	final Measurements.Handle _read;
+	final Measurements.Handle _scan;
+	final Measurements.Handle _update;
+	final Measurements.Handle _insert;
+	final Measurements.Handle _delete;
+	final Measurements.Handle _cleanup;
+	final Measurements.Handle _batchRead;
+	final Measurements.Handle _batchInsert;
+	final Measurements.Handle _batchUpdate;
+
 	public DBWrapper(DB db)
 	{
 		_db=db;
+		if (db instanceof AsyncDB)
+		{
+			_asyncdb=(AsyncDB)db;
+		}
 		_measurements=Measurements.getMeasurements();
+		_read=_measurements.getHandle("READ");
+		_scan=_measurements.getHandle("SCAN");
+		_update=_measurements.getHandle("UPDATE");
+		_insert=_measurements.getHandle("INSERT");
+		_delete=_measurements.getHandle("DELETE");
+		_cleanup=_measurements.getHandle("CLEANUP");
+		_batchRead=_measurements.getHandle("BATCH-READ");
+		_batchInsert=_measurements.getHandle("BATCH-INSERT");
+		_batchUpdate=_measurements.getHandle("BATCH-UPDATE");
+	}
+
+	/**
+	 * Whether the wrapped DB can have several operations in flight at once.
+	 */
+	public boolean isAsync()
+	{
+		return _asyncdb!=null;
 	}
 
 	/**
@@ -73,7 +111,7 @@ public class DBWrapper extends DB
         long st = System.nanoTime();
 		_db.cleanup();
         long en=System.nanoTime();
-        measure("CLEANUP",ist, st, en);
+        measure(_cleanup,ist, st, en);
 	}
 
 	/**
@@ -91,8 +129,8 @@ public class DBWrapper extends DB
 	    long st = System.nanoTime();
 	    int res=_db.read(table,key,fields,result);
 		long en=System.nanoTime();
-		measure("READ",ist, st, en);
-	    _measurements.reportReturnCode("READ",res);
+		measure(_read,ist, st, en);
+	    _read.reportReturnCode(res);
 		return res;
 	}
 
@@ -112,14 +150,14 @@ public class DBWrapper extends DB
 	    long st = System.nanoTime();
 	    int res=_db.scan(table,startkey,recordcount,fields,result);
 		long en=System.nanoTime();
-		measure("SCAN",ist, st, en);
-	    _measurements.reportReturnCode("SCAN",res);
+		measure(_scan,ist, st, en);
+	    _scan.reportReturnCode(res);
 		return res;
 	}
 
-    private void measure(String op, long intendedStartTimeNanos, long startTimeNanos, long endTimeNanos) {
-        _measurements.measure(op, (int)((endTimeNanos-startTimeNanos)/1000));
-	    _measurements.measureIntended(op, (int)((endTimeNanos-intendedStartTimeNanos)/1000));
+    private void measure(Measurements.Handle op, long intendedStartTimeNanos, long startTimeNanos, long endTimeNanos) {
+        op.measure(_measurements.fromNanos(endTimeNanos-startTimeNanos));
+	    op.measureIntended(_measurements.fromNanos(endTimeNanos-intendedStartTimeNanos));
     }
 	
 	/**
@@ -137,8 +175,8 @@ public class DBWrapper extends DB
 	    long st = System.nanoTime();
 		int res=_db.update(table,key,values);
 		long en=System.nanoTime();
-		measure("UPDATE",ist, st, en);
-		_measurements.reportReturnCode("UPDATE",res);
+		measure(_update,ist, st, en);
+		_update.reportReturnCode(res);
 		return res;
 	}
 
@@ -157,8 +195,8 @@ public class DBWrapper extends DB
 	    long st = System.nanoTime();
 		int res=_db.insert(table,key,values);
 		long en=System.nanoTime();
-		measure("INSERT",ist, st, en);
-		_measurements.reportReturnCode("INSERT",res);
+		measure(_insert,ist, st, en);
+		_insert.reportReturnCode(res);
 		return res;
 	}
 
@@ -175,8 +213,225 @@ public class DBWrapper extends DB
 	    long st = System.nanoTime();
 		int res=_db.delete(table,key);
 		long en=System.nanoTime();
-		measure("DELETE",ist, st, en);
-		_measurements.reportReturnCode("DELETE",res);
+		measure(_delete,ist, st, en);
+		_delete.reportReturnCode(res);
+		return res;
+	}
+
+	/**
+	 * Read a record into a BufferRecord. Measured as READ, like a read into a HashMap.
+	 */
+	public int read(String table, String key, Set<String> fields, BufferRecord result)
+	{
+		long ist=_measurements.getIntendedtartTimeNs();
+		long st=System.nanoTime();
+		int res=_db.read(table,key,fields,result);
+		long en=System.nanoTime();
+		measure(_read,ist, st, en);
+		_read.reportReturnCode(res);
+		return res;
+	}
+
+	/**
+	 * Update a record from a BufferRecord. Measured as UPDATE, like an update from a HashMap.
+	 */
+	public int update(String table, String key, BufferRecord values)
+	{
+		long ist=_measurements.getIntendedtartTimeNs();
+		long st=System.nanoTime();
+		int res=_db.update(table,key,values);
+		long en=System.nanoTime();
+		measure(_update,ist, st, en);
+		_update.reportReturnCode(res);
+		return res;
+	}
+
+	/**
+	 * Insert a record from a BufferRecord. Measured as INSERT, like an insert from a HashMap.
+	 */
+	public int insert(String table, String key, BufferRecord values)
+	{
+		long ist=_measurements.getIntendedtartTimeNs();
+		long st=System.nanoTime();
+		int res=_db.insert(table,key,values);
+		long en=System.nanoTime();
+		measure(_insert,ist, st, en);
+		_insert.reportReturnCode(res);
+		return res;
+	}
+
+	/**
+	 * Read a record into a BufferRecord, with the key as bytes. Measured as READ.
+	 */
+	public int read(String table, KeyBuffer key, Set<String> fields, BufferRecord result)
+	{
+		long ist=_measurements.getIntendedtartTimeNs();
+		long st=System.nanoTime();
+		int res=_db.read(table,key,fields,result);
+		long en=System.nanoTime();
+		measure(_read,ist, st, en);
+		_read.reportReturnCode(res);
+		return res;
+	}
+
+	/**
+	 * Update a record from a BufferRecord, with the key as bytes. Measured as UPDATE.
+	 */
+	public int update(String table, KeyBuffer key, BufferRecord values)
+	{
+		long ist=_measurements.getIntendedtartTimeNs();
+		long st=System.nanoTime();
+		int res=_db.update(table,key,values);
+		long en=System.nanoTime();
+		measure(_update,ist, st, en);
+		_update.reportReturnCode(res);
+		return res;
+	}
+
+	/**
+	 * Insert a record from a BufferRecord, with the key as bytes. Measured as INSERT.
+	 */
+	public int insert(String table, KeyBuffer key, BufferRecord values)
+	{
+		long ist=_measurements.getIntendedtartTimeNs();
+		long st=System.nanoTime();
+		int res=_db.insert(table,key,values);
+		long en=System.nanoTime();
+		measure(_insert,ist, st, en);
+		_insert.reportReturnCode(res);
 		return res;
 	}
+
+	/**
+	 * Read several records in one go. The latency of the whole batch is measured as BATCH-READ,
+	 * and its share per record as READ, once for each record.
+	 */
+	public int batchRead(String table, List<String> keys, Set<String> fields, List<HashMap<String,ByteIterator>> results)
+	{
+		long ist=_measurements.getIntendedtartTimeNs();
+		long st=System.nanoTime();
+		int res=_db.batchRead(table,keys,fields,results);
+		long en=System.nanoTime();
+		measureBatch(_batchRead,_read,keys.size(),ist,st,en);
+		_batchRead.reportReturnCode(res);
+		return res;
+	}
+
+	/**
+	 * Insert several records in one go. The latency of the whole batch is measured as BATCH-INSERT,
+	 * and its share per record as INSERT, once for each record.
+	 */
+	public int batchInsert(String table, List<String> keys, List<HashMap<String,ByteIterator>> values)
+	{
+		long ist=_measurements.getIntendedtartTimeNs();
+		long st=System.nanoTime();
+		int res=_db.batchInsert(table,keys,values);
+		long en=System.nanoTime();
+		measureBatch(_batchInsert,_insert,keys.size(),ist,st,en);
+		_batchInsert.reportReturnCode(res);
+		return res;
+	}
+
+	/**
+	 * Update several records in one go. The latency of the whole batch is measured as BATCH-UPDATE,
+	 * and its share per record as UPDATE, once for each record.
+	 */
+	public int batchUpdate(String table, List<String> keys, List<HashMap<String,ByteIterator>> values)
+	{
+		long ist=_measurements.getIntendedtartTimeNs();
+		long st=System.nanoTime();
+		int res=_db.batchUpdate(table,keys,values);
+		long en=System.nanoTime();
+		measureBatch(_batchUpdate,_update,keys.size(),ist,st,en);
+		_batchUpdate.reportReturnCode(res);
+		return res;
+	}
+
+	/**
+	 * Measure a batch of n operations: the whole batch as BATCH-op, and the amortized
+	 * latency of each of its operations as op.
+	 */
+	private void measureBatch(Measurements.Handle batch, Measurements.Handle op, int n, long ist, long st, long en)
+	{
+		measure(batch,ist,st,en);
+		if (n>0)
+		{
+			long each=_measurements.fromNanos((en-st)/n);
+			long eachIntended=_measurements.fromNanos((en-ist)/n);
+			for (int i=0; i<n; i++)
+			{
+				op.measure(each);
+				op.measureIntended(eachIntended);
+			}
+		}
+	}
+
+	/**
+	 * Records the latency and return code of an asynchronous operation when it completes.
+	 */
+	private class MeasuringListener implements DBFuture.Listener
+	{
+		final Measurements.Handle _op;
+		final long _ist;
+		final long _st;
+
+		MeasuringListener(Measurements.Handle op, long ist, long st)
+		{
+			_op=op;
+			_ist=ist;
+			_st=st;
+		}
+
+		public void onComplete(DBFuture future, int result)
+		{
+			long en=System.nanoTime();
+			measure(_op,_ist,_st,en);
+			_op.reportReturnCode(result);
+		}
+	}
+
+	public DBFuture readAsync(String table, String key, Set<String> fields, HashMap<String,ByteIterator> result)
+	{
+		long ist=_measurements.getIntendedtartTimeNs();
+		long st=System.nanoTime();
+		DBFuture f=_asyncdb!=null ? _asyncdb.readAsync(table,key,fields,result) : DBFuture.completed(_db.read(table,key,fields,result));
+		f.addListener(new MeasuringListener(_read,ist,st));
+		return f;
+	}
+
+	public DBFuture scanAsync(String table, String startkey, int recordcount, Set<String> fields, Vector<HashMap<String,ByteIterator>> result)
+	{
+		long ist=_measurements.getIntendedtartTimeNs();
+		long st=System.nanoTime();
+		DBFuture f=_asyncdb!=null ? _asyncdb.scanAsync(table,startkey,recordcount,fields,result) : DBFuture.completed(_db.scan(table,startkey,recordcount,fields,result));
+		f.addListener(new MeasuringListener(_scan,ist,st));
+		return f;
+	}
+
+	public DBFuture updateAsync(String table, String key, HashMap<String,ByteIterator> values)
+	{
+		long ist=_measurements.getIntendedtartTimeNs();
+		long st=System.nanoTime();
+		DBFuture f=_asyncdb!=null ? _asyncdb.updateAsync(table,key,values) : DBFuture.completed(_db.update(table,key,values));
+		f.addListener(new MeasuringListener(_update,ist,st));
+		return f;
+	}
+
+	public DBFuture insertAsync(String table, String key, HashMap<String,ByteIterator> values)
+	{
+		long ist=_measurements.getIntendedtartTimeNs();
+		long st=System.nanoTime();
+		DBFuture f=_asyncdb!=null ? _asyncdb.insertAsync(table,key,values) : DBFuture.completed(_db.insert(table,key,values));
+		f.addListener(new MeasuringListener(_insert,ist,st));
+		return f;
+	}
+
+	public DBFuture deleteAsync(String table, String key)
+	{
+		long ist=_measurements.getIntendedtartTimeNs();
+		long st=System.nanoTime();
+		DBFuture f=_asyncdb!=null ? _asyncdb.deleteAsync(table,key) : DBFuture.completed(_db.delete(table,key));
+		f.addListener(new MeasuringListener(_delete,ist,st));
+		return f;
+	}
 }
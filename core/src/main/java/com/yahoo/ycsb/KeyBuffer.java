@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.nio.charset.Charset;
+
+/**
+ * A record key as ASCII bytes in a reusable array, for DBs that take keys as bytes. Setting
+ * a key allocates nothing; a String is only made if toString() is called.
+ *
+ * A key buffer is not thread safe; each client thread has its own.
+ */
+public class KeyBuffer
+{
+	private static final Charset ASCII=Charset.forName("US-ASCII");
+
+	/** Long.MIN_VALUE has 19 digits and a sign. */
+	private static final int MAX_NUMBER_LENGTH=20;
+
+	/** The array the key is formatted in. */
+	private byte[] _own=new byte[32];
+	/** The bytes of the key: either _own, or an array set with wrap(). */
+	private byte[] _bytes=_own;
+	private int _length;
+	private String _string;
+
+	/**
+	 * Set the key to a prefix followed by a number in decimal, like prefix+number.
+	 *
+	 * @return This key buffer.
+	 */
+	public KeyBuffer set(String prefix, long number)
+	{
+		int n=prefix.length();
+		ensureCapacity(n+MAX_NUMBER_LENGTH);
+		_bytes=_own;
+		for (int i=0; i<n; i++)
+		{
+			_bytes[i]=(byte)prefix.charAt(i);
+		}
+		_length=n+formatLong(number, _bytes, n);
+		_string=null;
+		return this;
+	}
+
+	/**
+	 * Set the key to the characters of a String, which must be ASCII.
+	 *
+	 * @return This key buffer.
+	 */
+	public KeyBuffer set(String key)
+	{
+		int n=key.length();
+		ensureCapacity(n);
+		_bytes=_own;
+		for (int i=0; i<n; i++)
+		{
+			_bytes[i]=(byte)key.charAt(i);
+		}
+		_length=n;
+		_string=key;
+		return this;
+	}
+
+	/**
+	 * Set the key to the bytes of an array, without copying them. The array must not change
+	 * while it is the key.
+	 *
+	 * @return This key buffer.
+	 */
+	public KeyBuffer wrap(byte[] key)
+	{
+		_bytes=key;
+		_length=key.length;
+		_string=null;
+		return this;
+	}
+
+	/**
+	 * The bytes of the key, from 0 to length(). The array may be reused when the key is set
+	 * again, and must not be modified.
+	 */
+	public byte[] bytes()
+	{
+		return _bytes;
+	}
+
+	public int length()
+	{
+		return _length;
+	}
+
+	/**
+	 * The key as a String, made once per key.
+	 */
+	@Override
+	public String toString()
+	{
+		if (_string==null)
+		{
+			_string=new String(_bytes, 0, _length, ASCII);
+		}
+		return _string;
+	}
+
+	private void ensureCapacity(int n)
+	{
+		if (_own.length<n)
+		{
+			_own=new byte[Math.max(n, _own.length*2)];
+		}
+	}
+
+	/**
+	 * Write a number in decimal, like Long.toString(), to an array.
+	 *
+	 * @return The number of bytes written.
+	 */
+	static int formatLong(long number, byte[] dst, int off)
+	{
+		if (number==Long.MIN_VALUE)
+		{
+			byte[] min=Long.toString(Long.MIN_VALUE).getBytes(ASCII);
+			System.arraycopy(min, 0, dst, off, min.length);
+			return min.length;
+		}
+		int start=off;
+		if (number<0)
+		{
+			dst[off++]='-';
+			number=-number;
+		}
+		int digits=1;
+		for (long n=number/10; n>0; n/=10)
+		{
+			digits++;
+		}
+		for (int i=off+digits-1; i>=off; i--)
+		{
+			dst[i]=(byte)('0'+number%10);
+			number/=10;
+		}
+		return off+digits-start;
+	}
+}
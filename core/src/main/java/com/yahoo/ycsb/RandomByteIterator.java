@@ -16,6 +16,8 @@
  */
 package com.yahoo.ycsb;
 
+import java.nio.ByteBuffer;
+
 /**
  *  A ByteIterator that generates a random sequence of bytes.
  */
@@ -42,6 +44,29 @@ public class RandomByteIterator extends ByteIterator {
     } catch (ArrayIndexOutOfBoundsException e) { /* ignore it */ }
   }
 
+  /**
+   * Fill part of a buffer with random printable bytes, without allocating anything. The bytes
+   * come from a xorshift generator seeded once per call, eight at a time, which is much cheaper
+   * than a call to Random per six bytes.
+   */
+  public static void fill(ByteBuffer buffer, int offset, int length) {
+    long x = Utils.random().nextLong() | 1;
+    int i = 0;
+    for (; i + 8 <= length; i += 8) {
+      x ^= x << 13;
+      x ^= x >>> 7;
+      x ^= x << 17;
+      // eight bytes between ' ' and '_'
+      buffer.putLong(offset + i, (x & 0x3f3f3f3f3f3f3f3fL) + 0x2020202020202020L);
+    }
+    for (; i < length; i++) {
+      x ^= x << 13;
+      x ^= x >>> 7;
+      x ^= x << 17;
+      buffer.put(offset + i, (byte)((x & 0x3f) + ' '));
+    }
+  }
+
   private void fillBytes() {
     if(bufOff ==  buf.length) {
       fillBytesImpl(buf, 0);
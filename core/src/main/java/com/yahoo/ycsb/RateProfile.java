@@ -0,0 +1,400 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A target throughput (for all client threads together) that varies over the run.
+ *
+ * A profile is a comma separated list of segments, each a duration and a rate:
+ * <UL>
+ * <LI><b>60s:10k</b>: hold 10000 ops/sec for 60 seconds
+ * <LI><b>120s:10k-&gt;50k</b>: ramp linearly from 10000 to 50000 ops/sec over 120 seconds
+ * <LI><b>300s:sine(30k,20k,60s)</b>: oscillate around 30000 ops/sec with an amplitude of 20000 ops/sec and a period of 60 seconds
+ * </ul>
+ * Durations take a ms, s, m or h suffix (seconds if none), rates a k or m suffix. A step is simply
+ * a segment with a different rate than the one before it. The run ends with the last segment.
+ *
+ * For reporting, the profile is cut into phases: one per constant segment, and slices of a fixed
+ * length for ramps and sines, each labelled with its mean target throughput.
+ */
+public class RateProfile
+{
+  /**
+   * The target throughput profile. When set, it is used instead of the "target" property.
+   */
+  public static final String TARGET_PROFILE_PROPERTY="target.profile";
+
+  /**
+   * The length (in seconds) of the phases ramps and sines are reported in.
+   */
+  public static final String TARGET_PROFILE_SLICE_PROPERTY="target.profile.slice";
+  public static final String TARGET_PROFILE_SLICE_PROPERTY_DEFAULT="10";
+
+  /**
+   * A part of the profile reported on its own.
+   */
+  public static class Phase
+  {
+    public final long offsetNs;
+    public final long lengthNs;
+    public final double meanRate;
+
+    Phase(long offsetNs, long lengthNs, double meanRate)
+    {
+      this.offsetNs=offsetNs;
+      this.lengthNs=lengthNs;
+      this.meanRate=meanRate;
+    }
+
+    public String getLabel()
+    {
+      return Math.round(meanRate)+"ops/s";
+    }
+  }
+
+  abstract static class Segment
+  {
+    long offsetNs;
+    long durationNs;
+
+    /** The target throughput at the given time since the start of the segment. */
+    abstract double rateAt(long sinceNs);
+
+    /** Whether the rate changes within the segment, so it should be reported in slices. */
+    abstract boolean isVarying();
+  }
+
+  static class Hold extends Segment
+  {
+    volatile double rate;
+
+    Hold(double rate)
+    {
+      this.rate=rate;
+    }
+
+    double rateAt(long sinceNs)
+    {
+      return rate;
+    }
+
+    boolean isVarying()
+    {
+      return false;
+    }
+  }
+
+  static class Ramp extends Segment
+  {
+    final double from, to;
+
+    Ramp(double from, double to)
+    {
+      this.from=from;
+      this.to=to;
+    }
+
+    double rateAt(long sinceNs)
+    {
+      return from+(to-from)*sinceNs/durationNs;
+    }
+
+    boolean isVarying()
+    {
+      return true;
+    }
+  }
+
+  static class Sine extends Segment
+  {
+    final double base, amplitude;
+    final long periodNs;
+
+    Sine(double base, double amplitude, long periodNs)
+    {
+      this.base=base;
+      this.amplitude=amplitude;
+      this.periodNs=periodNs;
+    }
+
+    double rateAt(long sinceNs)
+    {
+      return base+amplitude*Math.sin(2*Math.PI*sinceNs/periodNs);
+    }
+
+    boolean isVarying()
+    {
+      return true;
+    }
+  }
+
+  private final List<Segment> _segments;
+  private final long _durationNs;
+  private final List<Phase> _phases;
+
+  /** Incremented whenever the rate is changed with {@link #setRate(double)}. */
+  private volatile int _generation;
+
+  private RateProfile(List<Segment> segments, long sliceNs)
+  {
+    _segments=segments;
+    long offset=0;
+    List<Phase> phases=new ArrayList<Phase>();
+    for (Segment s : segments)
+    {
+      s.offsetNs=offset;
+      if (!s.isVarying())
+      {
+        phases.add(new Phase(offset, s.durationNs, s.rateAt(0)));
+      }
+      else
+      {
+        for (long st=0; st<s.durationNs; st+=sliceNs)
+        {
+          long len=Math.min(sliceNs, s.durationNs-st);
+          phases.add(new Phase(offset+st, len, meanRate(s, st, len)));
+        }
+      }
+      offset+=s.durationNs;
+    }
+    _durationNs=offset;
+    _phases=Collections.unmodifiableList(phases);
+  }
+
+  /**
+   * A profile that holds the given throughput forever.
+   */
+  public static RateProfile constant(double opsPerSec)
+  {
+    Segment s=new Hold(opsPerSec);
+    s.durationNs=Long.MAX_VALUE;
+    List<Segment> segments=new ArrayList<Segment>(1);
+    segments.add(s);
+    return new RateProfile(segments, Long.MAX_VALUE);
+  }
+
+  /**
+   * Change the throughput of a profile created by {@link #constant(double)} while it is in use.
+   *
+   * @throws IllegalStateException if this is not a constant profile.
+   * @throws IllegalArgumentException if the throughput is not positive.
+   */
+  public synchronized void setRate(double opsPerSec)
+  {
+    if (_durationNs!=Long.MAX_VALUE)
+    {
+      throw new IllegalStateException("Only a constant target can be changed");
+    }
+    if (!(opsPerSec>0))
+    {
+      throw new IllegalArgumentException("Target throughput must be positive: "+opsPerSec);
+    }
+    ((Hold)_segments.get(0)).rate=opsPerSec;
+    _generation++;
+  }
+
+  /**
+   * The number of times the rate was changed with {@link #setRate(double)}.
+   */
+  public int getGeneration()
+  {
+    return _generation;
+  }
+
+  /**
+   * Parse a profile, see the class description for the syntax.
+   *
+   * @param sliceNs The length of the phases ramps and sines are reported in.
+   * @throws IllegalArgumentException if the profile can not be parsed.
+   */
+  public static RateProfile parse(String profile, long sliceNs)
+  {
+    List<Segment> segments=new ArrayList<Segment>();
+    // split on the commas between segments, not the ones inside sine(...)
+    int depth=0, from=0;
+    for (int i=0; i<=profile.length(); i++)
+    {
+      char c=i<profile.length() ? profile.charAt(i) : ',';
+      if (c=='(')
+      {
+        depth++;
+      }
+      else if (c==')')
+      {
+        depth--;
+      }
+      else if (c==',' && depth==0)
+      {
+        String segment=profile.substring(from, i).trim();
+        if (segment.length()>0)
+        {
+          segments.add(parseSegment(segment));
+        }
+        from=i+1;
+      }
+    }
+    if (segments.isEmpty())
+    {
+      throw new IllegalArgumentException("Empty "+TARGET_PROFILE_PROPERTY);
+    }
+    return new RateProfile(segments, sliceNs);
+  }
+
+  static Segment parseSegment(String segment)
+  {
+    int colon=segment.indexOf(':');
+    if (colon<0)
+    {
+      throw new IllegalArgumentException("Expected <duration>:<rate> in profile segment \""+segment+"\"");
+    }
+    long duration=parseDuration(segment.substring(0, colon));
+    String spec=segment.substring(colon+1).trim();
+
+    Segment s;
+    int arrow=spec.indexOf("->");
+    if (spec.startsWith("sine(") && spec.endsWith(")"))
+    {
+      String[] args=spec.substring(5, spec.length()-1).split(",");
+      if (args.length!=3)
+      {
+        throw new IllegalArgumentException("Expected sine(<base>,<amplitude>,<period>) in profile segment \""+segment+"\"");
+      }
+      double base=parseRate(args[0]);
+      double amplitude=parseRate(args[1]);
+      if (amplitude>=base)
+      {
+        throw new IllegalArgumentException("The amplitude must be below the base rate in profile segment \""+segment+"\"");
+      }
+      s=new Sine(base, amplitude, parseDuration(args[2]));
+    }
+    else if (arrow>=0)
+    {
+      s=new Ramp(parseRate(spec.substring(0, arrow)), parseRate(spec.substring(arrow+2)));
+    }
+    else
+    {
+      s=new Hold(parseRate(spec));
+    }
+    s.durationNs=duration;
+    return s;
+  }
+
+  static double parseRate(String rate)
+  {
+    rate=rate.trim().toLowerCase();
+    double multiplier=1;
+    if (rate.endsWith("k"))
+    {
+      multiplier=1000;
+      rate=rate.substring(0, rate.length()-1);
+    }
+    else if (rate.endsWith("m"))
+    {
+      multiplier=1000000;
+      rate=rate.substring(0, rate.length()-1);
+    }
+    double ret=Double.parseDouble(rate)*multiplier;
+    if (ret<=0)
+    {
+      throw new IllegalArgumentException("Target throughput must be positive: "+rate);
+    }
+    return ret;
+  }
+
+  static long parseDuration(String duration)
+  {
+    duration=duration.trim().toLowerCase();
+    TimeUnit unit=TimeUnit.SECONDS;
+    long multiplier=1;
+    if (duration.endsWith("ms"))
+    {
+      unit=TimeUnit.MILLISECONDS;
+      duration=duration.substring(0, duration.length()-2);
+    }
+    else if (duration.endsWith("s"))
+    {
+      duration=duration.substring(0, duration.length()-1);
+    }
+    else if (duration.endsWith("m"))
+    {
+      multiplier=60;
+      duration=duration.substring(0, duration.length()-1);
+    }
+    else if (duration.endsWith("h"))
+    {
+      multiplier=3600;
+      duration=duration.substring(0, duration.length()-1);
+    }
+    long ret=unit.toNanos((long)(Double.parseDouble(duration)*multiplier*1000))/1000;
+    if (ret<=0)
+    {
+      throw new IllegalArgumentException("Profile durations must be positive: "+duration);
+    }
+    return ret;
+  }
+
+  private static double meanRate(Segment s, long sinceNs, long lengthNs)
+  {
+    // good enough for reporting
+    final int samples=100;
+    double sum=0;
+    for (int i=0; i<samples; i++)
+    {
+      sum+=s.rateAt(sinceNs+lengthNs*i/samples);
+    }
+    return sum/samples;
+  }
+
+  /**
+   * The target throughput (ops/sec, all threads together) at the given time since the
+   * start of the run, or zero once the profile has ended.
+   */
+  public double rateAt(long elapsedNs)
+  {
+    for (int i=0; i<_segments.size(); i++)
+    {
+      Segment s=_segments.get(i);
+      if (elapsedNs-s.offsetNs<s.durationNs)
+      {
+        return s.rateAt(elapsedNs-s.offsetNs);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * The total length of the profile.
+   */
+  public long getDurationNs()
+  {
+    return _durationNs;
+  }
+
+  /**
+   * The phases the profile is reported in, in order.
+   */
+  public List<Phase> getPhases()
+  {
+    return _phases;
+  }
+}
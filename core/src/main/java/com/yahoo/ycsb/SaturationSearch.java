@@ -0,0 +1,286 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import com.yahoo.ycsb.measurements.Measurements;
+import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
+
+/**
+ * Searches for the highest throughput the database sustains while a latency percentile
+ * stays under a bound, instead of hand tuning the target over many runs.
+ *
+ * The clients run at a target that is changed between short probes. The target doubles
+ * until a probe fails, then the last passing and the first failing targets are bisected
+ * until they are close enough. A probe passes if the percentile of every operation (or of
+ * saturation.operation) is within saturation.latency, and the achieved throughput is at
+ * least saturation.minthroughput of the target. If no probe passes, the target is halved
+ * down to saturation.start times saturation.precision before the search gives up. Each probe is a phase of the
+ * measurements, so its latencies are exported as well as the knee and the whole curve.
+ */
+public class SaturationSearch
+{
+  /**
+   * Run the saturation search instead of a fixed target.
+   */
+  public static final String SATURATION_PROPERTY="saturation";
+  public static final String SATURATION_PROPERTY_DEFAULT="false";
+
+  /**
+   * The latency bound (in microseconds) of a passing probe. Required.
+   */
+  public static final String LATENCY_PROPERTY="saturation.latency";
+
+  /**
+   * The percentile the latency bound applies to.
+   */
+  public static final String PERCENTILE_PROPERTY="saturation.percentile";
+  public static final String PERCENTILE_PROPERTY_DEFAULT="99";
+
+  /**
+   * The operation (e.g. READ) the latency bound applies to; all operations if not set.
+   */
+  public static final String OPERATION_PROPERTY="saturation.operation";
+
+  /**
+   * The fraction of the target a probe must achieve to pass.
+   */
+  public static final String MIN_THROUGHPUT_PROPERTY="saturation.minthroughput";
+  public static final String MIN_THROUGHPUT_PROPERTY_DEFAULT="0.95";
+
+  /**
+   * The target (ops/sec) of the first probe.
+   */
+  public static final String START_PROPERTY="saturation.start";
+  public static final String START_PROPERTY_DEFAULT="1000";
+
+  /**
+   * The highest target (ops/sec) to probe; unlimited if not set.
+   */
+  public static final String MAX_PROPERTY="saturation.max";
+
+  /**
+   * The search stops once the failing and passing targets are within this fraction of each other.
+   */
+  public static final String PRECISION_PROPERTY="saturation.precision";
+  public static final String PRECISION_PROPERTY_DEFAULT="0.05";
+
+  /**
+   * The time (in seconds) measured by each probe.
+   */
+  public static final String PROBE_TIME_PROPERTY="saturation.probetime";
+  public static final String PROBE_TIME_PROPERTY_DEFAULT="10";
+
+  /**
+   * The time (in seconds) the clients run at a new target before the probe measures them,
+   * so operations still queued from the previous probe do not count.
+   */
+  public static final String SETTLE_TIME_PROPERTY="saturation.settletime";
+  public static final String SETTLE_TIME_PROPERTY_DEFAULT="1";
+
+  /**
+   * The outcome of one probe.
+   */
+  static class Probe
+  {
+    final double target;
+    final double throughput;
+    final long latency;
+    final boolean passed;
+
+    Probe(double target, double throughput, long latency, boolean passed)
+    {
+      this.target=target;
+      this.throughput=throughput;
+      this.latency=latency;
+      this.passed=passed;
+    }
+  }
+
+  private final RateProfile _target;
+  private final List<ClientThread> _clients;
+  private final long _latencybound;
+  private final double _percentile;
+  private final String _operation;
+  private final double _minthroughput;
+  private final double _start;
+  private final double _max;
+  private final double _precision;
+  private final long _probetimeMs;
+  private final long _settletimeMs;
+
+  private final List<Probe> _probes=new ArrayList<Probe>();
+  private double _knee;
+
+  /**
+   * @param target The target of the clients, a constant profile the search changes.
+   * @param clients The clients, started by the caller.
+   * @throws IllegalArgumentException if the properties are invalid.
+   */
+  public SaturationSearch(Properties props, RateProfile target, List<ClientThread> clients)
+  {
+    _target=target;
+    _clients=clients;
+    String latency=props.getProperty(LATENCY_PROPERTY);
+    if (latency==null)
+    {
+      throw new IllegalArgumentException("Missing property: "+LATENCY_PROPERTY);
+    }
+    _latencybound=Long.parseLong(latency);
+    _percentile=Double.parseDouble(props.getProperty(PERCENTILE_PROPERTY, PERCENTILE_PROPERTY_DEFAULT));
+    _operation=props.getProperty(OPERATION_PROPERTY);
+    _minthroughput=Double.parseDouble(props.getProperty(MIN_THROUGHPUT_PROPERTY, MIN_THROUGHPUT_PROPERTY_DEFAULT));
+    _start=Double.parseDouble(props.getProperty(START_PROPERTY, START_PROPERTY_DEFAULT));
+    _max=props.containsKey(MAX_PROPERTY) ? Double.parseDouble(props.getProperty(MAX_PROPERTY)) : Double.MAX_VALUE;
+    _precision=Double.parseDouble(props.getProperty(PRECISION_PROPERTY, PRECISION_PROPERTY_DEFAULT));
+    _probetimeMs=TimeUnit.SECONDS.toMillis(Integer.parseInt(props.getProperty(PROBE_TIME_PROPERTY, PROBE_TIME_PROPERTY_DEFAULT)));
+    _settletimeMs=TimeUnit.SECONDS.toMillis(Integer.parseInt(props.getProperty(SETTLE_TIME_PROPERTY, SETTLE_TIME_PROPERTY_DEFAULT)));
+    if (_start<=0 || _precision<=0)
+    {
+      throw new IllegalArgumentException(START_PROPERTY+" and "+PRECISION_PROPERTY+" must be positive");
+    }
+  }
+
+  /**
+   * Run the probes. Returns when the search is done, or the clients stopped on their own.
+   *
+   * @return The highest passing target, or 0 if none passed.
+   */
+  public double run() throws InterruptedException
+  {
+    double passed=0;
+    double failed=0;
+
+    // grow the target until a probe fails
+    double target=Math.min(_start, _max);
+    while (failed==0)
+    {
+      if (!probe(target))
+      {
+        failed=target;
+      }
+      else
+      {
+        passed=target;
+        if (target>=_max)
+        {
+          break;
+        }
+        target=Math.min(target*2, _max);
+      }
+      if (!clientsRunning())
+      {
+        return _knee=passed;
+      }
+    }
+
+    // then bisect between the last passing and the first failing one, or halve the target
+    // down to a floor if none passed yet
+    while (failed>0 && failed-passed>_precision*failed && clientsRunning())
+    {
+      if (passed==0 && failed<_start*_precision)
+      {
+        System.err.println("Saturation search found no passing target down to "
+            +new DecimalFormat("#.##").format(failed)+" ops/sec");
+        break;
+      }
+      target=(passed+failed)/2;
+      if (probe(target))
+      {
+        passed=target;
+      }
+      else
+      {
+        failed=target;
+      }
+    }
+    return _knee=passed;
+  }
+
+  private boolean probe(double target) throws InterruptedException
+  {
+    Measurements measurements=Measurements.getMeasurements();
+    _target.setRate(target);
+    Thread.sleep(_settletimeMs);
+
+    String name="PROBE"+(_probes.size()+1)+"-"+Math.round(target)+"ops/s";
+    long startops=totalOps();
+    long st=System.nanoTime();
+    measurements.startPhase(name, target, startops);
+    Thread.sleep(_probetimeMs);
+    long latency=measurements.getPhasePercentile(_operation, _percentile);
+    long ops=totalOps()-startops;
+    measurements.endPhase(startops+ops);
+    double throughput=ops*1e9/(System.nanoTime()-st);
+
+    boolean passed=latency>=0 && latency<=_latencybound && throughput>=_minthroughput*target;
+    _probes.add(new Probe(target, throughput, latency, passed));
+
+    DecimalFormat d=new DecimalFormat("#.##");
+    System.err.println("Saturation probe at "+d.format(target)+" ops/sec: "+d.format(throughput)+" ops/sec, "
+        +d.format(_percentile)+"th percentile latency "+latency+" us - "+(passed ? "passed" : "failed"));
+    return passed;
+  }
+
+  private long totalOps()
+  {
+    long totalops=0;
+    for (ClientThread t : _clients)
+    {
+      totalops+=t.getOpsDone();
+    }
+    return totalops;
+  }
+
+  private boolean clientsRunning()
+  {
+    for (ClientThread t : _clients)
+    {
+      if (!t.isAlive())
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Export the knee and the throughput and latency of every probe, in the order they ran.
+   */
+  public void exportMeasurements(MeasurementsExporter exporter) throws IOException
+  {
+    exporter.write("SATURATION", "MaxSustainableThroughput(ops/sec)", _knee);
+    exporter.write("SATURATION", "LatencyBound(us)", _latencybound);
+    exporter.write("SATURATION", "Percentile", _percentile);
+    for (int i=0; i<_probes.size(); i++)
+    {
+      Probe p=_probes.get(i);
+      String metric="SATURATION-PROBE"+(i+1);
+      exporter.write(metric, "TargetThroughput(ops/sec)", p.target);
+      exporter.write(metric, "Throughput(ops/sec)", p.throughput);
+      exporter.write(metric, "PercentileLatency(us)", p.latency);
+      exporter.write(metric, "Passed", p.passed ? 1 : 0);
+    }
+  }
+}
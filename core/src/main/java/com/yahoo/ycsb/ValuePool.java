@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * A pool of random bytes generated once, outside the heap, that values are served from as
+ * slices at random offsets, so that no random number is drawn per byte of a value.
+ *
+ * The pool is made of segments of SEGMENT_SIZE bytes, each of which starts with random bytes
+ * and ends with zeros, in the proportion given by the compressibility: 0 gives incompressible
+ * values, 0.5 values that compress to about half their size, and 1 values of zeros only.
+ * The random bytes cover the whole byte range, so values are not printable text.
+ *
+ * The pool never changes once built and can be shared by all client threads.
+ */
+public class ValuePool
+{
+	/** The size of the runs of random bytes and zeros, smaller than typical values so that each value has about the compressibility of the pool. */
+	public static final int SEGMENT_SIZE=64;
+
+	private final ByteBuffer _pool;
+	private final double _compressibility;
+
+	/** A view of the pool for each thread, whose position and limit select the slice to copy. */
+	private final ThreadLocal<ByteBuffer> _views=new ThreadLocal<ByteBuffer>()
+	{
+		@Override
+		protected ByteBuffer initialValue()
+		{
+			return _pool.duplicate();
+		}
+	};
+
+	/**
+	 * Generate a pool.
+	 *
+	 * @param size The size of the pool in bytes.
+	 * @param compressibility The fraction of each segment that is zeros, from 0 to 1.
+	 */
+	public ValuePool(int size, double compressibility)
+	{
+		if (size<1)
+		{
+			throw new IllegalArgumentException("Value pool size must be positive: "+size);
+		}
+		if (!(compressibility>=0 && compressibility<=1))
+		{
+			throw new IllegalArgumentException("Compressibility must be between 0 and 1: "+compressibility);
+		}
+		_compressibility=compressibility;
+		_pool=ByteBuffer.allocateDirect(size);
+
+		int random=(int)Math.round(SEGMENT_SIZE*(1-compressibility));
+		long x=Utils.random().nextLong()|1;
+		for (int segment=0; segment<size; segment+=SEGMENT_SIZE)
+		{
+			int end=Math.min(segment+random, size);
+			int i=segment;
+			for (; i+8<=end; i+=8)
+			{
+				x^=x<<13;
+				x^=x>>>7;
+				x^=x<<17;
+				_pool.putLong(i, x);
+			}
+			for (; i<end; i++)
+			{
+				x^=x<<13;
+				x^=x>>>7;
+				x^=x<<17;
+				_pool.put(i, (byte)x);
+			}
+			// the rest of the segment is already zero
+		}
+	}
+
+	public int size()
+	{
+		return _pool.capacity();
+	}
+
+	public double compressibility()
+	{
+		return _compressibility;
+	}
+
+	/**
+	 * Choose where a value of the given length starts in the pool.
+	 *
+	 * @throws IllegalArgumentException if the value is larger than the pool.
+	 */
+	public int offset(int length)
+	{
+		return offset(length, Utils.random());
+	}
+
+	int offset(int length, Random random)
+	{
+		int range=_pool.capacity()-length+1;
+		if (length<0 || range<1)
+		{
+			throw new IllegalArgumentException("Value of "+length+" bytes does not fit in a pool of "+_pool.capacity());
+		}
+		return random.nextInt(range);
+	}
+
+	/**
+	 * A random value of the given length, read from the pool without copying it.
+	 */
+	public ByteIterator value(int length)
+	{
+		return new ByteBufferByteIterator(_pool, offset(length), length);
+	}
+
+	/**
+	 * Add a random value of the given length to a record, copied from the pool.
+	 */
+	public void addValue(BufferRecord record, int field, int length)
+	{
+		int offset=offset(length);
+		ByteBuffer view=_views.get();
+		view.limit(offset+length).position(offset);
+		record.add(field, view);
+	}
+}
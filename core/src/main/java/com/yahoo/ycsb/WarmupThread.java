@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.text.DecimalFormat;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import com.yahoo.ycsb.measurements.Measurements;
+
+/**
+ * A thread that ends the warm-up of the clients. While warming up, the operations run
+ * as usual but are measured separately (see {@link Measurements#startWarmup()}), so JIT
+ * compilation, connection setup and cold caches do not skew the results. The operations
+ * done during the warm-up do not count towards the operation count.
+ *
+ * The warm-up ends after warmup.time seconds or warmup.operations operations, whichever
+ * comes first. With warmup.stabilize it also ends as soon as the throughput of the last
+ * few intervals is stable.
+ */
+public class WarmupThread extends Thread
+{
+  /**
+   * The length of the warm-up in seconds.
+   */
+  public static final String WARMUP_TIME_PROPERTY="warmup.time";
+
+  /**
+   * The number of operations (of all threads together) done during the warm-up.
+   */
+  public static final String WARMUP_OPERATIONS_PROPERTY="warmup.operations";
+
+  /**
+   * End the warm-up once the throughput of warmup.stabilize.intervals consecutive intervals
+   * stays within warmup.stabilize.tolerance of their mean.
+   */
+  public static final String WARMUP_STABILIZE_PROPERTY="warmup.stabilize";
+  public static final String WARMUP_STABILIZE_PROPERTY_DEFAULT="false";
+
+  /**
+   * The length of the intervals the throughput is compared over, in milliseconds.
+   */
+  public static final String WARMUP_STABILIZE_INTERVAL_PROPERTY="warmup.stabilize.interval";
+  public static final String WARMUP_STABILIZE_INTERVAL_PROPERTY_DEFAULT="1000";
+
+  public static final String WARMUP_STABILIZE_INTERVALS_PROPERTY="warmup.stabilize.intervals";
+  public static final String WARMUP_STABILIZE_INTERVALS_PROPERTY_DEFAULT="5";
+
+  public static final String WARMUP_STABILIZE_TOLERANCE_PROPERTY="warmup.stabilize.tolerance";
+  public static final String WARMUP_STABILIZE_TOLERANCE_PROPERTY_DEFAULT="0.05";
+
+  /** How often the limits are checked when not stabilizing. */
+  private static final long POLL_INTERVAL_MS=100;
+
+  private final List<ClientThread> _clients;
+  private final long _warmuptimeMs;
+  private final long _warmupops;
+  private final boolean _stabilize;
+  private final long _intervalMs;
+  private final double[] _throughputs;
+  private final double _tolerance;
+
+  private volatile long _endTimeMs;
+  private volatile long _opsDone;
+
+  /**
+   * Whether the properties ask for a warm-up.
+   */
+  public static boolean isEnabled(Properties props)
+  {
+    return props.containsKey(WARMUP_TIME_PROPERTY) || props.containsKey(WARMUP_OPERATIONS_PROPERTY)
+        || Boolean.parseBoolean(props.getProperty(WARMUP_STABILIZE_PROPERTY, WARMUP_STABILIZE_PROPERTY_DEFAULT));
+  }
+
+  /**
+   * @param clients The clients to warm up; they must be started after this thread.
+   */
+  public WarmupThread(Properties props, List<ClientThread> clients)
+  {
+    super("warmup");
+    setDaemon(true);
+    _clients=clients;
+    _warmuptimeMs=props.containsKey(WARMUP_TIME_PROPERTY) ?
+        TimeUnit.SECONDS.toMillis(Long.parseLong(props.getProperty(WARMUP_TIME_PROPERTY))) : Long.MAX_VALUE;
+    _warmupops=props.containsKey(WARMUP_OPERATIONS_PROPERTY) ?
+        Long.parseLong(props.getProperty(WARMUP_OPERATIONS_PROPERTY)) : Long.MAX_VALUE;
+    _stabilize=Boolean.parseBoolean(props.getProperty(WARMUP_STABILIZE_PROPERTY, WARMUP_STABILIZE_PROPERTY_DEFAULT));
+    _intervalMs=Long.parseLong(props.getProperty(WARMUP_STABILIZE_INTERVAL_PROPERTY, WARMUP_STABILIZE_INTERVAL_PROPERTY_DEFAULT));
+    _throughputs=new double[Integer.parseInt(props.getProperty(WARMUP_STABILIZE_INTERVALS_PROPERTY, WARMUP_STABILIZE_INTERVALS_PROPERTY_DEFAULT))];
+    _tolerance=Double.parseDouble(props.getProperty(WARMUP_STABILIZE_TOLERANCE_PROPERTY, WARMUP_STABILIZE_TOLERANCE_PROPERTY_DEFAULT));
+
+    // measure the warm-up apart from the very first operation
+    Measurements.getMeasurements().startWarmup();
+  }
+
+  @Override
+  public void run()
+  {
+    final long startMs=System.currentTimeMillis();
+    long lastMs=startMs;
+    long lastOps=0;
+    int intervals=0;
+    String reason="the clients completed";
+
+    try
+    {
+      while (clientsRunning())
+      {
+        Thread.sleep(_stabilize ? _intervalMs : POLL_INTERVAL_MS);
+
+        long nowMs=System.currentTimeMillis();
+        long ops=totalOps();
+        if (nowMs-startMs>=_warmuptimeMs)
+        {
+          reason=TimeUnit.MILLISECONDS.toSeconds(_warmuptimeMs)+" seconds";
+          break;
+        }
+        if (ops>=_warmupops)
+        {
+          reason=_warmupops+" operations";
+          break;
+        }
+        if (_stabilize)
+        {
+          _throughputs[intervals++%_throughputs.length]=1000.0*(ops-lastOps)/(nowMs-lastMs);
+          if (intervals>=_throughputs.length && isStable())
+          {
+            reason="stable throughput";
+            break;
+          }
+        }
+        lastMs=nowMs;
+        lastOps=ops;
+      }
+    }
+    catch (InterruptedException e)
+    {
+      reason="interrupted";
+    }
+
+    _opsDone=totalOps();
+    _endTimeMs=System.currentTimeMillis();
+    Measurements.getMeasurements().endWarmup(_opsDone);
+    DecimalFormat d=new DecimalFormat("#.##");
+    System.err.println("Warm-up done after "+d.format((_endTimeMs-startMs)/1000.0)+" sec and "
+        +_opsDone+" operations ("+reason+")");
+  }
+
+  private boolean isStable()
+  {
+    double sum=0;
+    for (double t : _throughputs)
+    {
+      sum+=t;
+    }
+    double mean=sum/_throughputs.length;
+    if (mean<=0)
+    {
+      return false;
+    }
+    for (double t : _throughputs)
+    {
+      if (Math.abs(t-mean)>_tolerance*mean)
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private long totalOps()
+  {
+    long totalops=0;
+    for (ClientThread t : _clients)
+    {
+      totalops+=t.getOpsDone();
+    }
+    return totalops;
+  }
+
+  private boolean clientsRunning()
+  {
+    for (ClientThread t : _clients)
+    {
+      if (t.isAlive())
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The time the warm-up ended, or 0 if it has not ended yet.
+   */
+  public long getEndTimeMs()
+  {
+    return _endTimeMs;
+  }
+
+  /**
+   * The number of operations done during the warm-up.
+   */
+  public long getOpsDone()
+  {
+    return _opsDone;
+  }
+}
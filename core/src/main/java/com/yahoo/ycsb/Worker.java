@@ -0,0 +1,264 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Properties;
+
+import org.HdrHistogram.Histogram;
+
+import com.yahoo.ycsb.measurements.Measurements;
+
+/**
+ * The client side of a coordinated run (see {@link Coordinator}): gets the properties
+ * from the coordinator, waits for it to start the run, and streams the measurements back
+ * instead of reporting them itself.
+ */
+public class Worker
+{
+  /**
+   * The host:port of the coordinator. Setting this makes the client a worker.
+   */
+  public static final String WORKER_COORDINATOR_PROPERTY="worker.coordinator";
+
+  /**
+   * How often (in milliseconds) the measurements are sent to the coordinator.
+   */
+  public static final String WORKER_INTERVAL_PROPERTY="worker.interval";
+  public static final String WORKER_INTERVAL_PROPERTY_DEFAULT="1000";
+
+  private final Socket _socket;
+  private final DataInputStream _in;
+  private final DataOutputStream _out;
+  private final int _workerid;
+  private final int _workers;
+  private final boolean _dotransactions;
+  private final Properties _props;
+  private Thread _sender;
+
+  /**
+   * Connect to the coordinator and get the properties of the run.
+   *
+   * @param props The local properties; they override the coordinator's, except for
+   * the ones it splits between the workers.
+   */
+  public Worker(Properties props) throws IOException
+  {
+    String address=props.getProperty(WORKER_COORDINATOR_PROPERTY);
+    int colon=address.lastIndexOf(':');
+    String host=colon<0 ? address : address.substring(0, colon);
+    int port=colon<0 ? Integer.parseInt(Coordinator.COORDINATOR_PORT_PROPERTY_DEFAULT) : Integer.parseInt(address.substring(colon+1));
+
+    _socket=new Socket(host, port);
+    _socket.setTcpNoDelay(true);
+    _in=new DataInputStream(_socket.getInputStream());
+    _out=new DataOutputStream(_socket.getOutputStream());
+
+    _workerid=_in.readInt();
+    _workers=_in.readInt();
+    _dotransactions=_in.readBoolean();
+    Properties coordinated=new Properties();
+    int count=_in.readInt();
+    for (int i=0; i<count; i++)
+    {
+      String name=_in.readUTF();
+      coordinated.setProperty(name, _in.readUTF());
+    }
+
+    _props=new Properties();
+    _props.putAll(coordinated);
+    for (String prop : props.stringPropertyNames())
+    {
+      _props.setProperty(prop, props.getProperty(prop));
+    }
+    String[] split={Client.OPERATION_COUNT_PROPERTY, Client.INSERT_COUNT_PROPERTY,
+        Workload.INSERT_START_PROPERTY, Measurements.MEASUREMENT_TYPE_PROPERTY};
+    for (String prop : split)
+    {
+      if (coordinated.containsKey(prop))
+      {
+        _props.setProperty(prop, coordinated.getProperty(prop));
+      }
+    }
+    System.err.println("Joined "+address+" as worker "+_workerid+" of "+_workers);
+  }
+
+  /**
+   * The properties of the run.
+   */
+  public Properties getProperties()
+  {
+    return _props;
+  }
+
+  public boolean isTransactions()
+  {
+    return _dotransactions;
+  }
+
+  /**
+   * The fraction of the target throughput this worker is responsible for.
+   */
+  public double getTargetShare()
+  {
+    return 1.0/_workers;
+  }
+
+  /**
+   * Tell the coordinator we are ready, and wait until it starts the run.
+   */
+  public void awaitStart() throws IOException
+  {
+    synchronized (_out)
+    {
+      _out.writeByte(Coordinator.READY);
+      _out.flush();
+    }
+    if (_in.readByte()!=Coordinator.START)
+    {
+      throw new IOException("Unexpected message from the coordinator");
+    }
+  }
+
+  /**
+   * Start sending the measurements to the coordinator.
+   *
+   * @param clients The clients of this worker.
+   * @param warmup The warm-up of the run, whose operations are not reported, or null if none.
+   */
+  public void startSending(final Iterable<ClientThread> clients, final WarmupThread warmup)
+  {
+    final long interval=Long.parseLong(_props.getProperty(WORKER_INTERVAL_PROPERTY, WORKER_INTERVAL_PROPERTY_DEFAULT));
+    _sender=new Thread("worker")
+    {
+      @Override
+      public void run()
+      {
+        try
+        {
+          while (!isInterrupted())
+          {
+            Thread.sleep(interval);
+            sendInterval(opsAfterWarmup(clients, warmup));
+          }
+        }
+        catch (InterruptedException e)
+        {
+          // done
+        }
+        catch (IOException e)
+        {
+          System.err.println("Lost the coordinator: "+e);
+        }
+      }
+    };
+    _sender.setDaemon(true);
+    _sender.start();
+  }
+
+  /**
+   * The operations done since the end of the warm-up, as {@link #finish} reports them at the
+   * end of the run: none while the warm-up is still going.
+   */
+  private static long opsAfterWarmup(Iterable<ClientThread> clients, WarmupThread warmup)
+  {
+    // the end time is set after the warm-up operations, so they are known once it is
+    if (warmup!=null && warmup.getEndTimeMs()==0)
+    {
+      return 0;
+    }
+    long totalops=0;
+    for (ClientThread t : clients)
+    {
+      totalops+=t.getOpsDone();
+    }
+    return warmup==null ? totalops : totalops-warmup.getOpsDone();
+  }
+
+  private void sendInterval(long opsDone) throws IOException
+  {
+    Map<String,Histogram> intervals=Measurements.getMeasurements().getIntervalHistograms();
+    synchronized (_out)
+    {
+      _out.writeByte(Coordinator.INTERVAL);
+      _out.writeLong(opsDone);
+      _out.writeInt(intervals.size());
+      for (Map.Entry<String,Histogram> entry : intervals.entrySet())
+      {
+        ByteBuffer buffer=ByteBuffer.allocate(entry.getValue().getNeededByteBufferCapacity());
+        int length=entry.getValue().encodeIntoCompressedByteBuffer(buffer);
+        _out.writeUTF(entry.getKey());
+        _out.writeInt(length);
+        _out.write(buffer.array(), 0, length);
+      }
+      _out.flush();
+    }
+  }
+
+  /**
+   * Send the remaining measurements and the results of the run, and disconnect.
+   *
+   * @param opsDone The operations done since the end of the warm-up.
+   */
+  public void finish(long opsDone, long runtimeMs) throws IOException
+  {
+    _sender.interrupt();
+    try
+    {
+      _sender.join();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+
+    sendInterval(opsDone);
+    Map<String,Map<Integer,Integer>> returncodes=Measurements.getMeasurements().getReturnCodes();
+    Map<String,Long> counts=Measurements.getMeasurements().getCounts();
+    synchronized (_out)
+    {
+      _out.writeByte(Coordinator.DONE);
+      _out.writeLong(opsDone);
+      _out.writeLong(runtimeMs);
+      _out.writeInt(returncodes.size());
+      for (Map.Entry<String,Map<Integer,Integer>> entry : returncodes.entrySet())
+      {
+        _out.writeUTF(entry.getKey());
+        _out.writeInt(entry.getValue().size());
+        for (Map.Entry<Integer,Integer> code : entry.getValue().entrySet())
+        {
+          _out.writeInt(code.getKey());
+          _out.writeInt(code.getValue());
+        }
+      }
+      _out.writeInt(counts.size());
+      for (Map.Entry<String,Long> count : counts.entrySet())
+      {
+        _out.writeUTF(count.getKey());
+        _out.writeLong(count.getValue());
+      }
+      _out.flush();
+    }
+    _socket.close();
+  }
+}
@@ -93,7 +93,69 @@ public abstract class Workload
        * @return false if the workload knows it is done for this thread. Client will terminate the thread. Return true otherwise. Return true for workloads that rely on operationcount. For workloads that read traces from a file, return true when there are more to do, false when you are done.
        */
       public abstract boolean doTransaction(DB db, Object threadstate);
-      
+
+      /**
+       * Do up to max insert operations, as one batch if the workload and the DB support it. The same thread
+       * safety rules as for doInsert() apply. The default implementation does a single doInsert().
+       *
+       * @return The number of records inserted, or 0 if the workload knows it is done for this thread or an insert failed.
+       */
+      public int doInserts(DB db, Object threadstate, int max)
+      {
+        return doInsert(db, threadstate) ? 1 : 0;
+      }
+
+      /**
+       * Do up to max transaction operations, as one batch if the workload and the DB support it. The same
+       * thread safety rules as for doTransaction() apply. The default implementation does a single doTransaction().
+       *
+       * @return The number of operations done, or 0 if the workload knows it is done for this thread.
+       */
+      public int doTransactions(DB db, Object threadstate, int max)
+      {
+        return doTransaction(db, threadstate) ? 1 : 0;
+      }
+
+      /**
+       * Issue one insert operation without waiting for it to complete. Used instead of doInsert() when the
+       * client runs in asynchronous mode, so the same thread safety rules apply. The default implementation
+       * performs a blocking doInsert() and returns an already completed handle; override it to keep several
+       * operations in flight per client thread.
+       *
+       * @return A handle that completes with zero if the insert succeeded, or null if the workload knows it is done for this thread.
+       */
+      public DBFuture doInsertAsync(AsyncDB db, Object threadstate)
+      {
+        return doInsert(db, threadstate) ? DBFuture.completed(0) : null;
+      }
+
+      /**
+       * Issue one transaction operation without waiting for it to complete. Used instead of doTransaction() when
+       * the client runs in asynchronous mode, so the same thread safety rules apply. The default implementation
+       * performs a blocking doTransaction() and returns an already completed handle; override it to keep several
+       * operations in flight per client thread.
+       *
+       * @return A handle that completes once the transaction is done, or null if the workload knows it is done for this thread.
+       */
+      public DBFuture doTransactionAsync(AsyncDB db, Object threadstate)
+      {
+        return doTransaction(db, threadstate) ? DBFuture.completed(0) : null;
+      }
+
+      /**
+       * Change properties of the workload while it runs, for example the proportions of the operations.
+       * Called from a thread other than the client threads, so the change must be made thread safe.
+       * The default implementation supports no changes.
+       *
+       * @param changes The properties to change, and their new values.
+       * @return false if the workload does not support changing its properties while it runs.
+       * @throws WorkloadException if one of the changes is not supported or invalid.
+       */
+      public boolean reconfigure(Properties changes) throws WorkloadException
+      {
+        return false;
+      }
+
       /**
        * Allows scheduling a request to stop the workload.
        */
@@ -1,28 +1,59 @@
 package com.yahoo.ycsb.generator;
 
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * A CounterGenerator that reports generated integers via lastInt()
  * only after they have been acknowledged.
+ *
+ * Acknowledgements are kept in a sliding window of bits without locks.
+ * The bit of a value is toggled when it is acknowledged, so the values
+ * of even laps around the window (counted from the start of the counter)
+ * set it and those of odd laps clear it, and bits never need to be
+ * reset. The limit advances by compare-and-set
+ * over the contiguous acknowledged values. Values too far ahead of the
+ * limit for the window wait in an overflow set until it catches up.
  */
 public class AcknowledgedCounterGenerator extends CounterGenerator
 {
-	private static final int WINDOW_SIZE = 1000000;
+	/** The default window size, 16M values in 2MB of bits. */
+	public static final int DEFAULT_WINDOW_SIZE = 1 << 24;
 
-	private final ReentrantLock lock;
-	private final boolean[] window;
-	private volatile int limit;
+	private final long base;
+	private final AtomicLongArray window;
+	private final int windowbits;
+	private final long windowsize;
+	private final AtomicLong limit;
+	private final ConcurrentSkipListSet<Long> overflow;
 
 	/**
 	 * Create a counter that starts at countstart.
 	 */
-	public AcknowledgedCounterGenerator(int countstart)
+	public AcknowledgedCounterGenerator(long countstart)
+	{
+		this(countstart, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Create a counter that starts at countstart, with a window for at
+	 * least the given number of values, rounded up to a power of two of
+	 * at least 64.
+	 */
+	public AcknowledgedCounterGenerator(long countstart, int windowsize)
 	{
 		super(countstart);
-		lock = new ReentrantLock();
-		window = new boolean[WINDOW_SIZE];
-		limit = countstart - 1;
+		int bits = 6;
+		while ((1L << bits) < windowsize) {
+			bits++;
+		}
+		this.base = countstart;
+		this.windowbits = bits;
+		this.windowsize = 1L << bits;
+		window = new AtomicLongArray((int)(this.windowsize >>> 6));
+		limit = new AtomicLong(countstart - 1);
+		overflow = new ConcurrentSkipListSet<Long>();
 	}
 
 	/**
@@ -30,43 +61,84 @@ public class AcknowledgedCounterGenerator extends CounterGenerator
 	 * (as opposed to the highest generated counter value).
 	 */
 	@Override
-	public int lastInt()
+	public long lastLong()
 	{
-		return limit;
+		return limit.get();
 	}
 
 	/**
 	 * Make a generated counter value available via lastInt().
 	 */
-	public void acknowledge(int value)
+	public void acknowledge(long value)
 	{
-		if (value > limit + WINDOW_SIZE) {
-			throw new RuntimeException("Too many unacknowledged insertion keys.");
+		// the limit only grows, so a value that fits in the window stays in it
+		if (value - limit.get() <= windowsize) {
+			toggle(value);
+		} else {
+			overflow.add(value);
 		}
+		advance();
+	}
 
-		window[value % WINDOW_SIZE] = true;
-
-		if (lock.tryLock()) {
-			// move a contiguous sequence from the window
-			// over to the "limit" variable
-
-			try {
-				int index;
-
-				for (index = limit + 1; index <= value; ++index) {
-					int slot = index % WINDOW_SIZE;
-
-					if (!window[slot]) {
-						break;
-					}
-
-					window[slot] = false;
-				}
+	/**
+	 * Move the limit over the contiguous acknowledged values after it.
+	 */
+	private void advance()
+	{
+		while (true) {
+			long current = limit.get();
+			if (isAcknowledged(current + 1)) {
+				// if another thread moved the limit first, carry on from where it is
+				limit.compareAndSet(current, current + 1);
+			} else if (!drain()) {
+				return;
+			}
+		}
+	}
 
-				limit = index - 1;
-			} finally {
-				lock.unlock();
+	/**
+	 * Move the overflowing values that fit in the window now into it.
+	 *
+	 * @return whether any value was moved.
+	 */
+	private boolean drain()
+	{
+		if (overflow.isEmpty()) {
+			return false;
+		}
+		boolean moved = false;
+		for (Long value : overflow) {
+			if (value - limit.get() > windowsize) {
+				break;
+			}
+			if (overflow.remove(value)) {
+				toggle(value);
+				moved = true;
 			}
 		}
+		return moved;
+	}
+
+	private void toggle(long value)
+	{
+		long offset = value - base;
+		int word = (int)((offset & (windowsize - 1)) >>> 6);
+		long bit = 1L << offset;
+		long bits;
+		do {
+			bits = window.get(word);
+		} while (!window.compareAndSet(word, bits, bits ^ bit));
+	}
+
+	/**
+	 * Whether a value between the limit and the end of the window was acknowledged.
+	 */
+	private boolean isAcknowledged(long value)
+	{
+		long offset = value - base;
+		int word = (int)((offset & (windowsize - 1)) >>> 6);
+		boolean set = (window.get(word) & (1L << offset)) != 0;
+		boolean evenlap = ((offset >>> windowbits) & 1) == 0;
+		return set == evenlap;
 	}
 }
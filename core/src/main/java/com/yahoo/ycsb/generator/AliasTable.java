@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.generator;
+
+import java.util.Random;
+
+/**
+ * Chooses an index with probability proportional to its weight in constant time, with
+ * Walker's alias method: each of n equally likely columns holds the probability of its own
+ * index and an alias index that takes the rest of the column. It is built once, in O(n), and
+ * never changes, so it can be shared between threads.
+ */
+public class AliasTable
+{
+	private final double[] _prob;
+	private final int[] _alias;
+
+	/**
+	 * @param weights The weights of the indexes. They must not be negative, and at least one must be positive.
+	 */
+	public AliasTable(double[] weights)
+	{
+		int n=weights.length;
+		double sum=0;
+		for (double w : weights)
+		{
+			if (w<0)
+			{
+				throw new IllegalArgumentException("Negative weight: "+w);
+			}
+			sum+=w;
+		}
+		if (!(sum>0))
+		{
+			throw new IllegalArgumentException("No positive weight");
+		}
+
+		_prob=new double[n];
+		_alias=new int[n];
+
+		// the weights scaled so that they average 1, split into the columns below and above 1
+		double[] scaled=new double[n];
+		int[] small=new int[n];
+		int[] large=new int[n];
+		int nsmall=0;
+		int nlarge=0;
+		for (int i=0; i<n; i++)
+		{
+			scaled[i]=weights[i]*n/sum;
+			if (scaled[i]<1)
+			{
+				small[nsmall++]=i;
+			}
+			else
+			{
+				large[nlarge++]=i;
+			}
+		}
+
+		// fill each small column with part of a large one
+		while (nsmall>0 && nlarge>0)
+		{
+			int s=small[--nsmall];
+			int l=large[--nlarge];
+			_prob[s]=scaled[s];
+			_alias[s]=l;
+			scaled[l]=(scaled[l]+scaled[s])-1;
+			if (scaled[l]<1)
+			{
+				small[nsmall++]=l;
+			}
+			else
+			{
+				large[nlarge++]=l;
+			}
+		}
+
+		// what is left is full, up to rounding errors
+		while (nlarge>0)
+		{
+			int l=large[--nlarge];
+			_prob[l]=1;
+			_alias[l]=l;
+		}
+		while (nsmall>0)
+		{
+			int s=small[--nsmall];
+			_prob[s]=1;
+			_alias[s]=s;
+		}
+	}
+
+	/**
+	 * @return The number of indexes.
+	 */
+	public int size()
+	{
+		return _prob.length;
+	}
+
+	/**
+	 * Choose an index, with a single random number: its integer part picks the column, and
+	 * its fraction whether the column's own index or its alias.
+	 */
+	public int next(Random random)
+	{
+		double u=random.nextDouble()*_prob.length;
+		int column=(int)u;
+		if (column>=_prob.length)
+		{
+			column=_prob.length-1;
+		}
+		return u-column<_prob[column] ? column : _alias[column];
+	}
+}
@@ -17,14 +17,15 @@
 
 package com.yahoo.ycsb.generator;
 
-import java.util.Vector;
-import java.util.Random;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.yahoo.ycsb.Utils;
 import com.yahoo.ycsb.WorkloadException;
 
 /**
- * Generates a distribution by choosing from a discrete set of values.
+ * Generates a distribution by choosing from a discrete set of values. The values are chosen
+ * in constant time with an {@link AliasTable}, rebuilt when a value is added.
  */
 public class DiscreteGenerator extends Generator
 {
@@ -40,12 +41,30 @@ public class DiscreteGenerator extends Generator
 		}
 	}
 
-	Vector<Pair> _values;
+	/**
+	 * The values and the table to choose them with, replaced together when a value is added.
+	 */
+	static class Choices
+	{
+		final String[] _values;
+		final AliasTable _table;
+
+		Choices(String[] values, AliasTable table)
+		{
+			_values=values;
+			_table=table;
+		}
+	}
+
+	List<Pair> _values;
 	String _lastvalue;
 
+	/** Null until a value with a positive weight is added. */
+	private volatile Choices _choices;
+
 	public DiscreteGenerator()
 	{
-		_values=new Vector<Pair>();
+		_values=new ArrayList<Pair>();
 		_lastvalue=null;
 	}
 
@@ -54,31 +73,17 @@ public class DiscreteGenerator extends Generator
 	 */
 	public String nextString()
 	{
-		double sum=0;
-
-		for (Pair p : _values)
-		{
-			sum+=p._weight;
-		}
-
-		double val=Utils.random().nextDouble();
-
-		for (Pair p : _values)
+		Choices choices=_choices;
+		if (choices==null)
 		{
-			if (val<p._weight/sum)
-			{
-				return p._value;
-			}
+			//should never get here.
+			System.out.println("oops. should not get here.");
 
-			val-=p._weight/sum;
+			System.exit(0);
 		}
 
-		//should never get here.
-		System.out.println("oops. should not get here.");
-
-		System.exit(0);
-
-		return null;
+		_lastvalue=choices._values[choices._table.next(Utils.random())];
+		return _lastvalue;
 	}
 
 	/**
@@ -106,9 +111,31 @@ public class DiscreteGenerator extends Generator
 		return _lastvalue;
 	}
 
-	public void addValue(double weight, String value)
+	public synchronized void addValue(double weight, String value)
 	{
 		_values.add(new Pair(weight,value));
+
+		String[] values=new String[_values.size()];
+		double[] weights=new double[_values.size()];
+		double sum=0;
+		for (int i=0; i<values.length; i++)
+		{
+			values[i]=_values.get(i)._value;
+			weights[i]=_values.get(i)._weight;
+			sum+=weights[i];
+		}
+		if (sum>0)
+		{
+			_choices=new Choices(values, new AliasTable(weights));
+		}
+	}
+
+	/**
+	 * @return true if no values were added.
+	 */
+	public boolean isEmpty()
+	{
+		return _values.isEmpty();
 	}
 
 }
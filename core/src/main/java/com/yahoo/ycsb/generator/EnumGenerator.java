@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.generator;
+
+import java.lang.reflect.Array;
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.yahoo.ycsb.Utils;
+
+/**
+ * Chooses constants of an enum with given weights, like {@link DiscreteGenerator} chooses
+ * strings, so that callers can switch on the result instead of comparing strings. Values are
+ * chosen in constant time with an {@link AliasTable}.
+ *
+ * The weights are set before the generator is used; to change them, build a new generator.
+ */
+public class EnumGenerator<E extends Enum<E>> extends Generator
+{
+	private final Class<E> _type;
+	private final Map<E,Double> _weights;
+	private E[] _values;
+	private AliasTable _table;
+	private E _lastvalue;
+
+	public EnumGenerator(Class<E> type)
+	{
+		_type=type;
+		_weights=new EnumMap<E,Double>(type);
+	}
+
+	/**
+	 * Add a value, or add to its weight if it was added before.
+	 */
+	public void addValue(double weight, E value)
+	{
+		Double w=_weights.get(value);
+		_weights.put(value, w==null ? weight : w+weight);
+
+		@SuppressWarnings("unchecked")
+		E[] values=(E[])Array.newInstance(_type, _weights.size());
+		double[] weights=new double[values.length];
+		double sum=0;
+		int i=0;
+		for (Map.Entry<E,Double> entry : _weights.entrySet())
+		{
+			values[i]=entry.getKey();
+			weights[i]=entry.getValue();
+			sum+=weights[i];
+			i++;
+		}
+		_values=values;
+		_table=sum>0 ? new AliasTable(weights) : null;
+	}
+
+	/**
+	 * @return true if no value with a positive weight was added.
+	 */
+	public boolean isEmpty()
+	{
+		return _table==null;
+	}
+
+	/**
+	 * Choose the next value.
+	 *
+	 * @throws IllegalStateException if no value with a positive weight was added.
+	 */
+	public E nextValue()
+	{
+		if (_table==null)
+		{
+			throw new IllegalStateException("No value to choose from");
+		}
+		_lastvalue=_values[_table.next(Utils.random())];
+		return _lastvalue;
+	}
+
+	/**
+	 * @return The value chosen last, or a new one if none was chosen yet.
+	 */
+	public E lastValue()
+	{
+		if (_lastvalue==null)
+		{
+			return nextValue();
+		}
+		return _lastvalue;
+	}
+
+	public String nextString()
+	{
+		return nextValue().name();
+	}
+
+	public String lastString()
+	{
+		return lastValue().name();
+	}
+}
@@ -80,6 +80,7 @@ public class ExponentialGenerator extends IntegerGenerator
 	 * @param itemcount The number of items in the distribution.
 	 * @return The next item in the sequence.
 	 */
+	@Override
 	public long nextLong()
 	{
 		return (long) (-Math.log(Utils.random().nextDouble()) / _gamma);
@@ -18,14 +18,15 @@
 package com.yahoo.ycsb.generator;
 
 /**
- * A generator that is capable of generating ints as well as strings
+ * A generator that is capable of generating ints as well as strings. Generators of values that may
+ * not fit in an int, such as keys, also generate longs.
  * 
  * @author cooperb
  *
  */
 public abstract class IntegerGenerator extends Generator 
 {
-	int lastint;
+	long lastint;
 	
 	/**
 	 * Set the last value generated. IntegerGenerator subclasses must use this call
@@ -35,18 +36,35 @@ public abstract class IntegerGenerator extends Generator
 	{
 		lastint=last;
 	}
+
+	/**
+	 * Set the last value generated, for generators of longs.
+	 */
+	protected void setLastLong(long last)
+	{
+		lastint=last;
+	}
 	
 	/**
 	 * Return the next value as an int. When overriding this method, be sure to call setLastString() properly, or the lastString() call won't work.
 	 */
 	public abstract int nextInt();
+
+	/**
+	 * Return the next value as a long. Generators of values that may not fit in an int override this,
+	 * and narrow it in nextInt().
+	 */
+	public long nextLong()
+	{
+		return nextInt();
+	}
 	
 	/**
 	 * Generate the next string in the distribution.
 	 */
 	public String nextString()
 	{
-		return ""+nextInt();
+		return ""+nextLong();
 	}
 	
 	/**
@@ -57,7 +75,7 @@ public abstract class IntegerGenerator extends Generator
 	@Override
 	public String lastString()
 	{
-		return ""+lastInt();
+		return ""+lastLong();
 	}
 	
 	/**
@@ -65,6 +83,14 @@ public abstract class IntegerGenerator extends Generator
 	 * IntegerGenerator subclasses always return ints for nextInt() (e.g. not arbitrary strings).
 	 */
 	public int lastInt()
+	{
+		return (int)lastLong();
+	}
+
+	/**
+	 * Return the previous value generated by the distribution as a long.
+	 */
+	public long lastLong()
 	{
 		return lastint;
 	}
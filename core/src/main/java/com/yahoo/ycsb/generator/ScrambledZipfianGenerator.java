@@ -64,17 +64,14 @@ public class ScrambledZipfianGenerator extends IntegerGenerator
 	 * @param _items The number of items in the distribution.
 	 * @param _zipfianconstant The zipfian constant to use.
 	 */
-	/*
-// not supported, as the value of zeta depends on the zipfian constant, and we have only precomputed zeta for one zipfian constant
 	public ScrambledZipfianGenerator(long _items, double _zipfianconstant)
 	{
 		this(0,_items-1,_zipfianconstant);
 	}
-*/
 	
 	/**
 	 * Create a zipfian generator for items between min and max (inclusive) for the specified zipfian constant. If you 
-	 * use a zipfian constant other than 0.99, this will take a long time to complete because we need to recompute zeta.
+	 * use a zipfian constant other than 0.99, zeta is computed by {@link Zeta}, which takes a long time only if it is set to be exact.
 	 * @param min The smallest integer to generate in the sequence.
 	 * @param max The largest integer to generate in the sequence.
 	 * @param _zipfianconstant The zipfian constant to use.
@@ -105,11 +102,12 @@ public class ScrambledZipfianGenerator extends IntegerGenerator
 	/**
 	 * Return the next long in the sequence.
 	 */
+	@Override
 	public long nextLong()
 	{
 		long ret=gen.nextLong();
 		ret=_min+Utils.FNVhash64(ret)%_itemcount;
-		setLastInt((int)ret);
+		setLastLong(ret);
 		return ret;
 	}
 	
@@ -26,10 +26,18 @@ public class SkewedLatestGenerator extends IntegerGenerator
 	ZipfianGenerator _zipfian;
 
 	public SkewedLatestGenerator(CounterGenerator basis)
+	{
+		this(basis,ZipfianGenerator.ZIPFIAN_CONSTANT);
+	}
+
+	/**
+	 * @param zipfianconstant The zipfian constant of the skew.
+	 */
+	public SkewedLatestGenerator(CounterGenerator basis, double zipfianconstant)
 	{
 		_basis=basis;
-		_zipfian=new ZipfianGenerator(_basis.lastInt());
-		nextInt();
+		_zipfian=new ZipfianGenerator(_basis.lastLong(),zipfianconstant);
+		nextLong();
 	}
 
 	/**
@@ -37,10 +45,16 @@ public class SkewedLatestGenerator extends IntegerGenerator
 	 */
 	public int nextInt()
 	{
-		int max=_basis.lastInt();
-		int nextint=max-_zipfian.nextInt(max);
-		setLastInt(nextint);
-		return nextint;
+		return (int)nextLong();
+	}
+
+	@Override
+	public long nextLong()
+	{
+		long max=_basis.lastLong();
+		long next=max-_zipfian.nextLong(max);
+		setLastLong(next);
+		return next;
 	}
 
 	public static void main(String[] args)
@@ -0,0 +1,302 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.generator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Computes the zeta constant of a zipfian distribution, the sum of 1/i^theta for i from 1 to n.
+ *
+ * By default ("approximate"), the first EXACT_TERMS terms are summed and the rest is computed
+ * in closed form with the Euler-Maclaurin formula, which takes microseconds for any n. With
+ * three correction terms and the tail starting past EXACT_TERMS, the error of the formula is
+ * below 1e-20, far less than the rounding errors of summing in doubles.
+ *
+ * When set to "exact", the terms are all summed, by as many threads as there are processors,
+ * and the sums are cached in a file so that each (n, theta) is only summed once.
+ */
+public class Zeta
+{
+	/**
+	 * The name of the property for how zeta is computed: "approximate" or "exact".
+	 */
+	public static final String ZETA_PROPERTY="zeta";
+
+	/**
+	 * Default zeta computation.
+	 */
+	public static final String ZETA_PROPERTY_DEFAULT="approximate";
+
+	/**
+	 * The name of the property for the file exact zeta values are cached in. An empty name disables the cache.
+	 */
+	public static final String ZETA_CACHE_FILE_PROPERTY="zetacachefile";
+
+	/**
+	 * Default cache file, in the temporary directory.
+	 */
+	public static final String ZETA_CACHE_FILE_PROPERTY_DEFAULT=new File(System.getProperty("java.io.tmpdir"), "ycsb-zeta.properties").getPath();
+
+	/**
+	 * Sums of up to this many terms are always computed exactly, as they take well under a millisecond.
+	 */
+	public static final long EXACT_TERMS=1000;
+
+	/**
+	 * Exact sums of fewer terms than this are not split between threads.
+	 */
+	static final long PARALLEL_TERMS=10000000;
+
+	private static volatile boolean exact=false;
+	private static volatile File cachefile=null;
+
+	/**
+	 * Set how zeta is computed from the properties of the workload.
+	 */
+	public static void setProperties(Properties p)
+	{
+		String method=p.getProperty(ZETA_PROPERTY,ZETA_PROPERTY_DEFAULT);
+		if (method.equals("exact"))
+		{
+			exact=true;
+		}
+		else if (method.equals("approximate"))
+		{
+			exact=false;
+		}
+		else
+		{
+			throw new IllegalArgumentException("Unknown zeta computation \""+method+"\"");
+		}
+		String file=p.getProperty(ZETA_CACHE_FILE_PROPERTY,ZETA_CACHE_FILE_PROPERTY_DEFAULT);
+		cachefile=file.length()==0 ? null : new File(file);
+	}
+
+	/**
+	 * Zeta for n items.
+	 */
+	public static double zeta(long n, double theta)
+	{
+		return zeta(0,n,theta,0);
+	}
+
+	/**
+	 * Zeta for n items, from the zeta of the first st items.
+	 */
+	public static double zeta(long st, long n, double theta, double initialsum)
+	{
+		if (n-st<=EXACT_TERMS)
+		{
+			return initialsum+sum(st,n,theta);
+		}
+		if (!exact)
+		{
+			return initialsum+approximate(n,theta)-approximate(st,theta);
+		}
+		if (st==0)
+		{
+			return cachedSum(n,theta);
+		}
+		return initialsum+parallelSum(st,n,theta);
+	}
+
+	/**
+	 * Sum the terms from st+1 to n.
+	 */
+	static double sum(long st, long n, double theta)
+	{
+		double sum=0;
+		for (long i=st; i<n; i++)
+		{
+			sum+=1/(Math.pow(i+1,theta));
+		}
+		return sum;
+	}
+
+	/**
+	 * Zeta for n items with the Euler-Maclaurin formula for the terms past EXACT_TERMS.
+	 */
+	static double approximate(long n, double theta)
+	{
+		if (n<=EXACT_TERMS)
+		{
+			return sum(0,n,theta);
+		}
+		double a=EXACT_TERMS+1;
+		double b=n;
+
+		// the integral of x^-theta from a to b
+		double integral;
+		if (theta==1)
+		{
+			integral=Math.log(b/a);
+		}
+		else
+		{
+			integral=(Math.pow(b,1-theta)-Math.pow(a,1-theta))/(1-theta);
+		}
+
+		// the corrections with the Bernoulli numbers B2, B4 and B6, from the odd derivatives of x^-theta
+		double fa=Math.pow(a,-theta);
+		double fb=Math.pow(b,-theta);
+		double d1=-theta;
+		double d3=d1*(theta+1)*(theta+2);
+		double d5=d3*(theta+3)*(theta+4);
+		double corrections=
+			d1*(fb/b-fa/a)/12
+			-d3*(fb/(b*b*b)-fa/(a*a*a))/720
+			+d5*(fb/(b*b*b*b*b)-fa/(a*a*a*a*a))/30240;
+
+		return sum(0,EXACT_TERMS,theta)+integral+(fa+fb)/2+corrections;
+	}
+
+	/**
+	 * Sum the terms from st+1 to n, split between a thread per processor.
+	 */
+	static double parallelSum(long st, long n, final double theta)
+	{
+		int threads=Runtime.getRuntime().availableProcessors();
+		if (threads<2 || n-st<PARALLEL_TERMS)
+		{
+			return sum(st,n,theta);
+		}
+		ExecutorService executor=Executors.newFixedThreadPool(threads);
+		try
+		{
+			List<Future<Double>> parts=new ArrayList<Future<Double>>(threads);
+			long chunk=(n-st+threads-1)/threads;
+			for (long start=st; start<n; start+=chunk)
+			{
+				final long from=start;
+				final long to=Math.min(start+chunk,n);
+				parts.add(executor.submit(new Callable<Double>()
+				{
+					@Override
+					public Double call()
+					{
+						return sum(from,to,theta);
+					}
+				}));
+			}
+			double sum=0;
+			for (Future<Double> part : parts)
+			{
+				sum+=part.get();
+			}
+			return sum;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while computing zeta", e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new IllegalStateException("Could not compute zeta", e.getCause());
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * The exact zeta for n items, from the cache file if it was computed before.
+	 */
+	static synchronized double cachedSum(long n, double theta)
+	{
+		File file=cachefile;
+		String key=n+","+theta;
+		Properties cache=new Properties();
+		if (file!=null && file.exists())
+		{
+			try
+			{
+				InputStream in=new FileInputStream(file);
+				try
+				{
+					cache.load(in);
+				}
+				finally
+				{
+					in.close();
+				}
+				String value=cache.getProperty(key);
+				if (value!=null)
+				{
+					return Double.parseDouble(value);
+				}
+			}
+			catch (IOException e)
+			{
+				System.err.println("Could not read the zeta cache "+file+": "+e);
+			}
+			catch (NumberFormatException e)
+			{
+				System.err.println("Bad value in the zeta cache "+file+": "+e);
+			}
+		}
+
+		double zeta=parallelSum(0,n,theta);
+
+		if (file!=null)
+		{
+			cache.setProperty(key,Double.toString(zeta));
+			// write a new file and move it in place, so that other processes never read half a file
+			File tmp=new File(file.getPath()+".tmp");
+			try
+			{
+				OutputStream out=new FileOutputStream(tmp);
+				try
+				{
+					cache.store(out,"zeta for n,theta");
+				}
+				finally
+				{
+					out.close();
+				}
+				if (!tmp.renameTo(file))
+				{
+					file.delete();
+					if (!tmp.renameTo(file))
+					{
+						throw new IOException("Could not rename "+tmp);
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				System.err.println("Could not write the zeta cache "+file+": "+e);
+			}
+		}
+		return zeta;
+	}
+}
@@ -31,11 +31,10 @@ import com.yahoo.ycsb.Utils;
  * popular, min+1 the next most popular, etc.) If you don't want this clustering, and instead want the popular items scattered throughout the 
  * item space, then use ScrambledZipfianGenerator instead.
  * 
- * Be aware: initializing this generator may take a long time if there are lots of items to choose from (e.g. over a minute
- * for 100 million objects). This is because certain mathematical values need to be computed to properly generate a zipfian skew, and one of those
- * values (zeta) is a sum sequence from 1 to n, where n is the itemcount. Note that if you increase the number of items in the set, we can compute
- * a new zeta incrementally, so it should be fast unless you have added millions of items. However, if you decrease the number of items, we recompute
- * zeta from scratch, so this can take a long time. 
+ * Certain mathematical values need to be computed to properly generate a zipfian skew, and one of those values (zeta) is a sum
+ * sequence from 1 to n, where n is the itemcount. It is computed by {@link Zeta}, in closed form by default, so initializing this generator is fast
+ * for any number of items. If zeta is set to be summed exactly, initializing may take a long time if there are lots of items to choose from (e.g.
+ * over a minute for 100 million objects), and decreasing the number of items recomputes zeta from scratch.
  *
  * The algorithm used here is from "Quickly Generating Billion-Record Synthetic Databases", Jim Gray et al, SIGMOD 1994.
  */
@@ -205,16 +204,7 @@ public class ZipfianGenerator extends IntegerGenerator
 	 */
 	static double zetastatic(long st, long n, double theta, double initialsum)
 	{
-		double sum=initialsum;
-		for (long i=st; i<n; i++)
-		{
-
-			sum+=1/(Math.pow(i+1,theta));
-		}
-		
-		//System.out.println("countforzeta="+countforzeta);
-		
-		return sum;
+		return Zeta.zeta(st,n,theta,initialsum);
 	}
 
 	/****************************************************************************************/
@@ -285,7 +275,7 @@ public class ZipfianGenerator extends IntegerGenerator
 		}
 
 		long ret=base+(long)((itemcount) * Math.pow(eta*u - eta + 1, alpha));
-		setLastInt((int)ret);
+		setLastLong(ret);
 		return ret;
 	}
 
@@ -305,6 +295,7 @@ public class ZipfianGenerator extends IntegerGenerator
 	 * by the 2nd, etc. (Or, if min != 0, the min-th item is the most popular, the min+1th item the next most popular, etc.) If you want the
 	 * popular items scattered throughout the item space, use ScrambledZipfianGenerator instead.
 	 */
+	@Override
 	public long nextLong()
 	{
 		return nextLong(items);
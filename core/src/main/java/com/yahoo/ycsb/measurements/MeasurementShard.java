@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.measurements;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A part of a {@link OneMeasurement} that one thread records into, so that threads measuring
+ * the same operation do not contend with each other. The measurement merges its shards in
+ * whenever it is read, e.g. by the status thread or at the end of the run.
+ *
+ * Recording locks the shard, which costs little as a shard is normally used by a single thread.
+ */
+public abstract class MeasurementShard {
+
+  private final OneMeasurement _measurement;
+  private final Map<Integer, int[]> _returncodes;
+
+  protected MeasurementShard(OneMeasurement measurement) {
+    _measurement = measurement;
+    _returncodes = new HashMap<Integer, int[]>();
+  }
+
+  public abstract void measure(long latency);
+
+  public synchronized void reportReturnCode(int code) {
+    int[] count = _returncodes.get(code);
+    if (count == null) {
+      count = new int[1];
+      _returncodes.put(code, count);
+    }
+    count[0]++;
+  }
+
+  /**
+   * Merge what was recorded since the last merge into the measurement. Called by the
+   * measurement, holding its lock.
+   */
+  final synchronized void merge() {
+    mergeMeasurements();
+    if (!_returncodes.isEmpty()) {
+      for (Map.Entry<Integer, int[]> entry : _returncodes.entrySet()) {
+        _measurement.reportReturnCode(entry.getKey(), entry.getValue()[0]);
+      }
+      _returncodes.clear();
+    }
+  }
+
+  /**
+   * Merge the latencies recorded since the last merge into the measurement, and start over.
+   * Called holding the locks of both the measurement and this shard.
+   */
+  protected abstract void mergeMeasurements();
+}
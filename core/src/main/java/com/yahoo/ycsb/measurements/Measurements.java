@@ -18,8 +18,16 @@
 package com.yahoo.ycsb.measurements;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.Histogram;
 
 import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
 
@@ -38,6 +46,13 @@ public class Measurements
   public static final String MEASUREMENT_INTERVAL = "measurement.interval";
   private static final String MEASUREMENT_INTERVAL_DEFAULT = "op";
 
+  /**
+   * The unit latencies are recorded and exported in: "ms", "us" or "ns". Operations that take
+   * a few microseconds, e.g. against an in-memory or loopback DB, need "ns" to be told apart.
+   */
+  public static final String MEASUREMENT_UNIT_PROPERTY = "measurement.unit";
+  private static final String MEASUREMENT_UNIT_PROPERTY_DEFAULT = "us";
+
   static Measurements singleton=null;
   static Properties measurementproperties=null;
 
@@ -60,10 +75,51 @@ public class Measurements
 
   final ConcurrentHashMap<String,OneMeasurement> _opToMesurementMap;
   final ConcurrentHashMap<String,OneMeasurement> _opToIntendedMesurementMap;
+  final ConcurrentHashMap<String,OneMeasurement> _opToWarmupMesurementMap;
+  final ConcurrentHashMap<String,OneMeasurement> _opToIntendedWarmupMesurementMap;
   final int _measurementType;
   final int _measurementInterval;
+  final TimeUnit _unit;
   private Properties _props;
 
+  /**
+   * A part of the run with its own target throughput (see {@link com.yahoo.ycsb.RateProfile}).
+   * While a phase is current every measurement is also recorded in the phase's own
+   * measurements, so the latency can be reported per offered rate.
+   */
+  static class Phase
+  {
+    final String name;
+    final double target;
+    // moved to the end of the warm-up if the phase starts before it; guarded by Measurements.this
+    long startMs;
+    long startOps;
+    long endMs;
+    long endOps;
+    final ConcurrentHashMap<String,OneMeasurement> opToMesurementMap=new ConcurrentHashMap<String,OneMeasurement>();
+    final ConcurrentHashMap<String,OneMeasurement> opToIntendedMesurementMap=new ConcurrentHashMap<String,OneMeasurement>();
+
+    Phase(String name, double target, long startMs, long startOps)
+    {
+      this.name=name;
+      this.target=target;
+      this.startMs=startMs;
+      this.startOps=startOps;
+    }
+  }
+
+  /** The phase measurements are also recorded in, or null. */
+  private volatile Phase _phase;
+
+  /** All phases started so far; guarded by this. */
+  private final List<Phase> _phases=new ArrayList<Phase>();
+
+  /** While set, measurements are recorded in the warm-up measurements instead. */
+  private volatile boolean _warmingup;
+
+  /** Counters of events that are not operations of their own, by name; see {@link #count}. */
+  private final ConcurrentHashMap<String,AtomicLong> _counters=new ConcurrentHashMap<String,AtomicLong>();
+
   /**
    * Create a new object with the specified properties.
    */
@@ -71,6 +127,8 @@ public class Measurements
   {
     _opToMesurementMap=new ConcurrentHashMap<String,OneMeasurement>();
     _opToIntendedMesurementMap=new ConcurrentHashMap<String,OneMeasurement>();
+    _opToWarmupMesurementMap=new ConcurrentHashMap<String,OneMeasurement>();
+    _opToIntendedWarmupMesurementMap=new ConcurrentHashMap<String,OneMeasurement>();
 
     _props=props;
 
@@ -111,6 +169,61 @@ public class Measurements
     else {
       throw new IllegalArgumentException("unknown "+MEASUREMENT_INTERVAL+"="+mIntervalString);
     }
+
+    _unit = getUnit(_props);
+  }
+
+  /**
+   * The unit latencies are measured in according to the "measurement.unit" property.
+   */
+  static TimeUnit getUnit(Properties props)
+  {
+    String unit = props.getProperty(MEASUREMENT_UNIT_PROPERTY, MEASUREMENT_UNIT_PROPERTY_DEFAULT);
+    if (unit.equals("us"))
+    {
+      return TimeUnit.MICROSECONDS;
+    }
+    else if (unit.equals("ns"))
+    {
+      return TimeUnit.NANOSECONDS;
+    }
+    else if (unit.equals("ms"))
+    {
+      return TimeUnit.MILLISECONDS;
+    }
+    throw new IllegalArgumentException("unknown "+MEASUREMENT_UNIT_PROPERTY+"="+unit);
+  }
+
+  /**
+   * The label of a unit in the names of exported measurements, e.g. "us".
+   */
+  static String unitLabel(TimeUnit unit)
+  {
+    switch (unit)
+    {
+    case NANOSECONDS:
+      return "ns";
+    case MILLISECONDS:
+      return "ms";
+    default:
+      return "us";
+    }
+  }
+
+  /**
+   * The unit latencies are measured in.
+   */
+  public TimeUnit getUnit()
+  {
+    return _unit;
+  }
+
+  /**
+   * Convert a latency taken with {@link System#nanoTime()} to the unit of the measurements.
+   */
+  public long fromNanos(long nanos)
+  {
+    return _unit.convert(nanos, TimeUnit.NANOSECONDS);
   }
 
   OneMeasurement constructOneMeasurement(String name)
@@ -162,55 +275,95 @@ public class Measurements
   }
 
   /**
-   * Report a single value of a single metric. E.g. for read latency, operation="READ" and latency is the measured
-   * value.
+   * The handle of an operation for the calling thread, made on first use.
    */
-  public void measure(String operation, int latency)
+  private Handle threadHandle(String operation)
   {
-    if(_measurementInterval==1)
-      return;
-    try
-    {
-      OneMeasurement m = getOpMeasurement(operation);
-      m.measure(latency);
-    }
-    // This seems like a terribly hacky way to cover up for a bug in the measurement code
-    catch (java.lang.ArrayIndexOutOfBoundsException e)
+    Map<String,Handle> handles = tlHandles.get();
+    Handle h = handles.get(operation);
+    if (h == null)
     {
-      System.out.println("ERROR: java.lang.ArrayIndexOutOfBoundsException - ignoring and continuing");
-      e.printStackTrace();
-      e.printStackTrace(System.out);
+      h = new Handle(operation);
+      handles.put(operation, h);
     }
+    return h;
+  }
+
+  ThreadLocal<Map<String,Handle>> tlHandles = new ThreadLocal<Map<String,Handle>>() {
+    protected Map<String,Handle> initialValue() {
+      return new HashMap<String,Handle>();
+    };
+  };
+
+  /**
+   * A new handle to measure an operation with. Callers that measure often, like the DB wrapper
+   * of each client thread, keep a handle per operation instead of naming it each time.
+   */
+  public Handle getHandle(String operation)
+  {
+    return new Handle(operation);
   }
 
   /**
    * Report a single value of a single metric. E.g. for read latency, operation="READ" and latency is the measured
    * value.
    */
-  public void measureIntended(String operation, int latency)
+  public void measure(String operation, long latency)
   {
-    if(_measurementInterval==0)
-      return;
-    try
-    {
-      OneMeasurement m = getOpIntendedMeasurement(operation);
-      m.measure(latency);
-    }
-    // This seems like a terribly hacky way to cover up for a bug in the measurement code
-    catch (java.lang.ArrayIndexOutOfBoundsException e)
+    threadHandle(operation).measure(latency);
+  }
+
+  /**
+   * Report a single value of a single metric. E.g. for read latency, operation="READ" and latency is the measured
+   * value.
+   */
+  public void measureIntended(String operation, long latency)
+  {
+    threadHandle(operation).measureIntended(latency);
+  }
+
+  /**
+   * Report a return code for a single DB operation.
+   */
+  public void reportReturnCode(String operation, int code)
+  {
+    threadHandle(operation).reportReturnCode(code);
+  }
+
+  /**
+   * Add to a counter of events that have no latency of their own, such as the duplicate requests
+   * a DB binding sends to cut its tail latency. Counters are exported as [name], Count.
+   */
+  public void count(String name, long delta)
+  {
+    AtomicLong counter = _counters.get(name);
+    if (counter == null)
     {
-      System.out.println("ERROR: java.lang.ArrayIndexOutOfBoundsException - ignoring and continuing");
-      e.printStackTrace();
-      e.printStackTrace(System.out);
+      AtomicLong created = new AtomicLong();
+      counter = _counters.putIfAbsent(name, created);
+      if (counter == null)
+      {
+        counter = created;
+      }
     }
+    counter.addAndGet(delta);
   }
 
-  private OneMeasurement getOpMeasurement(String operation) {
-    OneMeasurement m = _opToMesurementMap.get(operation);
+  /**
+   * The value of a counter, 0 if it was never counted.
+   */
+  public long getCount(String name)
+  {
+    AtomicLong counter = _counters.get(name);
+    return counter == null ? 0 : counter.get();
+  }
+
+  private OneMeasurement getOrCreate(ConcurrentHashMap<String,OneMeasurement> map, String operation, String name) {
+    OneMeasurement m = map.get(operation);
     if(m == null)
     {
-      m = constructOneMeasurement(operation);
-      OneMeasurement oldM = _opToMesurementMap.putIfAbsent(operation, m);
+      m = constructOneMeasurement(name);
+      OneMeasurement oldM = map.putIfAbsent(operation, m);
       if(oldM != null)
       {
           m = oldM;
@@ -219,30 +372,375 @@ public class Measurements
     return m;
   }
 
-  private OneMeasurement getOpIntendedMeasurement(String operation) {
-    OneMeasurement m = _opToIntendedMesurementMap.get(operation);
-    if(m == null)
+  /**
+   * The measurements of one operation, resolved once so that measuring looks nothing up by
+   * name. A handle records into shards of its own (see {@link MeasurementShard}), which are
+   * merged in when the measurements are read, so it is meant for one thread: threads with
+   * handles of their own do not contend, however many there are. The shards are made when
+   * first needed, so that nothing is reported for measurements that were never taken.
+   */
+  public final class Handle
+  {
+    private final String _operation;
+    private final String _intendedName;
+    private volatile MeasurementShard _op;
+    private volatile MeasurementShard _intended;
+    private volatile MeasurementShard _warmup;
+    private volatile MeasurementShard _intendedWarmup;
+    private volatile PhaseShards _phaseShards;
+
+    Handle(String operation)
     {
-      final String name = _measurementInterval==1 ? operation : "Intended-" + operation;
-      m = constructOneMeasurement(name);
-      OneMeasurement oldM = _opToIntendedMesurementMap.putIfAbsent(operation, m);
-      if(oldM != null)
+      _operation = operation;
+      _intendedName = _measurementInterval==1 ? operation : "Intended-" + operation;
+    }
+
+    public String getOperation()
+    {
+      return _operation;
+    }
+
+    /**
+     * Report a single value, e.g. the latency of one operation in the unit of the measurements.
+     */
+    public void measure(long latency)
+    {
+      if(_measurementInterval==1)
+        return;
+      try
+      {
+        if (_warmingup)
+        {
+          warmup().measure(latency);
+          return;
+        }
+        op().measure(latency);
+        Phase phase = _phase;
+        if (phase != null)
+        {
+          phaseShards(phase).op().measure(latency);
+        }
+      }
+      // This seems like a terribly hacky way to cover up for a bug in the measurement code
+      catch (java.lang.ArrayIndexOutOfBoundsException e)
       {
-        m = oldM;
+        System.out.println("ERROR: java.lang.ArrayIndexOutOfBoundsException - ignoring and continuing");
+        e.printStackTrace();
+        e.printStackTrace(System.out);
+      }
+    }
+
+    /**
+     * Report a single value measured from the intended start of the operation.
+     */
+    public void measureIntended(long latency)
+    {
+      if(_measurementInterval==0)
+        return;
+      try
+      {
+        if (_warmingup)
+        {
+          intendedWarmup().measure(latency);
+          return;
+        }
+        intended().measure(latency);
+        Phase phase = _phase;
+        if (phase != null)
+        {
+          phaseShards(phase).intended().measure(latency);
+        }
+      }
+      // This seems like a terribly hacky way to cover up for a bug in the measurement code
+      catch (java.lang.ArrayIndexOutOfBoundsException e)
+      {
+        System.out.println("ERROR: java.lang.ArrayIndexOutOfBoundsException - ignoring and continuing");
+        e.printStackTrace();
+        e.printStackTrace(System.out);
+      }
+    }
+
+    /**
+     * Report the return code of one operation.
+     */
+    public void reportReturnCode(int code)
+    {
+      MeasurementShard m;
+      if (_warmingup)
+      {
+        m = _measurementInterval==1 ? intendedWarmup() : warmup();
+      }
+      else
+      {
+        m = _measurementInterval==1 ? intended() : op();
+      }
+      m.reportReturnCode(code);
+    }
+
+    private MeasurementShard op()
+    {
+      MeasurementShard s = _op;
+      if (s == null)
+      {
+        s = getOrCreate(_opToMesurementMap, _operation, _operation).newShard();
+        _op = s;
+      }
+      return s;
+    }
+
+    private MeasurementShard intended()
+    {
+      MeasurementShard s = _intended;
+      if (s == null)
+      {
+        s = getOrCreate(_opToIntendedMesurementMap, _operation, _intendedName).newShard();
+        _intended = s;
+      }
+      return s;
+    }
+
+    private MeasurementShard warmup()
+    {
+      MeasurementShard s = _warmup;
+      if (s == null)
+      {
+        s = getOrCreate(_opToWarmupMesurementMap, _operation, "WARMUP-" + _operation).newShard();
+        _warmup = s;
+      }
+      return s;
+    }
+
+    private MeasurementShard intendedWarmup()
+    {
+      MeasurementShard s = _intendedWarmup;
+      if (s == null)
+      {
+        s = getOrCreate(_opToIntendedWarmupMesurementMap, _operation, "WARMUP-" + _intendedName).newShard();
+        _intendedWarmup = s;
+      }
+      return s;
+    }
+
+    private PhaseShards phaseShards(Phase phase)
+    {
+      PhaseShards s = _phaseShards;
+      if (s == null || s.phase != phase)
+      {
+        s = new PhaseShards(phase);
+        _phaseShards = s;
+      }
+      return s;
+    }
+
+    /**
+     * The shards of the handle in the measurements of a phase.
+     */
+    private final class PhaseShards
+    {
+      final Phase phase;
+      private volatile MeasurementShard _phaseOp;
+      private volatile MeasurementShard _phaseIntended;
+
+      PhaseShards(Phase phase)
+      {
+        this.phase = phase;
+      }
+
+      MeasurementShard op()
+      {
+        MeasurementShard s = _phaseOp;
+        if (s == null)
+        {
+          s = getOrCreate(phase.opToMesurementMap, _operation, _operation + "@" + phase.name).newShard();
+          _phaseOp = s;
+        }
+        return s;
+      }
+
+      MeasurementShard intended()
+      {
+        MeasurementShard s = _phaseIntended;
+        if (s == null)
+        {
+          s = getOrCreate(phase.opToIntendedMesurementMap, _operation, _intendedName + "@" + phase.name).newShard();
+          _phaseIntended = s;
+        }
+        return s;
       }
     }
-    return m;
   }
 
   /**
-   * Report a return code for a single DB operation.
+   * Record measurements in separate warm-up measurements (named WARMUP-&lt;operation&gt;) until
+   * {@link #endWarmup(long)}, so they do not skew the measurements of the run itself.
    */
-  public void reportReturnCode(String operation, int code)
+  public void startWarmup()
   {
-    OneMeasurement m = _measurementInterval==1 ?
-          getOpIntendedMeasurement(operation) :
-          getOpMeasurement(operation);
-    m.reportReturnCode(code);
+    _warmingup = true;
+  }
+
+  /**
+   * End the warm-up: measurements are recorded as usual from now on. The throughput of the
+   * phases is only counted from now on as well, like that of the whole run.
+   *
+   * @param totalOps The number of operations completed so far in the run.
+   */
+  public synchronized void endWarmup(long totalOps)
+  {
+    _warmingup = false;
+    long now = System.currentTimeMillis();
+    for (Phase phase : _phases)
+    {
+      if (phase.endMs > 0)
+      {
+        // all in the warm-up, so no throughput is reported for it
+        phase.startMs = phase.endMs;
+        phase.startOps = phase.endOps;
+      }
+      else
+      {
+        phase.startMs = now;
+        phase.startOps = totalOps;
+      }
+    }
+  }
+
+  public boolean isWarmingUp()
+  {
+    return _warmingup;
+  }
+
+  /**
+   * Start recording measurements for a new phase of the run as well, ending the current one.
+   *
+   * @param name A name for the phase, unique within the run.
+   * @param target The target throughput (ops/sec) of the phase.
+   * @param totalOps The number of operations completed so far in the run.
+   */
+  public synchronized void startPhase(String name, double target, long totalOps)
+  {
+    endPhase(totalOps);
+    Phase phase = new Phase(name, target, System.currentTimeMillis(), totalOps);
+    _phases.add(phase);
+    _phase = phase;
+  }
+
+  /**
+   * End the current phase, if any.
+   *
+   * @param totalOps The number of operations completed so far in the run.
+   */
+  public synchronized void endPhase(long totalOps)
+  {
+    Phase phase = _phase;
+    if (phase != null)
+    {
+      phase.endMs = System.currentTimeMillis();
+      phase.endOps = totalOps;
+      _phase = null;
+    }
+  }
+
+  /**
+   * The latency percentile of the current phase. Which latency is used follows the
+   * "measurement.interval" property, preferring the intended latency when both are measured.
+   *
+   * @param operation The operation to look at, or null for the worst of all operations.
+   * @return The latency in microseconds, or -1 if nothing was measured in the phase.
+   * @throws IllegalStateException if the measurements are not kept in HdrHistograms.
+   */
+  public long getPhasePercentile(String operation, double percentile)
+  {
+    Phase phase = _phase;
+    if (phase == null)
+    {
+      return -1;
+    }
+    ConcurrentHashMap<String,OneMeasurement> map = _measurementInterval==0 ?
+        phase.opToMesurementMap :
+        phase.opToIntendedMesurementMap;
+    long worst = -1;
+    for (Map.Entry<String,OneMeasurement> entry : map.entrySet())
+    {
+      if (operation == null || operation.equals(entry.getKey()))
+      {
+        worst = Math.max(worst, hdrHistogramOf(entry.getValue()).getPercentile(percentile));
+      }
+    }
+    return worst < 0 ? worst : TimeUnit.MICROSECONDS.convert(worst, _unit);
+  }
+
+  private static OneMeasurementHdrHistogram hdrHistogramOf(OneMeasurement m)
+  {
+    if (m instanceof TwoInOneMeasurement)
+    {
+      m = ((TwoInOneMeasurement)m).thing1;
+    }
+    if (!(m instanceof OneMeasurementHdrHistogram))
+    {
+      throw new IllegalStateException("Latency percentiles require "+MEASUREMENT_TYPE_PROPERTY+"=hdrhistogram");
+    }
+    return (OneMeasurementHdrHistogram)m;
+  }
+
+  /**
+   * Take the interval HdrHistograms of all measurements, keyed by measurement name, to send
+   * them to a coordinator (see {@link com.yahoo.ycsb.Coordinator}).
+   *
+   * @throws IllegalStateException if the measurements are not kept in HdrHistograms.
+   */
+  public Map<String,Histogram> getIntervalHistograms()
+  {
+    Map<String,Histogram> ret = new HashMap<String,Histogram>();
+    for (OneMeasurement m : allMeasurements())
+    {
+      ret.put(m.getName(), hdrHistogramOf(m).getIntervalHistogram());
+    }
+    return ret;
+  }
+
+  /**
+   * The number of operations per return code of all measurements, keyed by measurement name.
+   */
+  public Map<String,Map<Integer,Integer>> getReturnCodes()
+  {
+    Map<String,Map<Integer,Integer>> ret = new HashMap<String,Map<Integer,Integer>>();
+    for (OneMeasurement m : allMeasurements())
+    {
+      ret.put(m.getName(), m.getReturnCodes());
+    }
+    return ret;
+  }
+
+  /**
+   * The value of all counters, keyed by counter name.
+   */
+  public Map<String,Long> getCounts()
+  {
+    Map<String,Long> ret = new HashMap<String,Long>();
+    for (Map.Entry<String,AtomicLong> counter : _counters.entrySet())
+    {
+      ret.put(counter.getKey(), counter.getValue().get());
+    }
+    return ret;
+  }
+
+  private List<OneMeasurement> allMeasurements()
+  {
+    List<OneMeasurement> ret = new ArrayList<OneMeasurement>();
+    ret.addAll(_opToMesurementMap.values());
+    ret.addAll(_opToIntendedMesurementMap.values());
+    ret.addAll(_opToWarmupMesurementMap.values());
+    ret.addAll(_opToIntendedWarmupMesurementMap.values());
+    return ret;
+  }
+
+  /**
+   * Whether the measurements are kept in HdrHistograms, so percentiles can be read during the run.
+   */
+  public boolean hasHdrHistograms()
+  {
+    return _measurementType == 1 || _measurementType == 2;
   }
 
   /**
@@ -261,6 +759,43 @@ public class Measurements
     {
       measurement.exportMeasurements(exporter);
     }
+    for (OneMeasurement measurement : _opToWarmupMesurementMap.values())
+    {
+      measurement.exportMeasurements(exporter);
+    }
+    for (OneMeasurement measurement : _opToIntendedWarmupMesurementMap.values())
+    {
+      measurement.exportMeasurements(exporter);
+    }
+    for (Map.Entry<String,AtomicLong> counter : _counters.entrySet())
+    {
+      exporter.write(counter.getKey(), "Count", (double)counter.getValue().get());
+    }
+
+    List<Phase> phases;
+    synchronized (this)
+    {
+      phases = new ArrayList<Phase>(_phases);
+    }
+    for (Phase phase : phases)
+    {
+      String section = "PHASE@" + phase.name;
+      long runtime = (phase.endMs > 0 ? phase.endMs : System.currentTimeMillis()) - phase.startMs;
+      exporter.write(section, "RunTime(ms)", runtime);
+      exporter.write(section, "TargetThroughput(ops/sec)", phase.target);
+      if (phase.endMs > 0 && runtime > 0)
+      {
+        exporter.write(section, "Throughput(ops/sec)", 1000.0 * (phase.endOps - phase.startOps) / runtime);
+      }
+      for (OneMeasurement measurement : phase.opToMesurementMap.values())
+      {
+        measurement.exportMeasurements(exporter);
+      }
+      for (OneMeasurement measurement : phase.opToIntendedMesurementMap.values())
+      {
+        measurement.exportMeasurements(exporter);
+      }
+    }
   }
 
   /**
@@ -269,6 +804,18 @@ public class Measurements
   public synchronized String getSummary()
   {
     String ret="";
+    if (_warmingup)
+    {
+      for (OneMeasurement m : _opToWarmupMesurementMap.values())
+      {
+        ret += m.getSummary()+" ";
+      }
+      for (OneMeasurement m : _opToIntendedWarmupMesurementMap.values())
+      {
+        ret += m.getSummary()+" ";
+      }
+      return ret;
+    }
     for (OneMeasurement m : _opToMesurementMap.values())
     {
       ret += m.getSummary()+" ";
@@ -19,7 +19,11 @@ package com.yahoo.ycsb.measurements;
 
 import java.io.IOException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
@@ -31,6 +35,8 @@ public abstract class OneMeasurement {
 
   private final String _name;
   private  final ConcurrentHashMap<Integer, AtomicInteger> _returncodes;
+  private final List<MeasurementShard> _shards;
+  private final TimeUnit _unit;
 
   public String getName() {
     return _name;
@@ -40,11 +46,74 @@ public abstract class OneMeasurement {
    * @param _name
    */
   public OneMeasurement(String _name) {
+    this(_name, TimeUnit.MICROSECONDS);
+  }
+
+  /**
+   * @param _name
+   * @param _unit The unit of the latencies measured (see {@link Measurements#MEASUREMENT_UNIT_PROPERTY}).
+   */
+  public OneMeasurement(String _name, TimeUnit _unit) {
     this._name = _name;
     this._returncodes = new ConcurrentHashMap<Integer, AtomicInteger>();
+    this._shards = new CopyOnWriteArrayList<MeasurementShard>();
+    this._unit = _unit;
+  }
+
+  public TimeUnit getUnit() {
+    return _unit;
+  }
+
+  /**
+   * The name a latency statistic is exported under, labelled with the unit, e.g. "AverageLatency(us)".
+   */
+  protected String latencyLabel(String statistic) {
+    return statistic + "Latency(" + Measurements.unitLabel(_unit) + ")";
+  }
+
+  public abstract void measure(long latency);
+
+  /**
+   * A new shard of this measurement, for one thread to record into without contending with
+   * the others. It is merged in whenever this measurement is read.
+   */
+  public MeasurementShard newShard() {
+    MeasurementShard shard = createShard();
+    _shards.add(shard);
+    return shard;
   }
 
-  public abstract void measure(int latency);
+  /**
+   * Create a shard of this measurement. The default shard records straight into the
+   * measurement, for measurements that do not keep anything per shard.
+   */
+  protected MeasurementShard createShard() {
+    return new MeasurementShard(this) {
+      @Override
+      public void measure(long latency) {
+        OneMeasurement.this.measure(latency);
+      }
+
+      @Override
+      public void reportReturnCode(int code) {
+        OneMeasurement.this.reportReturnCode(code);
+      }
+
+      @Override
+      protected void mergeMeasurements() {
+      }
+    };
+  }
+
+  /**
+   * Merge what the shards recorded since the last merge into this measurement. Measurements
+   * call this before reading what they measured.
+   */
+  protected synchronized void mergeShards() {
+    for (MeasurementShard shard : _shards) {
+      shard.merge();
+    }
+  }
 
   public abstract String getSummary();
 
@@ -52,6 +121,14 @@ public abstract class OneMeasurement {
    * No need for synchronization, using CHM to deal with that
    */
   public void reportReturnCode(int code) {
+    reportReturnCode(code, 1);
+  }
+
+  /**
+   * Report a return code for a number of operations at once, e.g. when merging the
+   * measurements of several clients.
+   */
+  public void reportReturnCode(int code, int count) {
     Integer Icode = code;
     AtomicInteger counter = _returncodes.get(Icode);
 
@@ -62,7 +139,19 @@ public abstract class OneMeasurement {
       }
     }
 
-    counter.incrementAndGet();
+    counter.addAndGet(count);
+  }
+
+  /**
+   * A snapshot of the number of operations per return code.
+   */
+  public Map<Integer, Integer> getReturnCodes() {
+    mergeShards();
+    Map<Integer, Integer> ret = new HashMap<Integer, Integer>();
+    for (Map.Entry<Integer, AtomicInteger> entry : _returncodes.entrySet()) {
+      ret.put(entry.getKey(), entry.getValue().get());
+    }
+    return ret;
   }
 
   /**
@@ -74,6 +163,7 @@ public abstract class OneMeasurement {
   public abstract void exportMeasurements(MeasurementsExporter exporter) throws IOException;
 
   protected final void exportReturnCodes(MeasurementsExporter exporter) throws IOException {
+    mergeShards();
     for (Map.Entry<Integer, AtomicInteger> entry : _returncodes.entrySet()) {
       exporter.write(getName(), "Return=" + entry.getKey(), entry.getValue().get());
     }
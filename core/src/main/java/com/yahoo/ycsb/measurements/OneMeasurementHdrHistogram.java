@@ -49,8 +49,11 @@ public class OneMeasurementHdrHistogram extends OneMeasurement {
   final Recorder histogram;
   Histogram totalHistogram;
 
+  /** Histograms merged in with {@link #add(Histogram)} since the last interval; guarded by this. */
+  Histogram mergedHistogram;
+
   public OneMeasurementHdrHistogram(String name, Properties props) {
-    super(name);
+    super(name, Measurements.getUnit(props));
     boolean shouldLog = Boolean.parseBoolean(props.getProperty("hdrhistogram.fileoutput", "false"));
     if (!shouldLog) {
       log = null;
@@ -74,13 +77,43 @@ public class OneMeasurementHdrHistogram extends OneMeasurement {
   }
 
   /**
-    * It appears latency is reported in micros.
+    * Latency is reported in the unit of the measurements, microseconds unless configured
+    * otherwise. The histograms resize themselves to cover any long value.
     * Using {@link Recorder} to support concurrent updates to histogram.
     *
-    * @see com.yahoo.ycsb.OneMeasurement#measure(int)
+    * @see com.yahoo.ycsb.measurements.OneMeasurement#measure(long)
     */
-  public void measure(int latencyInMicros) {
-    histogram.recordValue(latencyInMicros);
+  public void measure(long latency) {
+    histogram.recordValue(latency);
+  }
+
+  @Override
+  protected MeasurementShard createShard() {
+    return new Shard();
+  }
+
+  /**
+   * A histogram of its own for one thread, added to the interval when it is taken.
+   */
+  private class Shard extends MeasurementShard {
+    private final Histogram shardHistogram = new Histogram(3);
+
+    Shard() {
+      super(OneMeasurementHdrHistogram.this);
+    }
+
+    @Override
+    public synchronized void measure(long latency) {
+      shardHistogram.recordValue(latency);
+    }
+
+    @Override
+    protected void mergeMeasurements() {
+      if (shardHistogram.getTotalCount() > 0) {
+        add(shardHistogram);
+        shardHistogram.reset();
+      }
+    }
   }
 
   /**
@@ -98,11 +131,11 @@ public class OneMeasurementHdrHistogram extends OneMeasurement {
       log.close();
     }
     exporter.write(getName(), "Operations", totalHistogram.getTotalCount());
-    exporter.write(getName(), "AverageLatency(us)", totalHistogram.getMean());
-    exporter.write(getName(), "MinLatency(us)", totalHistogram.getMinValue());
-    exporter.write(getName(), "MaxLatency(us)", totalHistogram.getMaxValue());
-    exporter.write(getName(), "95thPercentileLatency(us)", totalHistogram.getValueAtPercentile(90));
-    exporter.write(getName(), "99thPercentileLatency(us)", totalHistogram.getValueAtPercentile(99));
+    exporter.write(getName(), latencyLabel("Average"), totalHistogram.getMean());
+    exporter.write(getName(), latencyLabel("Min"), totalHistogram.getMinValue());
+    exporter.write(getName(), latencyLabel("Max"), totalHistogram.getMaxValue());
+    exporter.write(getName(), latencyLabel("95thPercentile"), totalHistogram.getValueAtPercentile(90));
+    exporter.write(getName(), latencyLabel("99thPercentile"), totalHistogram.getValueAtPercentile(99));
     
     exportReturnCodes(exporter);
   }
@@ -131,8 +164,45 @@ public class OneMeasurementHdrHistogram extends OneMeasurement {
 				+ d.format(intervalHistogram.getValueAtPercentile(99.99)) + "]";
 	}
 
-	private Histogram getIntervalHistogramAndAccumulate() {
+	/**
+	 * Take the measurements since the last interval, e.g. to send them to a coordinator that
+	 * merges the measurements of several clients. Like the status thread, this folds the
+	 * interval into the total.
+	 */
+	public synchronized Histogram getIntervalHistogram() {
+		return getIntervalHistogramAndAccumulate().copy();
+	}
+
+	/**
+	 * Merge measurements taken elsewhere into the current interval.
+	 */
+	public synchronized void add(Histogram interval) {
+		if (mergedHistogram == null) {
+			// decoded histograms only cover the range of their own values
+			mergedHistogram = new Histogram(3);
+		}
+		mergedHistogram.add(interval);
+	}
+
+	/**
+	 * The latency at the given percentile of everything measured so far, e.g. to check a
+	 * probe of the saturation search against a latency bound. Like the status thread, this
+	 * folds the current interval into the total.
+	 *
+	 * @return The latency in the unit of the measurements, or -1 if nothing was measured.
+	 */
+	public synchronized long getPercentile(double percentile) {
+		getIntervalHistogramAndAccumulate();
+		return totalHistogram.getTotalCount() == 0 ? -1 : totalHistogram.getValueAtPercentile(percentile);
+	}
+
+	private synchronized Histogram getIntervalHistogramAndAccumulate() {
+		mergeShards();
 		Histogram intervalHistogram = histogram.getIntervalHistogram();
+		if (mergedHistogram != null) {
+			intervalHistogram.add(mergedHistogram);
+			mergedHistogram = null;
+		}
 		// add this to the total time histogram.
 		if (totalHistogram == null) {
 			totalHistogram = intervalHistogram;
@@ -22,6 +22,7 @@ import java.text.DecimalFormat;
 import java.util.Properties;
 
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
@@ -48,12 +49,16 @@ public class OneMeasurementHistogram extends OneMeasurement
   int windowoperations;
   long windowtotallatency;
 
-  int min;
-  int max;
+  long min;
+  long max;
+
+  /** The size of a bucket, one millisecond in the unit of the measurements. */
+  final long _bucketsize;
 
   public OneMeasurementHistogram(String name, Properties props)
   {
-    super(name);
+    super(name, Measurements.getUnit(props));
+    _bucketsize=getUnit().convert(1, TimeUnit.MILLISECONDS);
     _buckets=Integer.parseInt(props.getProperty(BUCKETS, BUCKETS_DEFAULT));
     histogram=new int[_buckets];
     histogramoverflow=0;
@@ -66,17 +71,23 @@ public class OneMeasurementHistogram extends OneMeasurement
   }
 
   /* (non-Javadoc)
-   * @see com.yahoo.ycsb.OneMeasurement#measure(int)
+   * @see com.yahoo.ycsb.measurements.OneMeasurement#measure(long)
    */
-  public synchronized void measure(int latency)
+  public synchronized void measure(long latency)
   {
-    if (latency/1000>=_buckets)
+    record(latency);
+  }
+
+  private void record(long latency)
+  {
+    long bucket=latency/_bucketsize;
+    if (bucket>=_buckets)
     {
       histogramoverflow++;
     }
     else
     {
-      histogram[latency/1000]++;
+      histogram[(int)bucket]++;
     }
     operations++;
     totallatency+=latency;
@@ -95,12 +106,93 @@ public class OneMeasurementHistogram extends OneMeasurement
   }
 
   @Override
-  public void exportMeasurements(MeasurementsExporter exporter) throws IOException
+  protected MeasurementShard createShard()
+  {
+    return new Shard();
+  }
+
+  /**
+   * Buckets of its own for one thread, added to the histogram when it is read.
+   */
+  private class Shard extends MeasurementShard
+  {
+    final int[] shardhistogram=new int[_buckets];
+    int shardoverflow;
+    int shardoperations;
+    long shardtotallatency;
+    long shardmin=-1;
+    long shardmax=-1;
+
+    Shard()
+    {
+      super(OneMeasurementHistogram.this);
+    }
+
+    @Override
+    public synchronized void measure(long latency)
+    {
+      long bucket=latency/_bucketsize;
+      if (bucket>=_buckets)
+      {
+        shardoverflow++;
+      }
+      else
+      {
+        shardhistogram[(int)bucket]++;
+      }
+      shardoperations++;
+      shardtotallatency+=latency;
+      if ( (shardmin<0) || (latency<shardmin) )
+      {
+        shardmin=latency;
+      }
+      if ( (shardmax<0) || (latency>shardmax) )
+      {
+        shardmax=latency;
+      }
+    }
+
+    @Override
+    protected void mergeMeasurements()
+    {
+      if (shardoperations==0)
+      {
+        return;
+      }
+      for (int i=0; i<_buckets; i++)
+      {
+        histogram[i]+=shardhistogram[i];
+        shardhistogram[i]=0;
+      }
+      histogramoverflow+=shardoverflow;
+      operations+=shardoperations;
+      totallatency+=shardtotallatency;
+      windowoperations+=shardoperations;
+      windowtotallatency+=shardtotallatency;
+      if ( (min<0) || (shardmin<min) )
+      {
+        min=shardmin;
+      }
+      if ( (max<0) || (shardmax>max) )
+      {
+        max=shardmax;
+      }
+      shardoverflow=0;
+      shardoperations=0;
+      shardtotallatency=0;
+      shardmin=-1;
+      shardmax=-1;
+    }
+  }
+
+  @Override
+  public synchronized void exportMeasurements(MeasurementsExporter exporter) throws IOException
   {
+    mergeShards();
     exporter.write(getName(), "Operations", operations);
-    exporter.write(getName(), "AverageLatency(us)", (((double)totallatency)/((double)operations)));
-    exporter.write(getName(), "MinLatency(us)", min);
-    exporter.write(getName(), "MaxLatency(us)", max);
+    exporter.write(getName(), latencyLabel("Average"), (((double)totallatency)/((double)operations)));
+    exporter.write(getName(), latencyLabel("Min"), min);
+    exporter.write(getName(), latencyLabel("Max"), max);
 
     int opcounter=0;
     boolean done95th=false;
@@ -109,12 +201,12 @@ public class OneMeasurementHistogram extends OneMeasurement
       opcounter+=histogram[i];
       if ( (!done95th) && (((double)opcounter)/((double)operations)>=0.95) )
       {
-        exporter.write(getName(), "95thPercentileLatency(us)", i*1000);
+        exporter.write(getName(), latencyLabel("95thPercentile"), i*_bucketsize);
         done95th=true;
       }
       if (((double)opcounter)/((double)operations)>=0.99)
       {
-        exporter.write(getName(), "99thPercentileLatency(us)", i*1000);
+        exporter.write(getName(), latencyLabel("99thPercentile"), i*_bucketsize);
         break;
       }
     }
@@ -129,7 +221,8 @@ public class OneMeasurementHistogram extends OneMeasurement
   }
 
   @Override
-  public String getSummary() {
+  public synchronized String getSummary() {
+    mergeShards();
     if (windowoperations==0)
     {
       return "";
@@ -138,6 +231,6 @@ public class OneMeasurementHistogram extends OneMeasurement
     double report=((double)windowtotallatency)/((double)windowoperations);
     windowtotallatency=0;
     windowoperations=0;
-    return "["+getName()+" AverageLatency(us)="+d.format(report)+"]";
+    return "["+getName()+" "+latencyLabel("Average")+"="+d.format(report)+"]";
   }
 }
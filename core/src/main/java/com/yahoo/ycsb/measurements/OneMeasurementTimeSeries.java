@@ -18,28 +18,13 @@
 package com.yahoo.ycsb.measurements;
 
 import java.io.IOException;
-import java.util.Vector;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
 import java.text.DecimalFormat;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import com.yahoo.ycsb.measurements.exporter.MeasurementsExporter;
 
-class SeriesUnit
-{
-  /**
-   * @param time
-   * @param average
-   */
-  public SeriesUnit(long time, double average) {
-    this.time = time;
-    this.average = average;
-  }
-  public long time;
-  public double average;
-}
-
 /**
  * A time series measurement of a metric, such as READ LATENCY.
  */
@@ -53,12 +38,18 @@ public class OneMeasurementTimeSeries extends OneMeasurement
   public static final String GRANULARITY_DEFAULT="1000";
 
   int _granularity;
-  Vector<SeriesUnit> _measurements;
 
-  long start=-1;
-  long currentunit=-1;
-  int count=0;
-  int sum=0;
+  /**
+   * The time the measurement started, which the units of the series are counted from.
+   */
+  final long start;
+
+  /**
+   * The number of operations and their total latency in each unit, by the start of the unit in
+   * milliseconds since start.
+   */
+  final TreeMap<Long,long[]> _units;
+
   int operations=0;
   long totallatency=0;
 
@@ -66,83 +57,146 @@ public class OneMeasurementTimeSeries extends OneMeasurement
   int windowoperations=0;
   long windowtotallatency=0;
 
-  int min=-1;
-  int max=-1;
+  long min=-1;
+  long max=-1;
 
   public OneMeasurementTimeSeries(String name, Properties props)
   {
-    super(name);
+    super(name, Measurements.getUnit(props));
     _granularity=Integer.parseInt(props.getProperty(GRANULARITY,GRANULARITY_DEFAULT));
-    _measurements=new Vector<SeriesUnit>();
+    start=System.currentTimeMillis();
+    _units=new TreeMap<Long,long[]>();
   }
 
-  void checkEndOfUnit(boolean forceend)
+  long currentUnit()
   {
     long now=System.currentTimeMillis();
+    return ((now-start)/_granularity)*_granularity;
+  }
 
-    if (start<0)
+  @Override
+  public synchronized void measure(long latency)
+  {
+    add(currentUnit(),1,latency);
+    addMinMax(latency,latency);
+  }
+
+  private void add(long unit, long count, long sum)
+  {
+    long[] u=_units.get(unit);
+    if (u==null)
     {
-      currentunit=0;
-      start=now;
+      u=new long[2];
+      _units.put(unit,u);
     }
+    u[0]+=count;
+    u[1]+=sum;
+    operations+=count;
+    totallatency+=sum;
+    windowoperations+=count;
+    windowtotallatency+=sum;
+  }
 
-    long unit=((now-start)/_granularity)*_granularity;
-
-    if ( (unit>currentunit) || (forceend) )
+  private void addMinMax(long lo, long hi)
+  {
+    if ( (lo<min) || (min<0) )
     {
-      double avg=((double)sum)/((double)count);
-      _measurements.add(new SeriesUnit(currentunit,avg));
-
-      currentunit=unit;
-
-      count=0;
-      sum=0;
+      min=lo;
+    }
+    if (hi>max)
+    {
+      max=hi;
     }
   }
 
   @Override
-  public void measure(int latency)
+  protected MeasurementShard createShard()
   {
-    checkEndOfUnit(false);
+    return new Shard();
+  }
+
+  /**
+   * Units of its own for one thread, added to the series when it is read.
+   */
+  private class Shard extends MeasurementShard
+  {
+    final TreeMap<Long,long[]> shardunits=new TreeMap<Long,long[]>();
+    long lastunit=-1;
+    long[] last;
+    long shardmin=-1;
+    long shardmax=-1;
 
-    count++;
-    sum+=latency;
-    totallatency+=latency;
-    operations++;
-    windowoperations++;
-    windowtotallatency+=latency;
+    Shard()
+    {
+      super(OneMeasurementTimeSeries.this);
+    }
 
-    if (latency>max)
+    @Override
+    public synchronized void measure(long latency)
     {
-      max=latency;
+      long unit=currentUnit();
+      if (unit!=lastunit)
+      {
+        last=shardunits.get(unit);
+        if (last==null)
+        {
+          last=new long[2];
+          shardunits.put(unit,last);
+        }
+        lastunit=unit;
+      }
+      last[0]++;
+      last[1]+=latency;
+      if ( (latency<shardmin) || (shardmin<0) )
+      {
+        shardmin=latency;
+      }
+      if (latency>shardmax)
+      {
+        shardmax=latency;
+      }
     }
 
-    if ( (latency<min) || (min<0) )
+    @Override
+    protected void mergeMeasurements()
     {
-      min=latency;
+      if (shardunits.isEmpty())
+      {
+        return;
+      }
+      for (Map.Entry<Long,long[]> entry : shardunits.entrySet())
+      {
+        add(entry.getKey(),entry.getValue()[0],entry.getValue()[1]);
+      }
+      addMinMax(shardmin,shardmax);
+      shardunits.clear();
+      lastunit=-1;
+      last=null;
+      shardmin=-1;
+      shardmax=-1;
     }
   }
 
-
   @Override
-  public void exportMeasurements(MeasurementsExporter exporter) throws IOException {
-    checkEndOfUnit(true);
+  public synchronized void exportMeasurements(MeasurementsExporter exporter) throws IOException {
+    mergeShards();
 
     exporter.write(getName(), "Operations", operations);
-    exporter.write(getName(), "AverageLatency(us)", (((double) totallatency) / ((double) operations)));
-    exporter.write(getName(), "MinLatency(us)", min);
-    exporter.write(getName(), "MaxLatency(us)", max);
+    exporter.write(getName(), latencyLabel("Average"), (((double) totallatency) / ((double) operations)));
+    exporter.write(getName(), latencyLabel("Min"), min);
+    exporter.write(getName(), latencyLabel("Max"), max);
 
     // TODO: 95th and 99th percentile latency
 
     exportReturnCodes(exporter);
-    for (SeriesUnit unit : _measurements) {
-      exporter.write(getName(), Long.toString(unit.time), unit.average);
+    for (Map.Entry<Long,long[]> unit : _units.entrySet()) {
+      exporter.write(getName(), Long.toString(unit.getKey()), ((double) unit.getValue()[1]) / ((double) unit.getValue()[0]));
     }
   }
 
   @Override
-  public String getSummary() {
+  public synchronized String getSummary() {
+    mergeShards();
     if (windowoperations==0)
     {
       return "";
@@ -151,7 +205,7 @@ public class OneMeasurementTimeSeries extends OneMeasurement
     double report=((double)windowtotallatency)/((double)windowoperations);
     windowtotallatency=0;
     windowoperations=0;
-    return "["+getName()+" AverageLatency(us)="+d.format(report)+"]";
+    return "["+getName()+" "+latencyLabel("Average")+"="+d.format(report)+"]";
   }
 
 }
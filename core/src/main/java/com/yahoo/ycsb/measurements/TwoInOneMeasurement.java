@@ -18,6 +18,7 @@
 package com.yahoo.ycsb.measurements;
 
 import java.io.IOException;
+import java.util.Map;
 
 import org.HdrHistogram.Recorder;
 
@@ -32,7 +33,7 @@ public class TwoInOneMeasurement extends OneMeasurement {
 
   final OneMeasurement thing1,thing2;
   public TwoInOneMeasurement(String name, OneMeasurement thing1,OneMeasurement thing2) {
-    super(name);
+    super(name, thing1.getUnit());
     this.thing1 = thing1;
     this.thing2 = thing2;
   }
@@ -46,15 +47,50 @@ public class TwoInOneMeasurement extends OneMeasurement {
     thing1.reportReturnCode(code);
   }
 
+  @Override
+  public void reportReturnCode(int code, int count) {
+    thing1.reportReturnCode(code, count);
+  }
+
+  @Override
+  public Map<Integer, Integer> getReturnCodes() {
+    return thing1.getReturnCodes();
+  }
+
   /**
-   * It appears latency is reported in micros.
+   * Latency is reported in the unit of the measurements.
    * Using {@link Recorder} to support concurrent updates to histogram.
    *
-   * @see com.yahoo.ycsb.OneMeasurement#measure(int)
+   * @see com.yahoo.ycsb.measurements.OneMeasurement#measure(long)
    */
-  public void measure(int latencyInMicros) {
-    thing1.measure(latencyInMicros);
-    thing2.measure(latencyInMicros);
+  public void measure(long latency) {
+    thing1.measure(latency);
+    thing2.measure(latency);
+  }
+
+  /**
+   * A shard of each measurement, which they merge in themselves when they are read.
+   */
+  @Override
+  protected MeasurementShard createShard() {
+    final MeasurementShard shard1 = thing1.newShard();
+    final MeasurementShard shard2 = thing2.newShard();
+    return new MeasurementShard(this) {
+      @Override
+      public void measure(long latency) {
+        shard1.measure(latency);
+        shard2.measure(latency);
+      }
+
+      @Override
+      public void reportReturnCode(int code) {
+        shard1.reportReturnCode(code);
+      }
+
+      @Override
+      protected void mergeMeasurements() {
+      }
+    };
   }
 
   /**
@@ -22,7 +22,7 @@ import java.util.Properties;
 import com.yahoo.ycsb.*;
 import com.yahoo.ycsb.generator.AcknowledgedCounterGenerator;
 import com.yahoo.ycsb.generator.CounterGenerator;
-import com.yahoo.ycsb.generator.DiscreteGenerator;
+import com.yahoo.ycsb.generator.EnumGenerator;
 import com.yahoo.ycsb.generator.ExponentialGenerator;
 import com.yahoo.ycsb.generator.Generator;
 import com.yahoo.ycsb.generator.ConstantIntegerGenerator;
@@ -32,6 +32,7 @@ import com.yahoo.ycsb.generator.IntegerGenerator;
 import com.yahoo.ycsb.generator.ScrambledZipfianGenerator;
 import com.yahoo.ycsb.generator.SkewedLatestGenerator;
 import com.yahoo.ycsb.generator.UniformIntegerGenerator;
+import com.yahoo.ycsb.generator.Zeta;
 import com.yahoo.ycsb.generator.ZipfianGenerator;
 import com.yahoo.ycsb.measurements.Measurements;
 
@@ -42,6 +43,11 @@ import java.util.Vector;
 import java.util.List;
 import java.util.Map;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The core benchmark scenario. Represents a set of clients doing simple CRUD operations. The relative 
@@ -60,9 +66,18 @@ import java.util.ArrayList;
  * <LI><b>scanproportion</b>: what proportion of operations should be scans (default: 0)
  * <LI><b>readmodifywriteproportion</b>: what proportion of operations should be read a record, modify it, write it back (default: 0)
  * <LI><b>requestdistribution</b>: what distribution should be used to select the records to operate on - uniform, zipfian, hotspot, or latest (default: uniform)
+ * <LI><b>zipfianconstant</b>: the skew of the zipfian and latest request distributions (default: 0.99)
+ * <LI><b>zeta</b>: compute the zeta constant of zipfian distributions in closed form ("approximate") or by summing ("exact"), cached in the file zetacachefile (default: approximate)
  * <LI><b>maxscanlength</b>: for scans, what is the maximum number of records to scan (default: 1000)
  * <LI><b>scanlengthdistribution</b>: for scans, what distribution should be used to choose the number of records to scan, for each scan, between 1 and maxscanlength (default: uniform)
  * <LI><b>insertorder</b>: should records be inserted in order by key ("ordered"), or in hashed order ("hashed") (default: hashed)
+ * <LI><b>loadcheckpoint</b>: a file to record the progress of the load in, and resume it from (default: none)
+ * <LI><b>loadcheckpoint.interval</b>: how often to write the load checkpoint, in seconds (default: 10)
+ * <LI><b>insertbatchsize</b>, <b>readbatchsize</b>, <b>updatebatchsize</b>: how many records to insert, read or update at once (default: 1)
+ * <LI><b>recordformat</b>: pass the records to the DB as HashMaps ("map"), or as BufferRecords reused by each thread ("buffer"), which does not batch (default: map)
+ * <LI><b>keytable</b>: precompute the keys of all recordcount records when starting (default: false)
+ * <LI><b>valuepoolsize</b>: the size in bytes of a pool of random bytes generated when starting, that values are sliced from; 0 generates each value (default: 0)
+ * <LI><b>valuecompressibility</b>: the fraction of the value pool that is zeros, from 0 to 1 (default: 0)
  * </ul> 
  */
 public class CoreWorkload extends Workload
@@ -173,14 +188,67 @@ public class CoreWorkload extends Workload
   private boolean dataintegrity;
 
   /**
-   * Response values for data integrity checks.
-   * Need to be multiples of 1000 to match bucket offsets of
-   * measurements/OneMeasurementHistogram.java.
+   * Response values for data integrity checks: the bucket of the histogram
+   * of measurements/OneMeasurementHistogram.java they are recorded in.
+   * The buckets are a millisecond wide, whatever the unit of the measurements.
    */
   private final int DATA_INT_MATCH = 0;
-  private final int DATA_INT_DEVIATE = 1000;
-  private final int DATA_INT_UNEXPECTED_NULL = 2000;
+  private final int DATA_INT_DEVIATE = 1;
+  private final int DATA_INT_UNEXPECTED_NULL = 2;
 
+	/**
+	 * The name of the property for how records are passed to the DB: as a HashMap of ByteIterators
+	 * ("map"), or as a BufferRecord ("buffer"), which each client thread reuses so that reads,
+	 * inserts and updates allocate nothing for their values. The "buffer" format needs batch sizes of 1.
+	 */
+	public static final String RECORD_FORMAT_PROPERTY="recordformat";
+
+	/**
+	 * Default record format.
+	 */
+	public static final String RECORD_FORMAT_PROPERTY_DEFAULT="map";
+
+	/**
+	 * The name of the property for precomputing the keys of all recordcount records when starting,
+	 * so that operations on them take their key from a table instead of hashing and formatting it.
+	 */
+	public static final String KEY_TABLE_PROPERTY="keytable";
+
+	/**
+	 * Default for precomputing the keys.
+	 */
+	public static final String KEY_TABLE_PROPERTY_DEFAULT="false";
+
+	/**
+	 * The name of the property for the size in bytes of a pool of random bytes generated when
+	 * starting, that values are sliced from instead of generating random bytes for each value.
+	 * 0 generates each value. The pool is outside the heap and shared by all threads.
+	 */
+	public static final String VALUE_POOL_SIZE_PROPERTY="valuepoolsize";
+
+	/**
+	 * Default value pool size.
+	 */
+	public static final String VALUE_POOL_SIZE_PROPERTY_DEFAULT="0";
+
+	/**
+	 * The name of the property for the fraction of the value pool that is zeros, from 0 (values
+	 * do not compress) to 1.
+	 */
+	public static final String VALUE_COMPRESSIBILITY_PROPERTY="valuecompressibility";
+
+	/**
+	 * Default value compressibility.
+	 */
+	public static final String VALUE_COMPRESSIBILITY_PROPERTY_DEFAULT="0";
+
+	boolean bufferrecords;
+
+	/** The record of each client thread, when the record format is "buffer". */
+	ThreadLocal<BufferRecord> bufferrecord;
+
+	/** The pool that values are sliced from, or null to generate each value. */
+	ValuePool valuepool;
 
 	/**
 	 * The name of the property for the proportion of transactions that are reads.
@@ -252,6 +320,16 @@ public class CoreWorkload extends Workload
 	 */
 	public static final String REQUEST_DISTRIBUTION_PROPERTY_DEFAULT="uniform";
 
+	/**
+	 * The name of the property for the zipfian constant of the "zipfian" and "latest" request distributions.
+	 */
+	public static final String ZIPFIAN_CONSTANT_PROPERTY="zipfianconstant";
+
+	/**
+	 * The default zipfian constant.
+	 */
+	public static final String ZIPFIAN_CONSTANT_PROPERTY_DEFAULT=Double.toString(ZipfianGenerator.ZIPFIAN_CONSTANT);
+
 	/**
 	 * The name of the property for the max scan length (number of records)
 	 */
@@ -282,6 +360,45 @@ public class CoreWorkload extends Workload
 	 */
 	public static final String INSERT_ORDER_PROPERTY_DEFAULT="hashed";
 	
+	/**
+	 * The name of the property for the file the progress of the load is checkpointed to. If the
+	 * file exists, the load resumes where the checkpoint says it got to.
+	 */
+	public static final String LOAD_CHECKPOINT_PROPERTY="loadcheckpoint";
+	
+	/**
+	 * The name of the property for how often (in seconds) the load checkpoint is written.
+	 */
+	public static final String LOAD_CHECKPOINT_INTERVAL_PROPERTY="loadcheckpoint.interval";
+	
+	/**
+	 * Default load checkpoint interval.
+	 */
+	public static final String LOAD_CHECKPOINT_INTERVAL_PROPERTY_DEFAULT="10";
+	
+	/**
+	 * The name of the property for the number of records inserted together, with DB.batchInsert(),
+	 * when loading.
+	 */
+	public static final String INSERT_BATCH_SIZE_PROPERTY="insertbatchsize";
+	
+	/**
+	 * The name of the property for the number of records read together, with DB.batchRead(),
+	 * when a read is chosen.
+	 */
+	public static final String READ_BATCH_SIZE_PROPERTY="readbatchsize";
+	
+	/**
+	 * The name of the property for the number of records updated together, with DB.batchUpdate(),
+	 * when an update is chosen.
+	 */
+	public static final String UPDATE_BATCH_SIZE_PROPERTY="updatebatchsize";
+	
+	/**
+	 * Default batch size: one record at a time, without the batch operations.
+	 */
+	public static final String BATCH_SIZE_PROPERTY_DEFAULT="1";
+	
 	/**
    * Percentage data items that constitute the hot set.
    */
@@ -304,11 +421,47 @@ public class CoreWorkload extends Workload
 	
 	IntegerGenerator keysequence;
 
-	DiscreteGenerator operationchooser;
+	/**
+	 * The operations of a transaction.
+	 */
+	public enum Operation
+	{
+		READ, UPDATE, DELETE, INSERT, SCAN, READMODIFYWRITE
+	}
+
+	volatile EnumGenerator<Operation> operationchooser;
+
+	/** The properties of the workload, with the changes made while running. */
+	Properties properties;
+
+	/** The properties that can be changed while running. */
+	static final Set<String> RECONFIGURABLE_PROPERTIES=new HashSet<String>(Arrays.asList(
+			READ_PROPORTION_PROPERTY, UPDATE_PROPORTION_PROPERTY, DELETE_PROPORTION_PROPERTY,
+			INSERT_PROPORTION_PROPERTY, SCAN_PROPORTION_PROPERTY, READMODIFYWRITE_PROPORTION_PROPERTY));
 
 	IntegerGenerator keychooser;
 
-	Generator fieldchooser;
+	IntegerGenerator fieldchooser;
+
+	/** For each field, an immutable set of only that field, to read it without allocating a set. */
+	List<Set<String>> singlefieldsets;
+
+	/**
+	 * The keys of the records from 0 to recordcount, if they are precomputed: as Strings
+	 * for the "map" record format, and as bytes for the "buffer" one.
+	 */
+	String[] keytable;
+	byte[][] keybytetable;
+
+	/** The key of each client thread, when the record format is "buffer". */
+	ThreadLocal<KeyBuffer> keybuffer=new ThreadLocal<KeyBuffer>()
+	{
+		@Override
+		protected KeyBuffer initialValue()
+		{
+			return new KeyBuffer();
+		}
+	};
 
 	AcknowledgedCounterGenerator transactioninsertkeysequence;
 	
@@ -316,7 +469,60 @@ public class CoreWorkload extends Workload
 	
 	boolean orderedinserts;
 
-	int recordcount;
+	long recordcount;
+
+	/** The first key and the number of keys to insert when loading; 0 if unbounded. */
+	long insertstart;
+	long insertcount;
+
+	int insertbatchsize;
+	int readbatchsize;
+	int updatebatchsize;
+
+	/** Whether the client loads the data, so that the threads get their own range of keys. */
+	boolean loading;
+
+	/** Where the progress of the load is checkpointed, or null. */
+	LoadCheckpoint loadcheckpoint;
+
+	/**
+	 * The state of a client thread when loading. Each thread inserts its own contiguous range
+	 * of keys with its own generators, so the threads share nothing while loading.
+	 */
+	static class ThreadState
+	{
+		final int threadid;
+		final long end;
+		final IntegerGenerator fieldlengthgenerator;
+
+		/** The next key to insert. */
+		volatile long next;
+
+		/** The keys of asynchronous inserts not completed yet, or failed. */
+		final ConcurrentSkipListSet<Long> pending=new ConcurrentSkipListSet<Long>();
+
+		/** Set once the thread inserted a key. */
+		volatile boolean loading;
+
+		ThreadState(int threadid, long start, long end, IntegerGenerator fieldlengthgenerator)
+		{
+			this.threadid=threadid;
+			this.next=start;
+			this.end=end;
+			this.fieldlengthgenerator=fieldlengthgenerator;
+		}
+
+		/**
+		 * The first key of the range that is not known to be inserted.
+		 */
+		long resumeAt()
+		{
+			// read next first: a key it covers is either pending, or done
+			long resume=next;
+			Long oldest=pending.ceiling(Long.MIN_VALUE);
+			return oldest==null ? resume : Math.min(resume, oldest);
+		}
+	}
 
     private Measurements _measurements = Measurements.getMeasurements();
 	
@@ -349,6 +555,7 @@ public class CoreWorkload extends Workload
 	 */
 	public void init(Properties p) throws WorkloadException
 	{
+		properties = p;
 		table = p.getProperty(TABLENAME_PROPERTY,TABLENAME_PROPERTY_DEFAULT);
 		
 		fieldcount=Integer.parseInt(p.getProperty(FIELD_COUNT_PROPERTY,FIELD_COUNT_PROPERTY_DEFAULT));
@@ -364,17 +571,39 @@ public class CoreWorkload extends Workload
 		double insertproportion=Double.parseDouble(p.getProperty(INSERT_PROPORTION_PROPERTY,INSERT_PROPORTION_PROPERTY_DEFAULT));
 		double scanproportion=Double.parseDouble(p.getProperty(SCAN_PROPORTION_PROPERTY,SCAN_PROPORTION_PROPERTY_DEFAULT));
 		double readmodifywriteproportion=Double.parseDouble(p.getProperty(READMODIFYWRITE_PROPORTION_PROPERTY,READMODIFYWRITE_PROPORTION_PROPERTY_DEFAULT));
-		recordcount=Integer.parseInt(p.getProperty(Client.RECORD_COUNT_PROPERTY, Client.DEFAULT_RECORD_COUNT));
+		recordcount=Long.parseLong(p.getProperty(Client.RECORD_COUNT_PROPERTY, Client.DEFAULT_RECORD_COUNT));
 		if(recordcount == 0)
 		    recordcount = Integer.MAX_VALUE;
 		String requestdistrib=p.getProperty(REQUEST_DISTRIBUTION_PROPERTY,REQUEST_DISTRIBUTION_PROPERTY_DEFAULT);
+		double zipfianconstant=Double.parseDouble(p.getProperty(ZIPFIAN_CONSTANT_PROPERTY,ZIPFIAN_CONSTANT_PROPERTY_DEFAULT));
+		if (!(zipfianconstant>0) || zipfianconstant==1)
+		{
+			throw new WorkloadException("The zipfian constant must be positive and not 1");
+		}
+		try
+		{
+			Zeta.setProperties(p);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new WorkloadException(e.getMessage());
+		}
 		int maxscanlength=Integer.parseInt(p.getProperty(MAX_SCAN_LENGTH_PROPERTY,MAX_SCAN_LENGTH_PROPERTY_DEFAULT));
 		String scanlengthdistrib=p.getProperty(SCAN_LENGTH_DISTRIBUTION_PROPERTY,SCAN_LENGTH_DISTRIBUTION_PROPERTY_DEFAULT);
 		
-		int insertstart=Integer.parseInt(p.getProperty(INSERT_START_PROPERTY,INSERT_START_PROPERTY_DEFAULT));
+		insertstart=Long.parseLong(p.getProperty(INSERT_START_PROPERTY,INSERT_START_PROPERTY_DEFAULT));
+		insertcount=Long.parseLong(p.getProperty(Client.INSERT_COUNT_PROPERTY, p.getProperty(Client.RECORD_COUNT_PROPERTY, Client.DEFAULT_RECORD_COUNT)));
 		
 		readallfields=Boolean.parseBoolean(p.getProperty(READ_ALL_FIELDS_PROPERTY,READ_ALL_FIELDS_PROPERTY_DEFAULT));
 		writeallfields=Boolean.parseBoolean(p.getProperty(WRITE_ALL_FIELDS_PROPERTY,WRITE_ALL_FIELDS_PROPERTY_DEFAULT));
+
+		insertbatchsize=Integer.parseInt(p.getProperty(INSERT_BATCH_SIZE_PROPERTY,BATCH_SIZE_PROPERTY_DEFAULT));
+		readbatchsize=Integer.parseInt(p.getProperty(READ_BATCH_SIZE_PROPERTY,BATCH_SIZE_PROPERTY_DEFAULT));
+		updatebatchsize=Integer.parseInt(p.getProperty(UPDATE_BATCH_SIZE_PROPERTY,BATCH_SIZE_PROPERTY_DEFAULT));
+		if (insertbatchsize<1 || readbatchsize<1 || updatebatchsize<1)
+		{
+			throw new WorkloadException("Batch sizes must be at least 1");
+		}
 		
     dataintegrity = Boolean.parseBoolean(p.getProperty(DATA_INTEGRITY_PROPERTY, DATA_INTEGRITY_PROPERTY_DEFAULT));
     //Confirm that fieldlengthgenerator returns a constant if data
@@ -385,6 +614,50 @@ public class CoreWorkload extends Workload
       System.exit(-1);
     }
 
+		String recordformat=p.getProperty(RECORD_FORMAT_PROPERTY,RECORD_FORMAT_PROPERTY_DEFAULT);
+		if (recordformat.equals("buffer"))
+		{
+			if (dataintegrity)
+			{
+				throw new WorkloadException("The data integrity check needs recordformat=map");
+			}
+			if (insertbatchsize>1 || readbatchsize>1 || updatebatchsize>1)
+			{
+				// a batch holds a record for each key, not the one record of the thread
+				throw new WorkloadException("Batch sizes above 1 need recordformat=map");
+			}
+			bufferrecords=true;
+			final String[] names=fieldnames.toArray(new String[fieldcount]);
+			final int capacity=fieldcount*Integer.parseInt(p.getProperty(FIELD_LENGTH_PROPERTY,FIELD_LENGTH_PROPERTY_DEFAULT));
+			bufferrecord=new ThreadLocal<BufferRecord>()
+			{
+				@Override
+				protected BufferRecord initialValue()
+				{
+					return new BufferRecord(names, capacity);
+				}
+			};
+		}
+		else if (!recordformat.equals("map"))
+		{
+			throw new WorkloadException("Unknown record format \""+recordformat+"\"");
+		}
+
+		int valuepoolsize=Integer.parseInt(p.getProperty(VALUE_POOL_SIZE_PROPERTY,VALUE_POOL_SIZE_PROPERTY_DEFAULT));
+		if (valuepoolsize>0)
+		{
+			if (valuepoolsize<Integer.parseInt(p.getProperty(FIELD_LENGTH_PROPERTY,FIELD_LENGTH_PROPERTY_DEFAULT)))
+			{
+				throw new WorkloadException("The value pool must be at least as large as a field");
+			}
+			double compressibility=Double.parseDouble(p.getProperty(VALUE_COMPRESSIBILITY_PROPERTY,VALUE_COMPRESSIBILITY_PROPERTY_DEFAULT));
+			if (!(compressibility>=0 && compressibility<=1))
+			{
+				throw new WorkloadException("Value compressibility must be between 0 and 1");
+			}
+			valuepool=new ValuePool(valuepoolsize, compressibility);
+		}
+
 		if (p.getProperty(INSERT_ORDER_PROPERTY,INSERT_ORDER_PROPERTY_DEFAULT).compareTo("hashed")==0)
 		{
 			orderedinserts=false;
@@ -403,36 +676,7 @@ public class CoreWorkload extends Workload
 		}
 
 		keysequence=new CounterGenerator(insertstart);
-		operationchooser=new DiscreteGenerator();
-		if (readproportion>0)
-		{
-			operationchooser.addValue(readproportion,"READ");
-		}
-
-		if (updateproportion>0)
-		{
-			operationchooser.addValue(updateproportion,"UPDATE");
-		}
-
-		if (deleteproportion>0)
-		{
-			operationchooser.addValue(deleteproportion,"DELETE");
-		}
-
-		if (insertproportion>0)
-		{
-			operationchooser.addValue(insertproportion,"INSERT");
-		}
-		
-		if (scanproportion>0)
-		{
-			operationchooser.addValue(scanproportion,"SCAN");
-		}
-		
-		if (readmodifywriteproportion>0)
-		{
-			operationchooser.addValue(readmodifywriteproportion,"READMODIFYWRITE");
-		}
+		operationchooser=createOperationChooser(p);
 
 		transactioninsertkeysequence=new AcknowledgedCounterGenerator(recordcount);
 		if (requestdistrib.compareTo("uniform")==0)
@@ -448,14 +692,14 @@ public class CoreWorkload extends Workload
 			//plus the number of predicted keys as the total keyspace. then, if the generator picks a key that hasn't been inserted yet, will
 			//just ignore it and pick another key. this way, the size of the keyspace doesn't change from the perspective of the scrambled zipfian generator
 			
-			int opcount=Integer.parseInt(p.getProperty(Client.OPERATION_COUNT_PROPERTY));
-			int expectednewkeys=(int)(((double)opcount)*insertproportion*2.0); //2 is fudge factor
+			long opcount=Long.parseLong(p.getProperty(Client.OPERATION_COUNT_PROPERTY));
+			long expectednewkeys=(long)(((double)opcount)*insertproportion*2.0); //2 is fudge factor
 			
-			keychooser=new ScrambledZipfianGenerator(recordcount+expectednewkeys);
+			keychooser=new ScrambledZipfianGenerator(recordcount+expectednewkeys,zipfianconstant);
 		}
 		else if (requestdistrib.compareTo("latest")==0)
 		{
-			keychooser=new SkewedLatestGenerator(transactioninsertkeysequence);
+			keychooser=new SkewedLatestGenerator(transactioninsertkeysequence,zipfianconstant);
 		}
 		else if (requestdistrib.equals("hotspot")) 
 		{
@@ -472,6 +716,41 @@ public class CoreWorkload extends Workload
 		}
 
 		fieldchooser=new UniformIntegerGenerator(0,fieldcount-1);
+		singlefieldsets=new ArrayList<Set<String>>(fieldcount);
+		for (String fieldname : fieldnames)
+		{
+			singlefieldsets.add(Collections.singleton(fieldname));
+		}
+
+		keytable=null;
+		keybytetable=null;
+		if (Boolean.parseBoolean(p.getProperty(KEY_TABLE_PROPERTY,KEY_TABLE_PROPERTY_DEFAULT)))
+		{
+			long records=Long.parseLong(p.getProperty(Client.RECORD_COUNT_PROPERTY, Client.DEFAULT_RECORD_COUNT));
+			if (records<=0 || records>=Integer.MAX_VALUE)
+			{
+				throw new WorkloadException("The key table needs a recordcount between 1 and "+(Integer.MAX_VALUE-1));
+			}
+			if (bufferrecords)
+			{
+				byte[][] keys=new byte[(int)records][];
+				for (int i=0; i<keys.length; i++)
+				{
+					KeyBuffer key=buildKey(i);
+					keys[i]=Arrays.copyOf(key.bytes(), key.length());
+				}
+				keybytetable=keys;
+			}
+			else
+			{
+				String[] keys=new String[(int)records];
+				for (int i=0; i<keys.length; i++)
+				{
+					keys[i]=buildKeyName(i);
+				}
+				keytable=keys;
+			}
+		}
 		
 		if (scanlengthdistrib.compareTo("uniform")==0)
 		{
@@ -485,14 +764,169 @@ public class CoreWorkload extends Workload
 		{
 			throw new WorkloadException("Distribution \""+scanlengthdistrib+"\" not allowed for scan length");
 		}
+
+		loading=!Boolean.parseBoolean(p.getProperty(Client.DO_TRANSACTIONS_PROPERTY, "true"));
+		String checkpoint=p.getProperty(LOAD_CHECKPOINT_PROPERTY);
+		if (checkpoint!=null && insertcount>0 && loading)
+		{
+			loadcheckpoint=new LoadCheckpoint(checkpoint, insertstart, insertcount,
+					Integer.parseInt(p.getProperty(LOAD_CHECKPOINT_INTERVAL_PROPERTY, LOAD_CHECKPOINT_INTERVAL_PROPERTY_DEFAULT)));
+		}
+	}
+
+	/**
+	 * Creates a generator choosing the operations in the proportions set in the properties.
+	 */
+	protected static EnumGenerator<Operation> createOperationChooser(Properties p)
+	{
+		double readproportion=Double.parseDouble(p.getProperty(READ_PROPORTION_PROPERTY,READ_PROPORTION_PROPERTY_DEFAULT));
+		double updateproportion=Double.parseDouble(p.getProperty(UPDATE_PROPORTION_PROPERTY,UPDATE_PROPORTION_PROPERTY_DEFAULT));
+		double deleteproportion=Double.parseDouble(p.getProperty(DELETE_PROPORTION_PROPERTY,DELETE_PROPORTION_PROPERTY_DEFAULT));
+		double insertproportion=Double.parseDouble(p.getProperty(INSERT_PROPORTION_PROPERTY,INSERT_PROPORTION_PROPERTY_DEFAULT));
+		double scanproportion=Double.parseDouble(p.getProperty(SCAN_PROPORTION_PROPERTY,SCAN_PROPORTION_PROPERTY_DEFAULT));
+		double readmodifywriteproportion=Double.parseDouble(p.getProperty(READMODIFYWRITE_PROPORTION_PROPERTY,READMODIFYWRITE_PROPORTION_PROPERTY_DEFAULT));
+
+		EnumGenerator<Operation> operationchooser=new EnumGenerator<Operation>(Operation.class);
+		if (readproportion>0)
+		{
+			operationchooser.addValue(readproportion,Operation.READ);
+		}
+
+		if (updateproportion>0)
+		{
+			operationchooser.addValue(updateproportion,Operation.UPDATE);
+		}
+
+		if (deleteproportion>0)
+		{
+			operationchooser.addValue(deleteproportion,Operation.DELETE);
+		}
+
+		if (insertproportion>0)
+		{
+			operationchooser.addValue(insertproportion,Operation.INSERT);
+		}
+		
+		if (scanproportion>0)
+		{
+			operationchooser.addValue(scanproportion,Operation.SCAN);
+		}
+		
+		if (readmodifywriteproportion>0)
+		{
+			operationchooser.addValue(readmodifywriteproportion,Operation.READMODIFYWRITE);
+		}
+
+		return operationchooser;
+	}
+
+	/**
+	 * Change the proportions of the operations while the workload runs. Other properties can
+	 * not be changed.
+	 */
+	@Override
+	public synchronized boolean reconfigure(Properties changes) throws WorkloadException
+	{
+		for (String name : changes.stringPropertyNames())
+		{
+			if (!RECONFIGURABLE_PROPERTIES.contains(name))
+			{
+				throw new WorkloadException("Can not change "+name+" while running");
+			}
+		}
+		Properties p=new Properties();
+		p.putAll(properties);
+		p.putAll(changes);
+		EnumGenerator<Operation> chooser;
+		try
+		{
+			chooser=createOperationChooser(p);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new WorkloadException("Invalid proportion: "+e.getMessage());
+		}
+		if (chooser.isEmpty())
+		{
+			throw new WorkloadException("All proportions are zero");
+		}
+		properties=p;
+		operationchooser=chooser;
+		return true;
+	}
+
+	/**
+	 * Give the thread its share of the keys to load: the same share of insertcount as the
+	 * client gives it of the operations, as a contiguous range. Without an insertcount the
+	 * threads share a single key sequence. Transactions need no state of their own.
+	 */
+	@Override
+	public Object initThread(Properties p, int mythreadid, int threadcount) throws WorkloadException
+	{
+		if (insertcount<=0 || !loading)
+		{
+			return null;
+		}
+		long start=insertstart+share(insertcount, mythreadid, threadcount);
+		long end=insertstart+share(insertcount, mythreadid+1, threadcount);
+		if (loadcheckpoint!=null)
+		{
+			start=loadcheckpoint.resumeAt(mythreadid, threadcount, start);
+		}
+		ThreadState state=new ThreadState(mythreadid, start, end, getFieldLengthGenerator(p));
+		if (loadcheckpoint!=null)
+		{
+			loadcheckpoint.register(state, threadcount);
+		}
+		return state;
+	}
+
+	/**
+	 * Where the share of the given thread starts when dividing count between the threads.
+	 */
+	private static long share(long count, int threadid, int threadcount)
+	{
+		return count/threadcount*threadid+Math.min(threadid, count%threadcount);
+	}
+
+	@Override
+	public void cleanup() throws WorkloadException
+	{
+		if (loadcheckpoint!=null)
+		{
+			loadcheckpoint.close();
+		}
 	}
 
 	public String buildKeyName(long keynum) {
+		String[] keys=keytable;
+		if (keys!=null && keynum>=0 && keynum<keys.length)
+		{
+			return keys[(int)keynum];
+		}
+ 		if (!orderedinserts)
+ 		{
+ 			keynum=Utils.hash(keynum);
+ 		}
+		return keybuffer.get().set("user", keynum).toString();
+	}
+
+	/**
+	 * Sets the key buffer of the thread to the key of a record, like buildKeyName(), but
+	 * without making a String unless the key is in the key table.
+	 */
+	public KeyBuffer buildKey(long keynum) {
+		KeyBuffer key=keybuffer.get();
+		byte[][] keys=keybytetable;
+		if (keys!=null && keynum>=0 && keynum<keys.length)
+		{
+			return key.wrap(keys[(int)keynum]);
+		}
  		if (!orderedinserts)
  		{
  			keynum=Utils.hash(keynum);
  		}
-		return "user"+keynum;
+		return key.set("user", keynum);
 	}
 	
   /**
@@ -501,13 +935,13 @@ public class CoreWorkload extends Workload
   private HashMap<String, ByteIterator> buildSingleValue(String key) {
     HashMap<String,ByteIterator> value = new HashMap<String,ByteIterator>();
 
-    String fieldkey = fieldnames.get(Integer.parseInt(fieldchooser.nextString()));
+    String fieldkey = fieldnames.get(fieldchooser.nextInt());
     ByteIterator data;
     if (dataintegrity) {
       data = new StringByteIterator(buildDeterministicValue(key, fieldkey));
     } else {
       //fill with random data
-      data = new RandomByteIterator(fieldlengthgenerator.nextInt());
+      data = randomValue(fieldlengthgenerator.nextInt());
     }
     value.put(fieldkey,data);
 
@@ -518,26 +952,79 @@ public class CoreWorkload extends Workload
    * Builds values for all fields.
    */
   private HashMap<String, ByteIterator> buildValues(String key) {        
+    return buildValues(key, fieldlengthgenerator);
+  }
+
+  /**
+   * Builds values for all fields, with the lengths from the given generator.
+   */
+  private HashMap<String, ByteIterator> buildValues(String key, IntegerGenerator lengths) {
     HashMap<String,ByteIterator> values = new HashMap<String,ByteIterator>();
 
     for (String fieldkey : fieldnames) {
       ByteIterator data;
       if (dataintegrity) {
-        data = new StringByteIterator(buildDeterministicValue(key, fieldkey));
+        data = new StringByteIterator(buildDeterministicValue(key, fieldkey, lengths));
       } else {
         //fill with random data
-        data = new RandomByteIterator(fieldlengthgenerator.nextInt());
+        data = randomValue(lengths.nextInt());
       }
       values.put(fieldkey,data);
     }
     return values;
   }
 
+  /**
+   * Fills the record of the thread with random values for all fields, with the lengths from
+   * the given generator.
+   */
+  private BufferRecord buildRecord(IntegerGenerator lengths) {
+    BufferRecord record = bufferrecord.get();
+    record.clear();
+    for (int field = 0; field < fieldcount; field++) {
+      addRandomValue(record, field, lengths.nextInt());
+    }
+    return record;
+  }
+
+  /**
+   * Fills the record of the thread with a random value for a randomly chosen field.
+   */
+  private BufferRecord buildSingleRecord() {
+    BufferRecord record = bufferrecord.get();
+    record.clear();
+    addRandomValue(record, fieldchooser.nextInt(), fieldlengthgenerator.nextInt());
+    return record;
+  }
+
+  private void addRandomValue(BufferRecord record, int field, int length) {
+    if (valuepool != null) {
+      valuepool.addValue(record, field, length);
+    } else {
+      int offset = record.add(field, length);
+      RandomByteIterator.fill(record.buffer(), offset, length);
+    }
+  }
+
+  /**
+   * A random value of the given length, sliced from the value pool if there is one.
+   */
+  private ByteIterator randomValue(int length) {
+    if (valuepool != null) {
+      return valuepool.value(length);
+    }
+    return new RandomByteIterator(length);
+  }
+
   /**
    * Build a deterministic value given the key information.
    */
   private String buildDeterministicValue(String key, String fieldkey) {
-    int size = fieldlengthgenerator.nextInt();
+    return buildDeterministicValue(key, fieldkey, fieldlengthgenerator);
+  }
+
+  private String buildDeterministicValue(String key, String fieldkey, IntegerGenerator lengths) {
+    int size = lengths.nextInt();
     StringBuilder sb = new StringBuilder(size);
     sb.append(key);
     sb.append(':');
@@ -559,15 +1046,98 @@ public class CoreWorkload extends Workload
 	 */
 	public boolean doInsert(DB db, Object threadstate)
 	{
-		int keynum=keysequence.nextInt();
-		String dbkey = buildKeyName(keynum);
-		HashMap<String, ByteIterator> values = buildValues(dbkey);
-		if (db.insert(table,dbkey,values) == 0)
+		ThreadState state=(ThreadState)threadstate;
+		if (state!=null)
+		{
+			// the thread's own range of keys
+			long keynum=state.next;
+			if (keynum>=state.end)
+			{
+				return false;
+			}
+			state.loading=true;
+			int res;
+			if (bufferrecords)
+			{
+				res=db.insert(table,buildKey(keynum),buildRecord(state.fieldlengthgenerator));
+			}
+			else
+			{
+				String dbkey = buildKeyName(keynum);
+				res=db.insert(table,dbkey,buildValues(dbkey, state.fieldlengthgenerator));
+			}
+			if (res != 0)
+				return false;
+			state.next=keynum+1;
+			return true;
+		}
+
+		long keynum=keysequence.nextLong();
+		int res;
+		if (bufferrecords)
+		{
+			res=db.insert(table,buildKey(keynum),buildRecord(fieldlengthgenerator));
+		}
+		else
+		{
+			String dbkey = buildKeyName(keynum);
+			res=db.insert(table,dbkey,buildValues(dbkey));
+		}
+		if (res == 0)
 			return true;
 		else
 			return false;
 	}
 
+	/**
+	 * Insert up to max records with a single DB.batchInsert(), if insertbatchsize is more than 1.
+	 */
+	@Override
+	public int doInserts(DB db, Object threadstate, int max)
+	{
+		int n=Math.min(insertbatchsize, max);
+		if (n<=1)
+		{
+			return super.doInserts(db, threadstate, max);
+		}
+
+		ThreadState state=(ThreadState)threadstate;
+		List<String> keys=new ArrayList<String>(n);
+		List<HashMap<String,ByteIterator>> values=new ArrayList<HashMap<String,ByteIterator>>(n);
+		if (state!=null)
+		{
+			// the thread's own range of keys
+			long keynum=state.next;
+			n=(int)Math.min(n, state.end-keynum);
+			if (n<=0)
+			{
+				return 0;
+			}
+			state.loading=true;
+			for (int i=0; i<n; i++)
+			{
+				String dbkey=buildKeyName(keynum+i);
+				keys.add(dbkey);
+				values.add(buildValues(dbkey, state.fieldlengthgenerator));
+			}
+			if (db.batchInsert(table,keys,values) != 0)
+				return 0;
+			state.next=keynum+n;
+			return n;
+		}
+
+		for (int i=0; i<n; i++)
+		{
+			String dbkey=buildKeyName(keysequence.nextLong());
+			keys.add(dbkey);
+			values.add(buildValues(dbkey));
+		}
+		if (db.batchInsert(table,keys,values) == 0)
+			return n;
+		else
+			return 0;
+	}
+
 	/**
 	 * Do one transaction operation. Because it will be called concurrently from multiple client threads, this 
 	 * function must be thread safe. However, avoid synchronized, or the threads will block waiting for each 
@@ -576,34 +1146,120 @@ public class CoreWorkload extends Workload
 	 */
 	public boolean doTransaction(DB db, Object threadstate)
 	{
-		String op=operationchooser.nextString();
+		doTransaction(db, operationchooser.nextValue());
+		return true;
+	}
 
-		if (op.compareTo("READ")==0)
+	/**
+	 * Do one operation, or a batch of up to max of them if the chosen operation is a read or
+	 * an update and readbatchsize or updatebatchsize is more than 1.
+	 */
+	@Override
+	public int doTransactions(DB db, Object threadstate, int max)
+	{
+		if (readbatchsize<=1 && updatebatchsize<=1)
 		{
-			doTransactionRead(db);
+			return super.doTransactions(db, threadstate, max);
 		}
-		else if (op.compareTo("UPDATE")==0)
+
+		Operation op=operationchooser.nextValue();
+
+		if (op==Operation.READ && readbatchsize>1 && max>1)
 		{
-			doTransactionUpdate(db);
+			return doTransactionReads(db, Math.min(readbatchsize, max));
 		}
-		else if (op.compareTo("DELETE")==0)
+		else if (op==Operation.UPDATE && updatebatchsize>1 && max>1)
 		{
-			doTransactionDelete(db);
+			return doTransactionUpdates(db, Math.min(updatebatchsize, max));
 		}
-		else if (op.compareTo("INSERT")==0)
+		doTransaction(db, op);
+		return 1;
+	}
+
+	private void doTransaction(DB db, Operation op)
+	{
+		switch (op)
 		{
+		case READ:
+			doTransactionRead(db);
+			break;
+		case UPDATE:
+			doTransactionUpdate(db);
+			break;
+		case DELETE:
+			doTransactionDelete(db);
+			break;
+		case INSERT:
 			doTransactionInsert(db);
+			break;
+		case SCAN:
+			doTransactionScan(db);
+			break;
+		default:
+			doTransactionReadModifyWrite(db);
+			break;
 		}
-		else if (op.compareTo("SCAN")==0)
+	}
+
+	/**
+	 * Issue one insert operation without waiting for it to complete. See doInsert().
+	 */
+	public DBFuture doInsertAsync(AsyncDB db, Object threadstate)
+	{
+		final ThreadState state=(ThreadState)threadstate;
+		if (state!=null)
 		{
-			doTransactionScan(db);
+			final long keynum=state.next;
+			if (keynum>=state.end)
+			{
+				return null;
+			}
+			state.loading=true;
+			String dbkey = buildKeyName(keynum);
+			HashMap<String, ByteIterator> values = buildValues(dbkey, state.fieldlengthgenerator);
+			// pending until it completes, so the checkpoint never skips it
+			state.pending.add(keynum);
+			state.next=keynum+1;
+			DBFuture f=db.insertAsync(table,dbkey,values);
+			f.addListener(new DBFuture.Listener()
+			{
+				public void onComplete(DBFuture future, int result)
+				{
+					if (result==0)
+					{
+						state.pending.remove(keynum);
+					}
+				}
+			});
+			return f;
 		}
-		else
+
+		long keynum=keysequence.nextLong();
+		String dbkey = buildKeyName(keynum);
+		HashMap<String, ByteIterator> values = buildValues(dbkey);
+		return db.insertAsync(table,dbkey,values);
+	}
+
+	/**
+	 * Issue one transaction operation without waiting for it to complete. See doTransaction().
+	 */
+	public DBFuture doTransactionAsync(AsyncDB db, Object threadstate)
+	{
+		switch (operationchooser.nextValue())
 		{
-			doTransactionReadModifyWrite(db);
+		case READ:
+			return doTransactionReadAsync(db);
+		case UPDATE:
+			return doTransactionUpdateAsync(db);
+		case DELETE:
+			return doTransactionDeleteAsync(db);
+		case INSERT:
+			return doTransactionInsertAsync(db);
+		case SCAN:
+			return doTransactionScanAsync(db);
+		default:
+			return doTransactionReadModifyWriteAsync(db);
 		}
-		
-		return true;
 	}
 
   /**
@@ -627,45 +1283,73 @@ public class CoreWorkload extends Workload
       //This assumes that null data is never valid
       matchType = DATA_INT_UNEXPECTED_NULL;
     }
-    Measurements.getMeasurements().measure("VERIFY", matchType);
+    _measurements.measure("VERIFY", _measurements.fromNanos(TimeUnit.MILLISECONDS.toNanos(matchType)));
   }
 
-    int nextKeynum() {
-        int keynum;
+    long nextKeynum() {
+        long keynum;
         if(keychooser instanceof ExponentialGenerator) {
             do
                 {
-                    keynum=transactioninsertkeysequence.lastInt() - keychooser.nextInt();
+                    keynum=transactioninsertkeysequence.lastLong() - keychooser.nextLong();
                 }
             while(keynum < 0);
         } else {
             do
                 {
-                    keynum=keychooser.nextInt();
+                    keynum=keychooser.nextLong();
                 }
-            while (keynum > transactioninsertkeysequence.lastInt());
+            while (keynum > transactioninsertkeysequence.lastLong());
         }
         return keynum;
     }
 
+	/**
+	 * The fields a read or scan should fetch, or null for all of them.
+	 */
+	Set<String> fieldsToRead()
+	{
+		if (readallfields)
+		{
+			return null;
+		}
+
+		//read a random field  
+		return singlefieldsets.get(fieldchooser.nextInt());
+	}
+
+	/**
+	 * The values an update or read-modify-write should write to the given record.
+	 */
+	HashMap<String,ByteIterator> valuesToWrite(String keyname)
+	{
+		if (writeallfields)
+		{
+		   //new data for all the fields
+		   return buildValues(keyname);
+		}
+		else
+		{
+		   //update a random field
+		   return buildSingleValue(keyname);
+		}
+	}
+
 	public void doTransactionRead(DB db)
 	{
 		//choose a random key
-		int keynum = nextKeynum();
-		
-		String keyname = buildKeyName(keynum);
+		long keynum = nextKeynum();
 		
-		HashSet<String> fields=null;
+		Set<String> fields=fieldsToRead();
 
-		if (!readallfields)
+		if (bufferrecords)
 		{
-			//read a random field  
-			String fieldname=fieldnames.get(Integer.parseInt(fieldchooser.nextString()));
-
-			fields=new HashSet<String>();
-			fields.add(fieldname);
+			db.read(table,buildKey(keynum),fields,bufferrecord.get());
+			return;
 		}
 
+		String keyname = buildKeyName(keynum);
+
     HashMap<String,ByteIterator> cells =
         new HashMap<String,ByteIterator>();
 		db.read(table,keyname,fields,cells);
@@ -675,36 +1359,41 @@ public class CoreWorkload extends Workload
     }
 	}
 	
+	/**
+	 * Read n random records with a single DB.batchRead().
+	 *
+	 * @return The number of records read.
+	 */
+	public int doTransactionReads(DB db, int n)
+	{
+		List<String> keys=new ArrayList<String>(n);
+		List<HashMap<String,ByteIterator>> results=new ArrayList<HashMap<String,ByteIterator>>(n);
+		for (int i=0; i<n; i++)
+		{
+			keys.add(buildKeyName(nextKeynum()));
+			results.add(new HashMap<String,ByteIterator>());
+		}
+
+		db.batchRead(table,keys,fieldsToRead(),results);
+
+		if (dataintegrity) {
+			for (int i=0; i<n; i++) {
+				verifyRow(keys.get(i), results.get(i));
+			}
+		}
+		return n;
+	}
+
 	public void doTransactionReadModifyWrite(DB db)
 	{
 		//choose a random key
-		int keynum = nextKeynum();
+		long keynum = nextKeynum();
 
 		String keyname = buildKeyName(keynum);
 
-		HashSet<String> fields=null;
-
-		if (!readallfields)
-		{
-			//read a random field  
-			String fieldname=fieldnames.get(Integer.parseInt(fieldchooser.nextString()));
-
-			fields=new HashSet<String>();
-			fields.add(fieldname);
-		}
+		Set<String> fields=fieldsToRead();
 		
-		HashMap<String,ByteIterator> values;
-
-		if (writeallfields)
-		{
-		   //new data for all the fields
-		   values = buildValues(keyname);
-		}
-		else
-		{
-		   //update a random field
-		   values = buildSingleValue(keyname);
-		}
+		HashMap<String,ByteIterator> values=valuesToWrite(keyname);
 
 		//do the transaction
 
@@ -724,30 +1413,21 @@ public class CoreWorkload extends Workload
       verifyRow(keyname, cells);
     }
 
-		_measurements .measure("READ-MODIFY-WRITE", (int)((en-st)/1000));
-		_measurements .measureIntended("READ-MODIFY-WRITE", (int)((en-ist)/1000));
+		_measurements .measure("READ-MODIFY-WRITE", _measurements.fromNanos(en-st));
+		_measurements .measureIntended("READ-MODIFY-WRITE", _measurements.fromNanos(en-ist));
 	}
 	
 	public void doTransactionScan(DB db)
 	{
 		//choose a random key
-		int keynum = nextKeynum();
+		long keynum = nextKeynum();
 
 		String startkeyname = buildKeyName(keynum);
 		
 		//choose a random scan length
 		int len=scanlength.nextInt();
 
-		HashSet<String> fields=null;
-
-		if (!readallfields)
-		{
-			//read a random field  
-			String fieldname=fieldnames.get(Integer.parseInt(fieldchooser.nextString()));
-
-			fields=new HashSet<String>();
-			fields.add(fieldname);
-		}
+		Set<String> fields=fieldsToRead();
 
 		db.scan(table,startkeyname,len,fields,new Vector<HashMap<String,ByteIterator>>());
 	}
@@ -755,30 +1435,45 @@ public class CoreWorkload extends Workload
 	public void doTransactionUpdate(DB db)
 	{
 		//choose a random key
-		int keynum = nextKeynum();
+		long keynum = nextKeynum();
+
+		if (bufferrecords)
+		{
+			db.update(table,buildKey(keynum),writeallfields ? buildRecord(fieldlengthgenerator) : buildSingleRecord());
+			return;
+		}
 
 		String keyname=buildKeyName(keynum);
 
-		HashMap<String,ByteIterator> values;
+		HashMap<String,ByteIterator> values=valuesToWrite(keyname);
 
-		if (writeallfields)
-		{
-		   //new data for all the fields
-		   values = buildValues(keyname);
-		}
-		else
+		db.update(table,keyname,values);
+	}
+
+	/**
+	 * Update n random records with a single DB.batchUpdate().
+	 *
+	 * @return The number of records updated.
+	 */
+	public int doTransactionUpdates(DB db, int n)
+	{
+		List<String> keys=new ArrayList<String>(n);
+		List<HashMap<String,ByteIterator>> values=new ArrayList<HashMap<String,ByteIterator>>(n);
+		for (int i=0; i<n; i++)
 		{
-		   //update a random field
-		   values = buildSingleValue(keyname);
+			String keyname=buildKeyName(nextKeynum());
+			keys.add(keyname);
+			values.add(valuesToWrite(keyname));
 		}
 
-		db.update(table,keyname,values);
+		db.batchUpdate(table,keys,values);
+		return n;
 	}
 
 	public void doTransactionDelete(DB db)
 	{
 		//choose a random key
-		int keynum = nextKeynum();
+		long keynum = nextKeynum();
 		String keyname=buildKeyName(keynum);
 		db.delete(table,keyname);
 	}
@@ -786,15 +1481,149 @@ public class CoreWorkload extends Workload
 	public void doTransactionInsert(DB db)
 	{
 		//choose the next key
-		int keynum=transactioninsertkeysequence.nextInt();
+		long keynum=transactioninsertkeysequence.nextLong();
+
+		try {
+			if (bufferrecords) {
+				db.insert(table,buildKey(keynum),buildRecord(fieldlengthgenerator));
+			} else {
+				String dbkey = buildKeyName(keynum);
+				HashMap<String, ByteIterator> values = buildValues(dbkey);
+				db.insert(table,dbkey,values);
+			}
+		} finally {
+			transactioninsertkeysequence.acknowledge(keynum);
+		}
+	}
+
+	public DBFuture doTransactionReadAsync(AsyncDB db)
+	{
+		//choose a random key
+		long keynum = nextKeynum();
+
+		final String keyname = buildKeyName(keynum);
+
+		Set<String> fields=fieldsToRead();
+
+		final HashMap<String,ByteIterator> cells =
+		    new HashMap<String,ByteIterator>();
+		DBFuture f=db.readAsync(table,keyname,fields,cells);
+
+		if (dataintegrity)
+		{
+			f.addListener(new DBFuture.Listener()
+			{
+				public void onComplete(DBFuture future, int result)
+				{
+					verifyRow(keyname, cells);
+				}
+			});
+		}
+		return f;
+	}
+
+	public DBFuture doTransactionReadModifyWriteAsync(final AsyncDB db)
+	{
+		//choose a random key
+		long keynum = nextKeynum();
+
+		final String keyname = buildKeyName(keynum);
+
+		Set<String> fields=fieldsToRead();
+
+		final HashMap<String,ByteIterator> values=valuesToWrite(keyname);
+
+		final HashMap<String,ByteIterator> cells =
+		    new HashMap<String,ByteIterator>();
+
+		//issue the update once the read has completed, and complete the
+		//transaction once the update has
+		final DBFuture done=new DBFuture();
+		final long ist=_measurements.getIntendedtartTimeNs();
+		final long st = System.nanoTime();
+		db.readAsync(table,keyname,fields,cells).addListener(new DBFuture.Listener()
+		{
+			public void onComplete(DBFuture read, int readresult)
+			{
+				db.updateAsync(table,keyname,values).addListener(new DBFuture.Listener()
+				{
+					public void onComplete(DBFuture update, int updateresult)
+					{
+						long en=System.nanoTime();
+
+						if (dataintegrity) {
+							verifyRow(keyname, cells);
+						}
+
+						_measurements .measure("READ-MODIFY-WRITE", _measurements.fromNanos(en-st));
+						_measurements .measureIntended("READ-MODIFY-WRITE", _measurements.fromNanos(en-ist));
+						done.complete(updateresult);
+					}
+				});
+			}
+		});
+		return done;
+	}
+
+	public DBFuture doTransactionScanAsync(AsyncDB db)
+	{
+		//choose a random key
+		long keynum = nextKeynum();
+
+		String startkeyname = buildKeyName(keynum);
+
+		//choose a random scan length
+		int len=scanlength.nextInt();
+
+		Set<String> fields=fieldsToRead();
+
+		return db.scanAsync(table,startkeyname,len,fields,new Vector<HashMap<String,ByteIterator>>());
+	}
+
+	public DBFuture doTransactionUpdateAsync(AsyncDB db)
+	{
+		//choose a random key
+		long keynum = nextKeynum();
+
+		String keyname=buildKeyName(keynum);
+
+		HashMap<String,ByteIterator> values=valuesToWrite(keyname);
+
+		return db.updateAsync(table,keyname,values);
+	}
+
+	public DBFuture doTransactionDeleteAsync(AsyncDB db)
+	{
+		//choose a random key
+		long keynum = nextKeynum();
+		String keyname=buildKeyName(keynum);
+		return db.deleteAsync(table,keyname);
+	}
+
+	public DBFuture doTransactionInsertAsync(AsyncDB db)
+	{
+		//choose the next key
+		final long keynum=transactioninsertkeysequence.nextLong();
 
+		DBFuture f;
 		try {
 			String dbkey = buildKeyName(keynum);
 
 			HashMap<String, ByteIterator> values = buildValues(dbkey);
-			db.insert(table,dbkey,values);
-		} finally {
+			f=db.insertAsync(table,dbkey,values);
+		} catch (RuntimeException e) {
 			transactioninsertkeysequence.acknowledge(keynum);
+			throw e;
 		}
+
+		//the key only becomes visible to other operations once the insert is done
+		f.addListener(new DBFuture.Listener()
+		{
+			public void onComplete(DBFuture future, int result)
+			{
+				transactioninsertkeysequence.acknowledge(keynum);
+			}
+		});
+		return f;
 	}
 }
@@ -0,0 +1,201 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.workloads;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.yahoo.ycsb.WorkloadException;
+
+/**
+ * Periodically records how far each client thread got in loading its range of keys, so a
+ * load that died partway can be resumed where it left off instead of starting over.
+ *
+ * The checkpoint is a properties file with, for each thread, the first key of its range
+ * that is not known to be inserted. It is only valid for the same insertstart,
+ * insertcount and number of threads. Keys inserted after the last checkpoint are inserted
+ * again on resume. Once the load completes the checkpoint is removed.
+ */
+public class LoadCheckpoint
+{
+	private final File _file;
+	private final long _insertstart;
+	private final long _insertcount;
+
+	/** The checkpoint found when starting, or null. */
+	private final Properties _resumed;
+
+	private final ConcurrentHashMap<Integer,CoreWorkload.ThreadState> _threads=
+			new ConcurrentHashMap<Integer,CoreWorkload.ThreadState>();
+	private int _threadcount;
+	private final Timer _timer;
+
+	/**
+	 * Read the checkpoint file, if there is one, and start writing it every intervalSeconds.
+	 */
+	public LoadCheckpoint(String file, long insertstart, long insertcount, int intervalSeconds) throws WorkloadException
+	{
+		_file=new File(file);
+		_insertstart=insertstart;
+		_insertcount=insertcount;
+
+		if (_file.exists())
+		{
+			_resumed=new Properties();
+			try
+			{
+				InputStream in=new FileInputStream(_file);
+				try
+				{
+					_resumed.load(in);
+				}
+				finally
+				{
+					in.close();
+				}
+			}
+			catch (IOException e)
+			{
+				throw new WorkloadException("Could not read the load checkpoint "+_file, e);
+			}
+			if (Long.parseLong(_resumed.getProperty("insertstart", "-1"))!=insertstart
+					|| Long.parseLong(_resumed.getProperty("insertcount", "-1"))!=insertcount)
+			{
+				throw new WorkloadException("The load checkpoint "+_file+" is for a different insertstart/insertcount");
+			}
+			System.err.println("Resuming the load from "+_file);
+		}
+		else
+		{
+			_resumed=null;
+		}
+
+		_timer=new Timer("loadcheckpoint", true);
+		long interval=intervalSeconds*1000L;
+		_timer.schedule(new TimerTask()
+		{
+			@Override
+			public void run()
+			{
+				write(false);
+			}
+		}, interval, interval);
+	}
+
+	/**
+	 * The first key a thread should insert: the start of its range, or where it got to
+	 * according to the checkpoint.
+	 */
+	long resumeAt(int threadid, int threadcount, long start) throws WorkloadException
+	{
+		if (_resumed==null)
+		{
+			return start;
+		}
+		if (Integer.parseInt(_resumed.getProperty("threadcount"))!=threadcount)
+		{
+			throw new WorkloadException("The load checkpoint "+_file+" was written with "
+					+_resumed.getProperty("threadcount")+" threads");
+		}
+		return Long.parseLong(_resumed.getProperty("thread."+threadid, ""+start));
+	}
+
+	/**
+	 * Track the progress of a client thread.
+	 */
+	void register(CoreWorkload.ThreadState state, int threadcount)
+	{
+		_threadcount=threadcount;
+		_threads.put(state.threadid, state);
+	}
+
+	/**
+	 * Write the checkpoint, if any thread has been loading.
+	 *
+	 * @param last If true and all threads loaded their whole range, remove the checkpoint instead.
+	 */
+	synchronized void write(boolean last)
+	{
+		boolean loading=false;
+		boolean complete=true;
+		Properties props=new Properties();
+		for (CoreWorkload.ThreadState state : _threads.values())
+		{
+			long resume=state.resumeAt();
+			loading|=state.loading;
+			complete&=resume>=state.end;
+			props.setProperty("thread."+state.threadid, ""+resume);
+		}
+		if (!loading)
+		{
+			return;
+		}
+		if (last && complete)
+		{
+			_file.delete();
+			return;
+		}
+		props.setProperty("insertstart", ""+_insertstart);
+		props.setProperty("insertcount", ""+_insertcount);
+		props.setProperty("threadcount", ""+_threadcount);
+
+		// write a new file and rename it, so a crash never leaves a partial checkpoint
+		File tmp=new File(_file.getPath()+".tmp");
+		try
+		{
+			OutputStream out=new FileOutputStream(tmp);
+			try
+			{
+				props.store(out, "YCSB load checkpoint");
+			}
+			finally
+			{
+				out.close();
+			}
+			if (!tmp.renameTo(_file))
+			{
+				_file.delete();
+				if (!tmp.renameTo(_file))
+				{
+					throw new IOException("Could not rename "+tmp+" to "+_file);
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not write the load checkpoint: "+e.getMessage());
+		}
+	}
+
+	/**
+	 * Write the final checkpoint and stop.
+	 */
+	void close()
+	{
+		_timer.cancel();
+		write(true);
+	}
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.util.HashMap;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestBufferRecord {
+  private static final String[] NAMES = {"field0", "field1", "field2"};
+
+  @Test
+  public void testAddAndCopy() {
+    BufferRecord record = new BufferRecord(NAMES, 4);
+    record.add(2, "abc".getBytes(), 0, 3);
+    // more than the initial capacity, so the buffer grows
+    record.add(0, "defghij".getBytes(), 0, 7);
+    assertEquals(2, record.size());
+    assertEquals("field2", record.name(0));
+    assertEquals("field0", record.name(1));
+
+    byte[] value = new byte[7];
+    assertEquals(3, record.copyValue(0, value, 0));
+    assertEquals("abc", new String(value, 0, 3));
+    assertEquals(7, record.copyValue(1, value, 0));
+    assertEquals("defghij", new String(value));
+
+    record.clear();
+    assertEquals(0, record.size());
+  }
+
+  @Test
+  public void testHashMap() {
+    BufferRecord record = new BufferRecord(NAMES, 16);
+    HashMap<String, ByteIterator> values = new HashMap<String, ByteIterator>();
+    values.put("field1", new StringByteIterator("value"));
+    values.put("unknown", new StringByteIterator("ignored"));
+    record.fromHashMap(values);
+    assertEquals(1, record.size());
+    assertEquals(1, record.field(0));
+
+    HashMap<String, ByteIterator> copy = record.toHashMap();
+    assertEquals(1, copy.size());
+    assertEquals("value", copy.get("field1").toString());
+  }
+
+  @Test
+  public void testRandomFill() {
+    BufferRecord record = new BufferRecord(NAMES, 16);
+    int offset = record.add(0, 21);
+    RandomByteIterator.fill(record.buffer(), offset, 21);
+    byte[] value = new byte[21];
+    record.copyValue(0, value, 0);
+    for (byte b : value) {
+      assertTrue(b >= ' ' && b <= '_');
+    }
+  }
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestKeyBuffer {
+  @Test
+  public void testSetLikeConcatenation() {
+    KeyBuffer key = new KeyBuffer();
+    long[] numbers = {0, 7, -42, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE};
+    for (long number : numbers) {
+      key.set("user", number);
+      assertEquals("user" + number, key.toString());
+      assertEquals(("user" + number).length(), key.length());
+    }
+  }
+
+  @Test
+  public void testWrap() {
+    byte[] bytes = "user99".getBytes();
+    KeyBuffer key = new KeyBuffer().set("a longer key that grows the buffer", 1);
+    key.wrap(bytes);
+    assertSame(bytes, key.bytes());
+    assertEquals(6, key.length());
+    assertEquals("user99", key.toString());
+  }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+public class TestRateProfile {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testStepsAndRamps() {
+        RateProfile profile = RateProfile.parse("60s:10k, 2m:10k->50k, 1m:sine(30k,20k,60s), 500ms:1000", 10 * SECOND);
+
+        assertEquals(240 * SECOND + TimeUnit.MILLISECONDS.toNanos(500), profile.getDurationNs());
+        assertEquals(10000.0, profile.rateAt(0), 0.001);
+        assertEquals(10000.0, profile.rateAt(59 * SECOND), 0.001);
+        assertEquals(30000.0, profile.rateAt(120 * SECOND), 0.001);
+        assertEquals(50000.0, profile.rateAt(195 * SECOND), 0.001);
+        assertEquals(1000.0, profile.rateAt(240 * SECOND), 0.001);
+        assertEquals(0.0, profile.rateAt(241 * SECOND), 0.001);
+
+        // one phase for each constant segment, 10s slices of the ramp and the sine
+        assertEquals(1 + 12 + 6 + 1, profile.getPhases().size());
+        assertEquals(60 * SECOND, profile.getPhases().get(1).offsetNs);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMissingDuration() {
+        RateProfile.parse("10k", SECOND);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testSetRateNotPositive() {
+        RateProfile profile = RateProfile.constant(1000);
+        try {
+            profile.setRate(0);
+        } finally {
+            assertEquals(1000.0, profile.rateAt(0), 0.001);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb;
+
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.*;
+
+public class TestValuePool {
+  @Test
+  public void testCompressibility() {
+    ValuePool pool = new ValuePool(1 << 16, 0.5);
+    // the only value as large as the pool is the whole pool
+    byte[] bytes = pool.value(pool.size()).toArray();
+    int zeros = 0;
+    for (byte b : bytes) {
+      if (b == 0) {
+        zeros++;
+      }
+    }
+    // half of each segment is zeros, and about 1 in 256 random bytes
+    assertEquals(0.5 + 0.5 / 256, (double) zeros / bytes.length, 0.01);
+  }
+
+  @Test
+  public void testValues() {
+    ValuePool pool = new ValuePool(100, 0);
+    assertEquals(100, pool.value(100).toArray().length);
+    BufferRecord record = new BufferRecord(new String[] {"field0"}, 16);
+    pool.addValue(record, 0, 40);
+    assertEquals(1, record.size());
+    assertEquals(40, record.length(0));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testValueLargerThanPool() {
+    new ValuePool(100, 0).value(101);
+  }
+}
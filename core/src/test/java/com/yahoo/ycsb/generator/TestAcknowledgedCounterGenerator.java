@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.generator;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+
+public class TestAcknowledgedCounterGenerator {
+    @Test
+    public void testOutOfOrderAcknowledgements() {
+        // a window of 64 values, so the values go around it several times and overflow it
+        AcknowledgedCounterGenerator generator = new AcknowledgedCounterGenerator(1000, 64);
+        long[] values = new long[500];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = generator.nextLong();
+        }
+
+        // acknowledge all but the first, in reverse, so that most are far ahead of the limit
+        for (int i = values.length - 1; i > 0; i--) {
+            generator.acknowledge(values[i]);
+            assertEquals(999, generator.lastLong());
+        }
+        generator.acknowledge(values[0]);
+        assertEquals(1499, generator.lastLong());
+
+        // and once more in order, on the next laps of the window
+        for (int i = 0; i < 200; i++) {
+            generator.acknowledge(generator.nextLong());
+            assertEquals(1500 + i, generator.lastLong());
+        }
+    }
+
+    @Test
+    public void testConcurrentAcknowledgements() throws InterruptedException {
+        AcknowledgedCounterGenerator generator = new AcknowledgedCounterGenerator(1000, 64);
+        // the limit follows the threads around the window, with the batches ahead of it overflowing
+        acknowledgeConcurrently(generator, 8, 20000, 1);
+        assertEquals(1000 + 8 * 20000 - 1, generator.lastLong());
+
+        // held back until the threads are done, so the limit stays below it and the rest overflows
+        long held = generator.nextLong();
+        acknowledgeConcurrently(generator, 8, 20000, 2);
+        assertEquals(held - 1, generator.lastLong());
+        generator.acknowledge(held);
+        assertEquals(held + 8 * 20000, generator.lastLong());
+    }
+
+    /**
+     * Take values on several threads, each acknowledging them in random order in batches of up
+     * to several windows.
+     */
+    private static void acknowledgeConcurrently(final AcknowledgedCounterGenerator generator, int threadcount,
+                                                final int perthread, long seed) throws InterruptedException {
+        Thread[] threads = new Thread[threadcount];
+        for (int t = 0; t < threads.length; t++) {
+            final Random random = new Random(seed * threadcount + t);
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    List<Long> taken = new ArrayList<Long>();
+                    for (int i = 0; i < perthread; i++) {
+                        taken.add(generator.nextLong());
+                        if (random.nextInt(100) == 0 || i == perthread - 1) {
+                            Collections.shuffle(taken, random);
+                            for (long value : taken) {
+                                generator.acknowledge(value);
+                            }
+                            taken.clear();
+                        }
+                    }
+                }
+            };
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+}
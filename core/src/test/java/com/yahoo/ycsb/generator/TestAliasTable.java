@@ -0,0 +1,50 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.generator;
+
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+
+public class TestAliasTable {
+    @Test
+    public void testProportions() {
+        double[] weights = {0.5, 0.0, 0.3, 0.15, 0.05};
+        AliasTable table = new AliasTable(weights);
+        Random random = new Random(42);
+
+        int n = 1000000;
+        int[] counts = new int[weights.length];
+        for (int i = 0; i < n; i++) {
+            counts[table.next(random)]++;
+        }
+
+        assertEquals(0, counts[1]);
+        for (int i = 0; i < weights.length; i++) {
+            assertEquals(weights[i], (double) counts[i] / n, 0.005);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNoPositiveWeight() {
+        new AliasTable(new double[] {0.0, 0.0});
+    }
+}
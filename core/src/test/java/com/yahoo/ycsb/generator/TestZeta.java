@@ -0,0 +1,48 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.generator;
+
+import org.testng.annotations.Test;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+
+public class TestZeta {
+    @Test
+    public void testApproximationMatchesSum() {
+        double[] thetas = {0.5, 0.99, 1.0, 1.5};
+        for (double theta : thetas) {
+            for (long n = 1; n <= 1000000; n *= 10) {
+                double sum = Zeta.sum(0, n, theta);
+                assertEquals(sum, Zeta.approximate(n, theta), sum * 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testPrecomputedZeta() {
+        double zetan = Zeta.approximate(ScrambledZipfianGenerator.ITEM_COUNT, ZipfianGenerator.ZIPFIAN_CONSTANT);
+        assertEquals(ScrambledZipfianGenerator.ZETAN, zetan, 1e-9);
+    }
+
+    @Test
+    public void testIncremental() {
+        double zeta = Zeta.zeta(500000, 0.99);
+        assertEquals(Zeta.zeta(2000000, 0.99), Zeta.zeta(500000, 2000000, 0.99, zeta), 1e-9);
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2010 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.yahoo.ycsb.measurements;
+
+import org.testng.annotations.Test;
+
+import java.util.Properties;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+public class TestMeasurementShards {
+    private static final int THREADS = 4;
+    private static final int OPERATIONS = 10000;
+
+    @Test
+    public void testHdrHistogramShardsAreMerged() throws InterruptedException {
+        Measurements mm = measureConcurrently("hdrhistogram");
+        assertEquals(THREADS * OPERATIONS, mm.getIntervalHistograms().get("READ").getTotalCount());
+        assertEquals(THREADS * OPERATIONS, (int) mm.getReturnCodes().get("READ").get(0));
+    }
+
+    @Test
+    public void testHistogramShardsAreMerged() throws InterruptedException {
+        Measurements mm = measureConcurrently("histogram");
+        assertEquals(THREADS * OPERATIONS, (int) mm.getReturnCodes().get("READ").get(0));
+        assertEquals(THREADS * OPERATIONS, ((OneMeasurementHistogram) mm._opToMesurementMap.get("READ")).operations);
+    }
+
+    @Test
+    public void testTimeSeriesShardsAreMerged() throws InterruptedException {
+        Measurements mm = measureConcurrently("timeseries");
+        mm.getSummary();
+        assertEquals(THREADS * OPERATIONS, ((OneMeasurementTimeSeries) mm._opToMesurementMap.get("READ")).operations);
+    }
+
+    /**
+     * Measure READ on several threads at once, half with handles and half by name.
+     */
+    private static Measurements measureConcurrently(String type) throws InterruptedException {
+        Properties props = new Properties();
+        props.put(Measurements.MEASUREMENT_TYPE_PROPERTY, type);
+        final Measurements mm = new Measurements(props);
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final boolean byName = t % 2 == 0;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    Measurements.Handle handle = mm.getHandle("READ");
+                    for (int i = 0; i < OPERATIONS; i++) {
+                        if (byName) {
+                            mm.measure("READ", i);
+                            mm.reportReturnCode("READ", 0);
+                        } else {
+                            handle.measure(i);
+                            handle.reportReturnCode(0);
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return mm;
+    }
+}
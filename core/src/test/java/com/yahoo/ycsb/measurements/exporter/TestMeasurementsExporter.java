@@ -55,4 +55,94 @@ public class TestMeasurementsExporter {
         assertEquals(json.get(3).get("measurement").asText(), "MaxLatency(us)");
         assertEquals(json.get(11).get("measurement").asText(), "5");
     }
+
+    @Test
+    public void testNanosecondMeasurements() throws IOException {
+        Properties props = new Properties();
+        props.put(Measurements.MEASUREMENT_TYPE_PROPERTY, "histogram");
+        props.put(Measurements.MEASUREMENT_UNIT_PROPERTY, "ns");
+        Measurements mm = new Measurements(props);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JSONArrayMeasurementsExporter export = new JSONArrayMeasurementsExporter(out);
+
+        // the same latencies as above, in nanoseconds, still fall in buckets of a millisecond
+        ZipfianGenerator zipfian = new ZipfianGenerator(5000, 100000);
+        for (int i = 0; i < 1000; i++) {
+            mm.measure("UPDATE", zipfian.nextLong() * 1000);
+        }
+        mm.exportMeasurements(export);
+        export.close();
+
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode json = mapper.readTree(out.toString("UTF-8"));
+        assertEquals(json.get(3).get("measurement").asText(), "MaxLatency(ns)");
+        assertTrue(json.get(3).get("value").asLong() >= 5000000);
+        assertEquals(json.get(11).get("measurement").asText(), "5");
+    }
+
+    @Test
+    public void testPhaseStartedInWarmup() throws Exception {
+        Properties props = new Properties();
+        props.put(Measurements.MEASUREMENT_TYPE_PROPERTY, "histogram");
+        Measurements mm = new Measurements(props);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JSONArrayMeasurementsExporter export = new JSONArrayMeasurementsExporter(out);
+
+        // 5000 operations of warm-up, then 100 in the phase
+        mm.startWarmup();
+        mm.startPhase("P1", 10, 1000);
+        Thread.sleep(300);
+        mm.endWarmup(5000);
+        Thread.sleep(50);
+        mm.endPhase(5100);
+        mm.exportMeasurements(export);
+        export.close();
+
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode json = mapper.readTree(out.toString("UTF-8"));
+        long runtime = -1;
+        double throughput = -1;
+        for (JsonNode node : json) {
+            if (node.get("metric").asText().equals("PHASE@P1")) {
+                if (node.get("measurement").asText().equals("RunTime(ms)")) {
+                    runtime = node.get("value").asLong();
+                } else if (node.get("measurement").asText().equals("Throughput(ops/sec)")) {
+                    throughput = node.get("value").asDouble();
+                }
+            }
+        }
+        assertTrue(runtime >= 50 && runtime < 300);
+        assertEquals(throughput, 1000.0 * 100 / runtime, 0.001);
+    }
+
+    @Test
+    public void testCounters() throws IOException {
+        Properties props = new Properties();
+        props.put(Measurements.MEASUREMENT_TYPE_PROPERTY, "histogram");
+        Measurements mm = new Measurements(props);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JSONArrayMeasurementsExporter export = new JSONArrayMeasurementsExporter(out);
+
+        mm.measure("READ", 100);
+        for (int i = 0; i < 10; i++) {
+            mm.count("READ-HEDGES", 1);
+        }
+        mm.count("READ-HEDGES-WON", 3);
+        assertEquals(mm.getCount("READ-HEDGES"), 10);
+        assertEquals(mm.getCount("UNCOUNTED"), 0);
+        mm.exportMeasurements(export);
+        export.close();
+
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode json = mapper.readTree(out.toString("UTF-8"));
+        int counters = 0;
+        for (JsonNode node : json) {
+            if (node.get("measurement").asText().equals("Count")) {
+                String metric = node.get("metric").asText();
+                assertEquals(node.get("value").asLong(), metric.equals("READ-HEDGES") ? 10 : 3);
+                counters++;
+            }
+        }
+        assertEquals(counters, 2);
+    }
 }
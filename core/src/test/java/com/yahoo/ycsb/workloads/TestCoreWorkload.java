@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2015 Yahoo! Inc. All rights reserved.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.yahoo.ycsb.workloads;
+
+import com.yahoo.ycsb.ByteIterator;
+import com.yahoo.ycsb.Client;
+import com.yahoo.ycsb.DB;
+import com.yahoo.ycsb.StringByteIterator;
+import com.yahoo.ycsb.WorkloadException;
+import com.yahoo.ycsb.measurements.Measurements;
+import com.yahoo.ycsb.measurements.exporter.JSONArrayMeasurementsExporter;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Vector;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+public class TestCoreWorkload {
+
+    /** Keeps the last record inserted. */
+    static class LastInsertDB extends DB {
+        HashMap<String, ByteIterator> values;
+
+        @Override
+        public int read(String table, String key, Set<String> fields, HashMap<String, ByteIterator> result) {
+            return 0;
+        }
+
+        @Override
+        public int scan(String table, String startkey, int recordcount, Set<String> fields, Vector<HashMap<String, ByteIterator>> result) {
+            return 0;
+        }
+
+        @Override
+        public int update(String table, String key, HashMap<String, ByteIterator> values) {
+            return 0;
+        }
+
+        @Override
+        public int insert(String table, String key, HashMap<String, ByteIterator> values) {
+            this.values = values;
+            return 0;
+        }
+
+        @Override
+        public int delete(String table, String key) {
+            return 0;
+        }
+    }
+
+    /**
+     * Properties for the measurements of the process, which the first workload created sets up
+     * for all the tests.
+     */
+    private static Properties measuredProperties() {
+        Properties props = new Properties();
+        props.put(Measurements.MEASUREMENT_TYPE_PROPERTY, "histogram");
+        props.put(Measurements.MEASUREMENT_UNIT_PROPERTY, "ns");
+        Measurements.setProperties(props);
+        return props;
+    }
+
+    @Test
+    public void testVerifyInNanoseconds() throws Exception {
+        Properties props = measuredProperties();
+        props.put(CoreWorkload.DATA_INTEGRITY_PROPERTY, "true");
+        props.put(Client.RECORD_COUNT_PROPERTY, "1");
+        props.put(Client.DO_TRANSACTIONS_PROPERTY, "false");
+        CoreWorkload workload = new CoreWorkload();
+        workload.init(props);
+
+        LastInsertDB db = new LastInsertDB();
+        workload.doInsert(db, workload.initThread(props, 0, 1));
+        String key = workload.buildKeyName(0);
+        HashMap<String, ByteIterator> cells = new HashMap<String, ByteIterator>();
+        for (String field : db.values.keySet()) {
+            cells.put(field, new StringByteIterator(db.values.get(field).toString()));
+        }
+        workload.verifyRow(key, cells);
+        cells.put(cells.keySet().iterator().next(), new StringByteIterator("deviates"));
+        workload.verifyRow(key, cells);
+        workload.verifyRow(key, new HashMap<String, ByteIterator>());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JSONArrayMeasurementsExporter export = new JSONArrayMeasurementsExporter(out);
+        Measurements.getMeasurements().exportMeasurements(export);
+        export.close();
+
+        // a match, a deviation and a null each in their own bucket
+        int[] buckets = new int[3];
+        JsonNode json = new ObjectMapper().readTree(out.toString("UTF-8"));
+        for (JsonNode node : json) {
+            if (node.get("metric").asText().equals("VERIFY")) {
+                String measurement = node.get("measurement").asText();
+                for (int i = 0; i < buckets.length; i++) {
+                    if (measurement.equals(Integer.toString(i))) {
+                        buckets[i] = node.get("value").asInt();
+                    }
+                }
+            }
+        }
+        assertEquals(1, buckets[0]);
+        assertEquals(1, buckets[1]);
+        assertEquals(1, buckets[2]);
+    }
+
+    @Test(expectedExceptions = WorkloadException.class)
+    public void testBufferRecordsNotBatched() throws Exception {
+        Properties props = measuredProperties();
+        props.put(CoreWorkload.RECORD_FORMAT_PROPERTY, "buffer");
+        props.put(CoreWorkload.INSERT_BATCH_SIZE_PROPERTY, "10");
+        new CoreWorkload().init(props);
+    }
+}
@@ -0,0 +1,378 @@
+package com.yahoo.ycsb.db;
+
+import com.yahoo.ycsb.DBFuture;
+import com.yahoo.ycsb.measurements.Measurements;
+
+import org.msgpack.MessagePack;
+import org.msgpack.packer.Packer;
+import org.msgpack.unpacker.Unpacker;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A connection to a DottedDB node that pipelines requests: any number of requests can be
+ * outstanding on it at once, and a reader thread completes each one when its response arrives.
+ * Throughput is then bound by the bandwidth of the connection rather than by its round trips.
+ *
+ * Responses are read with a streaming msgpack Unpacker, so they can be of any size and span
+ * any number of reads. Each request gets an id, which its response is matched by. A node
+ * answers the requests of a connection in order, so by default the n-th response is the one to
+ * request n. With ids on the wire (see {@link DottedDB#DOTTED_REQUEST_IDS}) every request is
+ * sent as [id, message] and answered as [id, response], and responses may come in any order.
+ * A response may also be streamed as a series of messages, such as the batches of a scan, which
+ * are read as they come rather than buffered until the last one.
+ *
+ * The connections to a node are pooled by the process, see {@link DottedPool}.
+ *
+ * A reader thread reads the responses, and a completer thread completes their futures in the
+ * order they came. The listeners of the futures, which may send requests of their own, such as
+ * the update of an asynchronous read-modify-write, thus never hold up the reader: a send that
+ * blocks until the node reads more of its requests can not keep the responses of the node,
+ * which it may be waiting to write, from being read.
+ *
+ * The latency of the requests is measured per node, as NODE-host:port, from when a request is
+ * sent to when its response has been read, so that nodes that are slower to coordinate stand out.
+ */
+public class DottedConnection {
+
+    /**
+     * A request, completed with the return code read from its response.
+     */
+    static abstract class Request {
+        final DBFuture future = new DBFuture();
+        long sent;
+
+        // the return code the request is completed with, set by the reader thread
+        int returnCode;
+
+        // where to send the request again if it is lost with its connection; null to fail it
+        Retry retry;
+
+        // Write the message of the request.
+        abstract void write(DottedConnection c, Packer pk) throws IOException;
+
+        // Read the response to the request, and return the return code, or MORE if it is only a
+        // part of the response and the next part follows on the connection later.
+        abstract int read(Unpacker u) throws IOException;
+    }
+
+    /**
+     * Returned by {@link Request#read} for a part of a response that is streamed in parts, each
+     * a message of its own, tagged with the id of the request like any response.
+     */
+    static final int MORE = Integer.MIN_VALUE;
+
+    /**
+     * A way to send again a request that was lost with its connection before any of its
+     * response was read.
+     */
+    interface Retry {
+        // Send the request again, or return false to fail it.
+        boolean resend(Request r);
+    }
+
+    /**
+     * Complete a request that was lost with its connection with ERROR, unless it is sent again.
+     * Never called while holding the lock of a connection, as it may send on another one.
+     */
+    static void lost(Request r) {
+        if (r.retry == null || !r.retry.resend(r)) {
+            r.future.complete(DottedDB.ERROR);
+        }
+    }
+
+    private final String name;
+    private final DottedPool pool;
+    private final MessagePack codec;
+    private final boolean tagged;
+    private final Socket socket;
+    private final OutputStream out;
+    private final Unpacker unpacker;
+    private final Measurements measurements;
+
+    // only used by the reader thread, like the handles of the measurements of a client thread
+    private final Measurements.Handle latency;
+
+    // the requests sent and not answered yet, by id
+    private final ConcurrentHashMap<Long, Request> pending = new ConcurrentHashMap<Long, Request>();
+
+    // guarded by this, which senders hold while a request is written
+    private final ByteArrayOutputStream frame = new ByteArrayOutputStream(DottedDB.BUFFER_SIZE);
+    private Packer packer;
+    private byte[] scratch = new byte[DottedDB.BUFFER_SIZE_OK];
+    private long nextId = 0;
+
+    // set while holding this, and read without it by the pools choosing a connection
+    private volatile boolean closed = false;
+
+    // the id of the next response when they come in order; only used by the reader thread
+    private long nextResponse = 0;
+
+    // the requests with a response being streamed in parts, by id; only used by the reader thread
+    private final Map<Long, Request> streaming = new HashMap<Long, Request>();
+
+    // the requests answered by the reader thread, for the completer thread to complete, then END
+    private final LinkedBlockingQueue<Request> answered = new LinkedBlockingQueue<Request>();
+    private static final Request END = new Request() {
+        @Override
+        void write(DottedConnection c, Packer pk) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        int read(Unpacker u) {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    /**
+     * Connect to a node, giving up after the timeout (ms).
+     */
+    DottedConnection(String host, int port, boolean tagged, DottedPool pool, int timeout) throws IOException {
+        this.name = host + ":" + port;
+        this.pool = pool;
+        this.codec = createCodec();
+        this.tagged = tagged;
+        this.socket = new Socket();
+        try {
+            this.socket.connect(new InetSocketAddress(host, port), timeout);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        this.socket.setTcpNoDelay(true);
+        this.out = socket.getOutputStream();
+        this.unpacker = codec.createUnpacker(new BufferedInputStream(socket.getInputStream(), DottedDB.BUFFER_SIZE));
+        this.packer = codec.createPacker(frame);
+        this.measurements = Measurements.getMeasurements();
+        this.latency = measurements.getHandle("NODE-" + name);
+        Thread reader = new Thread("DottedDB reader " + name) {
+            @Override
+            public void run() {
+                readResponses();
+            }
+        };
+        reader.setDaemon(true);
+        reader.start();
+        Thread completer = new Thread("DottedDB completer " + name) {
+            @Override
+            public void run() {
+                completeResponses();
+            }
+        };
+        completer.setDaemon(true);
+        completer.start();
+    }
+
+    /**
+     * A codec with the template of the only message that is not encoded by hand, OPTIONS,
+     * registered up front rather than built when first used.
+     */
+    static MessagePack createCodec() {
+        MessagePack codec = new MessagePack();
+        codec.register(DottedDB.OPTIONS.class);
+        return codec;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Socket getSocket() {
+        return socket;
+    }
+
+    /**
+     * Send a request without waiting for its response.
+     *
+     * @return The future of the request, completed with ERROR if it could not be sent and was
+     *         not sent again elsewhere.
+     */
+    DBFuture send(Request r) {
+        boolean lost = false;
+        boolean broken = false;
+        synchronized (this) {
+            if (closed) {
+                lost = true;
+            } else {
+                long id = nextId;
+                r.sent = System.nanoTime();
+                try {
+                    frame.reset();
+                    if (tagged) {
+                        packer.writeArrayBegin(2);
+                        packer.write(id);
+                    }
+                    r.write(this, packer);
+                    if (tagged) {
+                        packer.writeArrayEnd();
+                    }
+                    packer.flush();
+                } catch (Exception e) {
+                    // nothing was sent, but the packer may be left in the middle of a message
+                    e.printStackTrace();
+                    packer = codec.createPacker(frame);
+                    r.future.complete(DottedDB.ERROR);
+                    return r.future;
+                }
+                // registered before it is sent, as the response may be read before the write returns
+                nextId++;
+                pending.put(id, r);
+                try {
+                    frame.writeTo(out);
+                } catch (IOException e) {
+                    System.err.println("Could not send to DottedDB node " + name + ": " + e);
+                    broken = true;
+                }
+            }
+        }
+        // outside the lock, as the requests lost may be sent again on another connection
+        if (lost) {
+            lost(r);
+        } else if (broken) {
+            close();
+        }
+        return r.future;
+    }
+
+    /**
+     * A scratch array of at least len bytes, only to be used while writing a request.
+     */
+    byte[] scratch(int len) {
+        if (scratch.length < len) {
+            scratch = new byte[Math.max(len, scratch.length * 2)];
+        }
+        return scratch;
+    }
+
+    /**
+     * The number of requests sent on the connection and not answered yet.
+     */
+    public int outstanding() {
+        return pending.size();
+    }
+
+    /**
+     * Close the connection. The requests not answered yet are lost, see {@link #lost}, and the
+     * pool of the connection is told so that it can make a new one.
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+        // nothing is added once closed is set
+        Iterator<Request> it = pending.values().iterator();
+        while (it.hasNext()) {
+            Request r = it.next();
+            it.remove();
+            lost(r);
+        }
+        if (pool != null) {
+            pool.lost();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private void readResponses() {
+        try {
+            while (true) {
+                // wait for the next response to start before looking up its request
+                unpacker.getNextType();
+                long id;
+                if (tagged) {
+                    unpacker.readArrayBegin();
+                    id = unpacker.readLong();
+                } else {
+                    id = nextResponse;
+                }
+                // a request is no longer pending, so no longer sent again if the connection is
+                // lost, once a part of its response has been read
+                Request r = streaming.get(id);
+                if (r == null) {
+                    r = pending.remove(id);
+                }
+                if (r == null) {
+                    throw new IOException("Response to unknown request " + id);
+                }
+                int result;
+                try {
+                    result = r.read(unpacker);
+                } catch (Exception e) {
+                    // the rest of the stream cannot be made sense of
+                    r.returnCode = DottedDB.ERROR;
+                    answered.add(r);
+                    throw e;
+                }
+                if (tagged) {
+                    unpacker.readArrayEnd();
+                }
+                if (result == MORE) {
+                    streaming.put(id, r);
+                    continue;
+                }
+                streaming.remove(id);
+                if (!tagged) {
+                    nextResponse++;
+                }
+                latency.measure(measurements.fromNanos(System.nanoTime() - r.sent));
+                latency.reportReturnCode(result);
+                r.returnCode = result;
+                answered.add(r);
+            }
+        } catch (Exception e) {
+            if (!isClosed()) {
+                System.err.println("Lost the connection to DottedDB node " + name + ": " + e);
+            }
+        } finally {
+            // fail the sends blocked on the socket now, the connection is closed by the completer
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // closing anyway
+            }
+            // the requests with only a part of their response read cannot be sent again
+            for (Request r : streaming.values()) {
+                r.returnCode = DottedDB.ERROR;
+                answered.add(r);
+            }
+            answered.add(END);
+        }
+    }
+
+    private void completeResponses() {
+        try {
+            while (true) {
+                Request r = answered.take();
+                if (r == END) {
+                    break;
+                }
+                r.future.complete(r.returnCode);
+            }
+        } catch (InterruptedException e) {
+            // not interrupted, as a daemon thread
+        }
+        // after the last response, so that the requests it answered are not lost
+        close();
+    }
+}
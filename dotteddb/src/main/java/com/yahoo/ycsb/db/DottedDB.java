@@ -1,26 +1,41 @@
 package com.yahoo.ycsb.db;
 
+import com.yahoo.ycsb.BufferRecord;
 import com.yahoo.ycsb.ByteIterator;
+import com.yahoo.ycsb.KeyBuffer;
 import com.yahoo.ycsb.ByteArrayByteIterator;
 import com.yahoo.ycsb.StringByteIterator;
-import com.yahoo.ycsb.DB;
+import com.yahoo.ycsb.AsyncDB;
 import com.yahoo.ycsb.DBException;
+import com.yahoo.ycsb.DBFuture;
+import com.yahoo.ycsb.measurements.Measurements;
 
-import org.msgpack.MessagePack;
 import org.msgpack.annotation.Message;
-import org.msgpack.template.Template;
-import static org.msgpack.template.Templates.tList;
-import static org.msgpack.template.Templates.tMap;
-import static org.msgpack.template.Templates.TString;
-import static org.msgpack.template.Templates.*;
+import org.msgpack.packer.Packer;
+import org.msgpack.unpacker.Unpacker;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.io.*;
 import java.net.*;
 import java.util.*;
 import java.util.Properties;
-
-public class DottedDB extends DB {
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A client for DottedDB. Requests are pipelined on connections to the nodes (see
+ * {@link DottedConnection}), so with the "async" client many operations of a thread can be
+ * outstanding at once. The connections to each node are a pool shared by all the threads (see
+ * {@link DottedPool}). Each key is sent to a node with a replica of it, found on a copy of the
+ * ring of the cluster (see {@link DottedRing}), and the latency of each node is measured as
+ * NODE-host:port. Scans are coordinated by any node, which streams the records back in batches.
+ * Reads may be hedged to cut their tail latency (see {@link DottedHedging}).
+ */
+public class DottedDB extends AsyncDB {
 
     public static final int OK = 0;
     public static final int ERROR = -1;
@@ -28,6 +43,8 @@ public class DottedDB extends DB {
     public static final int BUFFER_SIZE = 1024 * 10;
     public static final int BUFFER_SIZE_OK = 128;
 
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
     public static final String DOTTED_NODE_FAILURE_RATE                 = "dotted_node_failure_rate";
     public static final String DOTTED_NODE_FAILURE_RATE_DEFAULT         = "0";
     public static final String DOTTED_REPLICATION_FAILURE_RATE          = "dotted_replication_failure_rate";
@@ -38,15 +55,85 @@ public class DottedDB extends DB {
     public static final String DOTTED_STRIP_INTERVAL_DEFAULT            = "2000";
     public static final String DOTTED_CLUSTER_HOSTS                     = "dotted_cluster_hosts";
     public static final String DOTTED_CLUSTER_HOST_DEFAULT              = "127.0.0.1:10017";
-
-    private ArrayList<Server> servers = null;
+    // whether requests and responses carry their id, so the nodes may answer out of order
+    public static final String DOTTED_REQUEST_IDS                       = "dotted_request_ids";
+    public static final String DOTTED_REQUEST_IDS_DEFAULT               = "false";
+    // "token" sends each key to a replica of it, "random" to any node, which coordinates it
+    public static final String DOTTED_ROUTING                           = "dotted_routing";
+    public static final String DOTTED_ROUTING_DEFAULT                   = "token";
+    // the number of partitions of the ring, a power of two
+    public static final String DOTTED_RING_SIZE                         = "dotted_ring_size";
+    public static final String DOTTED_RING_SIZE_DEFAULT                 = "64";
+    // the owner of each partition, as host:port; by default the hosts own the partitions in turn
+    public static final String DOTTED_RING_OWNERS                       = "dotted_ring_owners";
+    public static final String DOTTED_RING_OWNERS_DEFAULT               = "";
+    public static final String DOTTED_REPLICATION_FACTOR                = "dotted_replication_factor";
+    public static final String DOTTED_REPLICATION_FACTOR_DEFAULT        = "3";
+    // how often (ms) to ask a node for the ring with a RING message; 0 keeps the configured ring
+    public static final String DOTTED_RING_REFRESH                      = "dotted_ring_refresh";
+    public static final String DOTTED_RING_REFRESH_DEFAULT              = "0";
+    // the number of connections of the process to each node, shared by all the threads
+    public static final String DOTTED_POOL_SIZE                         = "dotted_pool_size";
+    public static final String DOTTED_POOL_SIZE_DEFAULT                 = "4";
+    // how often (ms) the connections that were closed, such as by a killed node, are made again
+    public static final String DOTTED_POOL_CHECK_INTERVAL               = "dotted_pool_check_interval";
+    public static final String DOTTED_POOL_CHECK_INTERVAL_DEFAULT       = "1000";
+    // how long (ms) to wait to reconnect to a node after losing a connection, doubled while it is down
+    public static final String DOTTED_RECONNECT_BACKOFF                 = "dotted_reconnect_backoff";
+    public static final String DOTTED_RECONNECT_BACKOFF_DEFAULT         = "50";
+    // how long (ms) to wait for a connection to a node to be made before taking the node as down
+    public static final String DOTTED_CONNECT_TIMEOUT                   = "dotted_connect_timeout";
+    public static final String DOTTED_CONNECT_TIMEOUT_DEFAULT           = "1000";
+    // how many times an operation lost with its connection is sent again, to another replica if one is up;
+    // off by default, as a PUT or UPDATE that may be sent again must keep a copy of its values
+    public static final String DOTTED_RETRIES                           = "dotted_retries";
+    public static final String DOTTED_RETRIES_DEFAULT                   = "0";
+    // how long (ms) to wait before the second retry of an operation, doubled for each one after it
+    public static final String DOTTED_RETRY_BACKOFF                     = "dotted_retry_backoff";
+    public static final String DOTTED_RETRY_BACKOFF_DEFAULT             = "10";
+
+    // whether a read that is slow to complete is sent to another replica too, the first response being used
+    public static final String DOTTED_HEDGE                             = "dotted_hedge";
+    public static final String DOTTED_HEDGE_DEFAULT                     = "false";
+    // the percentile of the latency of the reads to hedge a read after, see DottedHedging
+    public static final String DOTTED_HEDGE_PERCENTILE                  = "dotted_hedge_percentile";
+    public static final String DOTTED_HEDGE_PERCENTILE_DEFAULT          = "95";
+    // the shortest delay (us) to hedge a read after
+    public static final String DOTTED_HEDGE_MIN_DELAY                   = "dotted_hedge_min_delay";
+    public static final String DOTTED_HEDGE_MIN_DELAY_DEFAULT           = "100";
+
+    // sends the operations that are retried after a backoff
+    private static final Timer RETRIER = new Timer("DottedDB retries", true);
+
+    private ArrayList<DottedPool> servers = null;
     private Random randomGenerator;
 
-    public static class Server {
-        // public fields are serialized.
-        public Socket socket = null;
-        public DataOutputStream out = null;
-        public DataInputStream in = null;
+    // the pools this instance uses, by host:port; guarded by this when connecting
+    private final Map<String,DottedPool> connections = new ConcurrentHashMap<String,DottedPool>();
+    private boolean tagged;
+    private int poolSize;
+    private long poolCheckInterval;
+    private long reconnectBackoff;
+    private int connectTimeout;
+    private int retries;
+    private long retryBackoff;
+    private Measurements measurements;
+    private DottedHedging hedging = null;
+    private int replication;
+    private volatile Routes routes = null;
+    private Timer refresher = null;
+
+    /**
+     * A ring, with the connections to the replicas of each of its partitions.
+     */
+    private static class Routes {
+        final DottedRing ring;
+        final DottedPool[][] replicas;
+
+        Routes(DottedRing ring, DottedPool[][] replicas) {
+            this.ring = ring;
+            this.replicas = replicas;
+        }
     }
 
     @Message // Annotation
@@ -59,53 +146,6 @@ public class DottedDB extends DB {
         public int node_failure_rate;
     }
 
-    @Message // Annotation
-    public static class GET {
-        // public fields are serialized.
-        public String code = "GET";
-        public String table;
-        public String key;
-    }
-
-    @Message // Annotation
-    public static class PUT {
-        // public fields are serialized.
-        public String code = "PUT";
-        public String table;
-        public String key;
-        public HashMap<String,byte[]> value;
-    }
-
-    @Message // Annotation
-    public static class UPDATE {
-        // public fields are serialized.
-        public String code = "UPDATE";
-        public String table;
-        public String key;
-        public HashMap<String,byte[]> value;
-    }
-
-    @Message // Annotation
-    public static class DELETE {
-        // public fields are serialized.
-        public String code = "DELETE";
-        public String table;
-        public String key;
-    }
-
-    @Message // Annotation
-    public static class GET_RESPONSE {
-        // public fields are serialized.
-        public String status;
-        public HashMap<String,byte[]> value;
-    }
-
-    @Message // Annotation
-    public static class UPD_RESPONSE {
-        // public fields are serialized.
-        public String status;
-    }
-
     @Override
     public void init() throws DBException {
         try {
@@ -114,7 +154,21 @@ public class DottedDB extends DB {
             // get the list of ip:port machines
             String cluster_hosts = props.getProperty(DOTTED_CLUSTER_HOSTS, DOTTED_CLUSTER_HOST_DEFAULT);
             String[] hosts = cluster_hosts.split(",");
-            setupConnection(props, hosts);
+            this.tagged = Boolean.parseBoolean(props.getProperty(DOTTED_REQUEST_IDS, DOTTED_REQUEST_IDS_DEFAULT));
+            this.poolSize = Integer.parseInt(props.getProperty(DOTTED_POOL_SIZE, DOTTED_POOL_SIZE_DEFAULT).trim());
+            this.poolCheckInterval = Long.parseLong(props.getProperty(DOTTED_POOL_CHECK_INTERVAL, DOTTED_POOL_CHECK_INTERVAL_DEFAULT).trim());
+            this.reconnectBackoff = Long.parseLong(props.getProperty(DOTTED_RECONNECT_BACKOFF, DOTTED_RECONNECT_BACKOFF_DEFAULT).trim());
+            this.connectTimeout = Integer.parseInt(props.getProperty(DOTTED_CONNECT_TIMEOUT, DOTTED_CONNECT_TIMEOUT_DEFAULT).trim());
+            this.retries = Integer.parseInt(props.getProperty(DOTTED_RETRIES, DOTTED_RETRIES_DEFAULT).trim());
+            this.retryBackoff = Long.parseLong(props.getProperty(DOTTED_RETRY_BACKOFF, DOTTED_RETRY_BACKOFF_DEFAULT).trim());
+            this.measurements = Measurements.getMeasurements();
+            if(Boolean.parseBoolean(props.getProperty(DOTTED_HEDGE, DOTTED_HEDGE_DEFAULT))) {
+                double percentile = Double.parseDouble(props.getProperty(DOTTED_HEDGE_PERCENTILE, DOTTED_HEDGE_PERCENTILE_DEFAULT).trim());
+                long minDelay = Long.parseLong(props.getProperty(DOTTED_HEDGE_MIN_DELAY, DOTTED_HEDGE_MIN_DELAY_DEFAULT).trim());
+                this.hedging = DottedHedging.get(percentile, TimeUnit.MICROSECONDS.toNanos(minDelay));
+            }
+            setupConnection(hosts);
+            setupRing(props, hosts);
             // get the (replication and node) failure rates, sync interval and strip interval
             String sync      = props.getProperty(DOTTED_SYNC_INTERVAL, DOTTED_SYNC_INTERVAL_DEFAULT);
             String strip     = props.getProperty(DOTTED_STRIP_INTERVAL, DOTTED_STRIP_INTERVAL_DEFAULT);
@@ -129,173 +183,527 @@ public class DottedDB extends DB {
 
     //Read a single record
     @Override
-    public int read(String table, String key, Set<String> fields, HashMap<String,ByteIterator> result) {
-        int result_db = ERROR;
+    public DBFuture readAsync(String table, String key, Set<String> fields, HashMap<String,ByteIterator> result) {
         // System.out.println("GET key:"+table+key);
-        try {
-            Server s = getServer();
-
-            GET get = new GET();
-            get.table = table;
-            get.key = key;
-
-            MessagePack msgpack = new MessagePack();
-            byte[] raw = msgpack.write(get);
-            s.out.write(raw);
-
-            byte[] res = new byte[BUFFER_SIZE];
-            int len = s.in.read(res);
-            if(len == -1) return ERROR;
-            byte[] res2 = Arrays.copyOf(res, len);
-            GET_RESPONSE res3 = msgpack.read(res2, GET_RESPONSE.class);
-            // System.out.println("1: Received : st: " + res3.status + " val:" + res3.value.toString());
-            if(res3.status.equals("OK")) {
-                deserialize(res3.value, result);
-                // System.out.println("2: Received : st: " + res3.status + " val:" + result.toString());
-                result_db = OK;
-            }
-        } catch(Exception e) {
-            e.printStackTrace();
-            return ERROR;
+        DottedPool[] replicas = getReplicas(table, key);
+        if(hedging == null) {
+            return send("READ", replicas, new MapRead(table, key, result, null));
         }
-        return result_db;
+        HedgedRead h = new HedgedRead();
+        return hedge(replicas, h, new MapRead(table, key, result, h), new MapRead(table, key, result, h));
     }
 
     //Insert a single record
     @Override
-    public int insert(String table, String key, HashMap<String,ByteIterator> values) {
-        int result_db = ERROR;
-        try {
-            Server s = getServer();
-
-            PUT put = new PUT();
-            put.table = table;
-            put.key = key;
-            put.value = serialize(values);
-
-            MessagePack msgpack = new MessagePack();
-            byte[] raw = msgpack.write(put);
-            s.out.write(raw);
-
-            byte[] res = new byte[BUFFER_SIZE_OK];
-            int len = s.in.read(res);
-            if(len == -1) return ERROR;
-            byte[] res2 = Arrays.copyOf(res, len);
-            UPD_RESPONSE res3 = msgpack.read(res2, UPD_RESPONSE.class);
-            if(res3.status.equals("OK")) {
-                result_db = OK;
-            }
-        } catch(Exception e) {
-            e.printStackTrace();
-            return ERROR;
-        }
-        return result_db;
+    public DBFuture insertAsync(String table, String key, HashMap<String,ByteIterator> values) {
+        return send("INSERT", getReplicas(table, key), new WriteRequest("PUT", table, key, values));
     }
 
     //Update a single record
     @Override
-    public int update(String table, String key, HashMap<String,ByteIterator> values) {
-        int result_db = ERROR;
-        try {
-            Server s = getServer();
-
-            UPDATE put = new UPDATE();
-            put.table = table;
-            put.key = key;
-            put.value = serialize(values);
-
-            MessagePack msgpack = new MessagePack();
-            byte[] raw = msgpack.write(put);
-            s.out.write(raw);
-
-            byte[] res = new byte[BUFFER_SIZE_OK];
-            int len = s.in.read(res);
-            if(len == -1) return ERROR;
-            byte[] res2 = Arrays.copyOf(res, len);
-            UPD_RESPONSE res3 = msgpack.read(res2, UPD_RESPONSE.class);
-            if(res3.status.equals("OK")) {
-                result_db = OK;
-            }
-        } catch(Exception e) {
-            e.printStackTrace();
-            return ERROR;
-        }
-        return result_db;
+    public DBFuture updateAsync(String table, String key, HashMap<String,ByteIterator> values) {
+        return send("UPDATE", getReplicas(table, key), new WriteRequest("UPDATE", table, key, values));
     }
 
     //Delete a single record
     @Override
-    public int delete(String table, String key) {
-        int result_db = ERROR;
-        try {
-            Server s = getServer();
-
-            DELETE put = new DELETE();
-            put.table = table;
-            put.key = key;
-
-            MessagePack msgpack = new MessagePack();
-            byte[] raw = msgpack.write(put);
-            s.out.write(raw);
-
-            byte[] res = new byte[BUFFER_SIZE_OK];
-            int len = s.in.read(res);
-            if(len == -1) return ERROR;
-            byte[] res2 = Arrays.copyOf(res, len);
-            UPD_RESPONSE res3 = msgpack.read(res2, UPD_RESPONSE.class);
-            if(res3.status.equals("OK")) {
-                result_db = OK;
+    public DBFuture deleteAsync(final String table, final String key) {
+        return send("DELETE", getReplicas(table, key), new StatusRequest() {
+            @Override
+            void write(DottedConnection c, Packer pk) throws IOException {
+                // [DELETE, table, key]
+                pk.writeArrayBegin(3);
+                pk.write("DELETE");
+                pk.write(table);
+                pk.write(key);
+                pk.writeArrayEnd();
             }
-        } catch(Exception e) {
-            e.printStackTrace();
-            return ERROR;
+        });
+    }
+
+    //Read a single record into a BufferRecord
+    @Override
+    public int read(String table, String key, Set<String> fields, BufferRecord result) {
+        byte[] k = key.getBytes(UTF8);
+        return read(table, k, k.length, result);
+    }
+
+    //Read a single record into a BufferRecord, with a binary key
+    @Override
+    public int read(String table, KeyBuffer key, Set<String> fields, BufferRecord result) {
+        return read(table, key.bytes(), key.length(), result);
+    }
+
+    private int read(String table, byte[] key, int keylen, BufferRecord result) {
+        result.clear();
+        DottedPool[] replicas = getReplicas(table, key, keylen);
+        if(hedging == null) {
+            return send("READ", replicas, new BufferRead(table, key, keylen, result, null)).join();
         }
-        return result_db;
+        HedgedRead h = new HedgedRead();
+        return hedge(replicas, h, new BufferRead(table, key, keylen, result, h), new BufferRead(table, key, keylen, result, h)).join();
+    }
+
+    //Insert a single record, straight from the buffer of a BufferRecord
+    @Override
+    public int insert(String table, String key, BufferRecord values) {
+        byte[] k = key.getBytes(UTF8);
+        return write("PUT", table, k, k.length, values);
     }
 
-    //Perform a range scan
+    //Insert a single record, with a binary key, straight from the buffer of a BufferRecord
     @Override
-    public int scan(String table, String startkey, int recordcount, Set<String> fields, Vector<HashMap<String,ByteIterator>> result) {
-        return OK;
+    public int insert(String table, KeyBuffer key, BufferRecord values) {
+        return write("PUT", table, key.bytes(), key.length(), values);
+    }
+
+    //Update a single record, straight from the buffer of a BufferRecord
+    @Override
+    public int update(String table, String key, BufferRecord values) {
+        byte[] k = key.getBytes(UTF8);
+        return write("UPDATE", table, k, k.length, values);
+    }
+
+    //Update a single record, with a binary key, straight from the buffer of a BufferRecord
+    @Override
+    public int update(String table, KeyBuffer key, BufferRecord values) {
+        return write("UPDATE", table, key.bytes(), key.length(), values);
+    }
+
+    //Perform a range scan, with the records streamed back in batches
+    @Override
+    public DBFuture scanAsync(final String table, final String startkey, final int recordcount, final Set<String> fields, final Vector<HashMap<String,ByteIterator>> result) {
+        // a scan is coordinated by any node, as its keys are spread over the whole ring
+        return send("SCAN", null, new DottedConnection.Request() {
+            private boolean ok = true;
+
+            @Override
+            void write(DottedConnection c, Packer pk) throws IOException {
+                // [SCAN, table, start key, record count, the fields or nil for all of them]
+                pk.writeArrayBegin(5);
+                pk.write("SCAN");
+                pk.write(table);
+                pk.write(startkey);
+                pk.write(recordcount);
+                if(fields == null) {
+                    pk.writeNil();
+                } else {
+                    pk.writeArrayBegin(fields.size());
+                    for(String field : fields) {
+                        pk.write(field);
+                    }
+                    pk.writeArrayEnd();
+                }
+                pk.writeArrayEnd();
+            }
+
+            @Override
+            int read(Unpacker u) throws IOException {
+                // a batch, [status, [[key, {field: value}], ...], whether more batches follow],
+                // each record of which is added to the result as soon as it is read
+                u.readArrayBegin();
+                ok &= u.readString().equals("OK");
+                int n = u.readArrayBegin();
+                for(int i = 0; i < n; i++) {
+                    u.readArrayBegin();
+                    u.skip();
+                    int m = u.readMapBegin();
+                    HashMap<String,ByteIterator> record = new HashMap<String,ByteIterator>(m * 2);
+                    for(int j = 0; j < m; j++) {
+                        String field = u.readString();
+                        record.put(field, new ByteArrayByteIterator(u.readByteArray()));
+                    }
+                    u.readMapEnd();
+                    u.readArrayEnd();
+                    if(ok) {
+                        result.add(record);
+                    }
+                }
+                u.readArrayEnd();
+                boolean more = u.readBoolean();
+                u.readArrayEnd();
+                if(more) {
+                    return DottedConnection.MORE;
+                }
+                return ok ? OK : ERROR;
+            }
+        });
     }
 
     @Override
     public void cleanup() throws DBException {
+        if(refresher != null) {
+            refresher.cancel();
+        }
         // turn off killing nodes
         setDBOptions(DOTTED_SYNC_INTERVAL_DEFAULT, DOTTED_STRIP_INTERVAL_DEFAULT, DOTTED_REPLICATION_FAILURE_RATE_DEFAULT, "0");
-        try {
-            for(Server s : this.servers) {
-                s.out.close();
-                s.in.close();
-                s.socket.close();
+        for(DottedPool s : this.connections.values()) {
+            s.release();
+        }
+        this.connections.clear();
+    }
+
+// Private Methods
+
+    /**
+     * A request answered by only [status], which is decoded without a message object.
+     */
+    private static abstract class StatusRequest extends DottedConnection.Request {
+        @Override
+        int read(Unpacker u) throws IOException {
+            u.readArrayBegin();
+            boolean ok = u.readString().equals("OK");
+            u.readArrayEnd();
+            return ok ? OK : ERROR;
+        }
+    }
+
+    /**
+     * A GET, with its response decoded straight into the result. A read that is hedged is only
+     * decoded by the request that claims it first with an OK response.
+     */
+    private static class MapRead extends DottedConnection.Request {
+        private final String table;
+        private final String key;
+        private final HashMap<String,ByteIterator> result;
+        private final HedgedRead hedged;
+
+        MapRead(String table, String key, HashMap<String,ByteIterator> result, HedgedRead hedged) {
+            this.table = table;
+            this.key = key;
+            this.result = result;
+            this.hedged = hedged;
+        }
+
+        @Override
+        void write(DottedConnection c, Packer pk) throws IOException {
+            // [GET, table, key]
+            pk.writeArrayBegin(3);
+            pk.write("GET");
+            pk.write(table);
+            pk.write(key);
+            pk.writeArrayEnd();
+        }
+
+        @Override
+        int read(Unpacker u) throws IOException {
+            // [status, {field: value}]
+            u.readArrayBegin();
+            boolean ok = u.readString().equals("OK");
+            // a failed request leaves a hedged read to the other one
+            boolean mine = ok && (hedged == null || hedged.claim(this));
+            if(!u.trySkipNil()) {
+                int n = u.readMapBegin();
+                for(int i = 0; i < n; i++) {
+                    String field = u.readString();
+                    byte[] value = u.readByteArray();
+                    if(mine) {
+                        result.put(field, new ByteArrayByteIterator(value));
+                    }
+                }
+                u.readMapEnd();
+            }
+            u.readArrayEnd();
+            return ok ? OK : ERROR;
+        }
+    }
+
+    /**
+     * A GET with a binary key, with its response decoded into a BufferRecord.
+     */
+    private static class BufferRead extends DottedConnection.Request {
+        private final String table;
+        private final byte[] key;
+        private final int keylen;
+        private final BufferRecord result;
+        private final HedgedRead hedged;
+
+        BufferRead(String table, byte[] key, int keylen, BufferRecord result, HedgedRead hedged) {
+            this.table = table;
+            this.key = key;
+            this.keylen = keylen;
+            this.result = result;
+            this.hedged = hedged;
+        }
+
+        @Override
+        void write(DottedConnection c, Packer pk) throws IOException {
+            // [GET, table, key]
+            pk.writeArrayBegin(3);
+            pk.write("GET");
+            pk.write(table);
+            pk.write(key, 0, keylen);
+            pk.writeArrayEnd();
+        }
+
+        @Override
+        int read(Unpacker u) throws IOException {
+            // [status, {field: value}]
+            u.readArrayBegin();
+            boolean ok = u.readString().equals("OK");
+            // a failed request leaves a hedged read to the other one
+            boolean mine = ok && (hedged == null || hedged.claim(this));
+            if(!u.trySkipNil()) {
+                int n = u.readMapBegin();
+                for(int i = 0; i < n; i++) {
+                    int field = result.indexOf(u.readString());
+                    byte[] value = u.readByteArray();
+                    if(mine && field >= 0) {
+                        result.add(field, value, 0, value.length);
+                    }
+                }
+                u.readMapEnd();
             }
+            u.readArrayEnd();
+            return ok ? OK : ERROR;
         }
-        catch (IOException e) {
-            System.out.println(e);
+    }
+
+    /**
+     * A read that may be sent to two replicas. The request whose OK response comes first claims
+     * the read: only that response is decoded into the result, and it completes the read. If both
+     * fail, the last one left completes the read with its failure.
+     */
+    private static class HedgedRead {
+        final DBFuture future = new DBFuture();
+        // the requests sent and not completed yet
+        final AtomicInteger outstanding = new AtomicInteger(1);
+        final AtomicReference<DottedConnection.Request> winner = new AtomicReference<DottedConnection.Request>();
+
+        boolean claim(DottedConnection.Request r) {
+            return winner.compareAndSet(null, r);
         }
     }
 
-// Private Methods
+    // Send a read to a replica of its key, and to the next one too if it has not completed
+    // after the hedge delay. The hedges sent and the hedges that answered first are counted
+    // as READ-HEDGES and READ-HEDGES-WON.
+    private DBFuture hedge(final DottedPool[] replicas, final HedgedRead h, DottedConnection.Request primary, final DottedConnection.Request duplicate) {
+        final DottedPool first = getServer(replicas, null);
+        complete(h, primary, false);
+        send("READ", replicas, first, primary);
+        long delay = hedging.delay();
+        if(delay >= 0) {
+            hedging.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    DottedPool other = getServer(replicas, first);
+                    if(h.winner.get() != null || other == first) {
+                        return;
+                    }
+                    h.outstanding.incrementAndGet();
+                    complete(h, duplicate, true);
+                    measurements.count("READ-HEDGES", 1);
+                    send("READ", replicas, other, duplicate);
+                }
+            }, delay);
+        }
+        return h.future;
+    }
 
-    private void setupConnection(Properties props, String[] hosts) throws DBException {
-        this.servers = new ArrayList<Server>();
-        for(String h:hosts) {
-            String[] ipAndPort = h.split(":");
-            String ip = ipAndPort[0].trim();
-            int port = Integer.parseInt(ipAndPort[1].trim());
-            // System.out.println("Dotted connection to " + ip + ":" + port);
-            Server s = new Server();
-            try {
-                s.socket = new Socket(ip, port);
-                // s.socket.setSendBufferSize(BUFFER_SIZE);
-                s.out = new DataOutputStream(s.socket.getOutputStream());
-                s.in = new DataInputStream(s.socket.getInputStream());
-            } catch (UnknownHostException e) {
-                System.err.println("Don't know about host: "+h);
-            } catch (IOException e) {
-                System.err.println("Couldn't get I/O for the connection to: "+h);
+    // Complete a hedged read with a request of it, if that request claimed it, or if it is
+    // the last one left and failed before any claimed it. The hedge delay is set by the latency
+    // of each request on its own, as that of the hedged reads is already cut by hedging.
+    private void complete(final HedgedRead h, final DottedConnection.Request r, final boolean hedge) {
+        r.future.addListener(new DBFuture.Listener() {
+            @Override
+            public void onComplete(DBFuture future, int result) {
+                if(result == OK) {
+                    hedging.record(System.nanoTime() - r.sent);
+                }
+                int left = h.outstanding.decrementAndGet();
+                boolean won = h.winner.get() == r;
+                if(won || left == 0 && h.claim(r)) {
+                    if(won && hedge) {
+                        measurements.count("READ-HEDGES-WON", 1);
+                    }
+                    h.future.complete(result);
+                }
+            }
+        });
+    }
+
+    /**
+     * A PUT or UPDATE of a map of values. Each value goes from its ByteIterator to the frame of
+     * the connection through its scratch array, without a message object or a copy of the map.
+     * A ByteIterator can only be read once, so if the request may be sent again, with
+     * {@link DottedDB#DOTTED_RETRIES} set, its values are kept as arrays when it is first written
+     * instead.
+     */
+    private static class WriteRequest extends StatusRequest {
+        private final String code;
+        private final String table;
+        private final String key;
+        private final Map<String,ByteIterator> values;
+        private byte[][] kept = null;
+
+        WriteRequest(String code, String table, String key, Map<String,ByteIterator> values) {
+            this.code = code;
+            this.table = table;
+            this.key = key;
+            this.values = values;
+        }
+
+        @Override
+        void write(DottedConnection c, Packer pk) throws IOException {
+            // [PUT or UPDATE, table, key, {field: value}]
+            pk.writeArrayBegin(4);
+            pk.write(code);
+            pk.write(table);
+            pk.write(key);
+            if(retry != null && kept == null) {
+                kept = new byte[values.size()][];
+                int i = 0;
+                for(ByteIterator value : values.values()) {
+                    kept[i++] = value.toArray();
+                }
+            }
+            pk.writeMapBegin(values.size());
+            int i = 0;
+            for(Map.Entry<String,ByteIterator> entry : values.entrySet()) {
+                pk.write(entry.getKey());
+                if(kept != null) {
+                    pk.write(kept[i++]);
+                    continue;
+                }
+                ByteIterator value = entry.getValue();
+                int len = (int) value.bytesLeft();
+                byte[] scratch = c.scratch(len);
+                int off = 0;
+                while(off < len) {
+                    off = value.nextBuf(scratch, off);
+                }
+                pk.write(scratch, 0, len);
             }
+            pk.writeMapEnd();
+            pk.writeArrayEnd();
+        }
+    }
+
+    private void setupConnection(String[] hosts) throws DBException {
+        this.servers = new ArrayList<DottedPool>();
+        boolean up = false;
+        for(String h:hosts) {
+            DottedPool s = connect(h);
             this.servers.add(s);
+            up |= !s.isDown();
+        }
+        if(!up) {
+            throw new DBException("Could not connect to any of " + Arrays.toString(hosts));
+        }
+    }
+
+    // The pool of connections to a node, got from the process if this instance has none yet.
+    // A node that is down gets a pool too, which connects to it once it is up.
+    private synchronized DottedPool connect(String h) {
+        h = h.trim();
+        DottedPool s = this.connections.get(h);
+        if(s == null) {
+            s = DottedPool.acquire(h, tagged, poolSize, poolCheckInterval, reconnectBackoff, connectTimeout);
+            this.connections.put(h, s);
+        }
+        return s;
+    }
+
+    private void setupRing(Properties props, String[] hosts) throws DBException {
+        String routing = props.getProperty(DOTTED_ROUTING, DOTTED_ROUTING_DEFAULT);
+        if(routing.equals("random")) {
+            return;
+        }
+        if(!routing.equals("token")) {
+            throw new DBException("Unknown " + DOTTED_ROUTING + " \"" + routing + "\"");
+        }
+        try {
+            this.replication = Integer.parseInt(props.getProperty(DOTTED_REPLICATION_FACTOR, DOTTED_REPLICATION_FACTOR_DEFAULT).trim());
+            String owners = props.getProperty(DOTTED_RING_OWNERS, DOTTED_RING_OWNERS_DEFAULT).trim();
+            DottedRing ring;
+            if(owners.length() > 0) {
+                String[] list = owners.split(",");
+                for(int i = 0; i < list.length; i++) {
+                    list[i] = list[i].trim();
+                }
+                ring = new DottedRing(list, replication);
+            } else {
+                int size = Integer.parseInt(props.getProperty(DOTTED_RING_SIZE, DOTTED_RING_SIZE_DEFAULT).trim());
+                List<String> nodes = new ArrayList<String>();
+                for(String h : hosts) {
+                    nodes.add(h.trim());
+                }
+                ring = DottedRing.roundRobin(size, nodes, replication);
+            }
+            setRing(ring);
+        } catch(IllegalArgumentException e) {
+            throw new DBException("Bad DottedDB ring: " + e.getMessage());
+        }
+
+        final long refresh = Long.parseLong(props.getProperty(DOTTED_RING_REFRESH, DOTTED_RING_REFRESH_DEFAULT).trim());
+        if(refresh > 0) {
+            refreshRing(refresh);
+            refresher = new Timer("DottedDB ring refresher", true);
+            refresher.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    refreshRing(refresh);
+                }
+            }, refresh, refresh);
+        }
+    }
+
+    // Route keys with a new ring, connecting to the nodes it has that are not connected yet.
+    private void setRing(DottedRing ring) {
+        DottedPool[][] replicas = new DottedPool[ring.size()][];
+        for(int p = 0; p < ring.size(); p++) {
+            String[] nodes = ring.replicas(p);
+            replicas[p] = new DottedPool[nodes.length];
+            for(int i = 0; i < nodes.length; i++) {
+                replicas[p][i] = connect(nodes[i]);
+            }
+        }
+        this.routes = new Routes(ring, replicas);
+    }
+
+    // Ask a node for the ring of the cluster with a RING message, answered by
+    // [status, [owner of partition 0, owner of partition 1, ...]] with each owner as host:port.
+    // The ring is kept as it is if no node answers in time.
+    private void refreshRing(long timeout) {
+        final List<String> owners = new ArrayList<String>();
+        StatusRequest request = new StatusRequest() {
+            @Override
+            void write(DottedConnection c, Packer pk) throws IOException {
+                pk.writeArrayBegin(1);
+                pk.write("RING");
+                pk.writeArrayEnd();
+            }
+
+            @Override
+            int read(Unpacker u) throws IOException {
+                u.readArrayBegin();
+                boolean ok = u.readString().equals("OK");
+                int n = u.readArrayBegin();
+                for(int i = 0; i < n; i++) {
+                    owners.add(u.readString());
+                }
+                u.readArrayEnd();
+                u.readArrayEnd();
+                return ok ? OK : ERROR;
+            }
+        };
+        try {
+            if(getServer().send(request).get(timeout, TimeUnit.MILLISECONDS) != OK) {
+                System.err.println("Could not get the ring of the DottedDB cluster");
+                return;
+            }
+            DottedRing ring = new DottedRing(owners.toArray(new String[owners.size()]), replication);
+            Routes current = this.routes;
+            if(current == null || !ring.equals(current.ring)) {
+                setRing(ring);
+            }
+        } catch(TimeoutException e) {
+            System.err.println("No answer to RING from the DottedDB cluster in " + timeout + " ms");
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch(IllegalArgumentException e) {
+            System.err.println("Bad ring from the DottedDB cluster: " + e.getMessage());
         }
     }
 
@@ -305,28 +713,24 @@ public class DottedDB extends DB {
             int strip = Integer.parseInt(strip_str.trim());
             float repl = Float.parseFloat(fail_repl_str.trim());
             int node = Integer.parseInt(fail_node_str.trim());
-            for(Server s : this.servers) {
-                String hostName = s.socket.getInetAddress().getHostName();
-                String host = hostName + ":" + s.socket.getPort();
+            for(DottedPool s : this.connections.values()) {
                 OPTIONS opt = new OPTIONS();
                 opt.sync_interval = sync;
                 opt.strip_interval = strip;
                 opt.replication_failure_rate = repl;
                 opt.node_failure_rate = node;
 
-                MessagePack msgpack = new MessagePack();
-                byte[] raw = msgpack.write(opt);
-                s.out.write(raw);
-
-                byte[] res = new byte[BUFFER_SIZE_OK];
-                int len = s.in.read(res);
-                if(len == -1) return;
-                byte[] res2 = Arrays.copyOf(res, len);
-                UPD_RESPONSE res3 = msgpack.read(res2, UPD_RESPONSE.class);
-                if(res3.status.equals("OK")) {
-                    // System.out.println("OPTIONS for |"+host+"| => sync:"+sync+" strip:"+strip+" repl fail:"+repl+" node fail:"+node);
+                final OPTIONS message = opt;
+                StatusRequest request = new StatusRequest() {
+                    @Override
+                    void write(DottedConnection c, Packer pk) throws IOException {
+                        pk.write(message);
+                    }
+                };
+                if(s.send(request).join() == OK) {
+                    // System.out.println("OPTIONS for |"+s.getName()+"| => sync:"+sync+" strip:"+strip+" repl fail:"+repl+" node fail:"+node);
                 } else {
-                    System.out.println("OPTIONS not set for |"+host+"|");
+                    System.out.println("OPTIONS not set for |"+s.getName()+"|");
                 }
             }
         } catch(Exception e) {
@@ -334,24 +738,150 @@ public class DottedDB extends DB {
         }
     }
 
-    private HashMap<String, byte[]> serialize(Map<String,ByteIterator> values) {
-      HashMap<String, byte[]> retVal = new HashMap<String, byte[]>();
-      for (String key : values.keySet()) {
-        retVal.put(key, values.get(key).toArray());
-      }
-      return retVal;
+    // Writes a PUT or UPDATE message without building a map of the values: each value
+    // goes from the buffer of the record to the frame of the connection, through its scratch
+    // array. The key is written as raw bytes, which is how msgpack encodes a string.
+    private int write(final String code, final String table, final byte[] key, final int keylen, final BufferRecord values) {
+        String operation = code.equals("PUT") ? "INSERT" : code;
+        return send(operation, getReplicas(table, key, keylen), new StatusRequest() {
+            @Override
+            void write(DottedConnection c, Packer pk) throws IOException {
+                // [PUT or UPDATE, table, key, {field: value}]
+                pk.writeArrayBegin(4);
+                pk.write(code);
+                pk.write(table);
+                pk.write(key, 0, keylen);
+                pk.writeMapBegin(values.size());
+                for(int i = 0; i < values.size(); i++) {
+                    pk.write(values.name(i));
+                    int len = values.length(i);
+                    byte[] scratch = c.scratch(len);
+                    values.copyValue(i, scratch, 0);
+                    pk.write(scratch, 0, len);
+                }
+                pk.writeMapEnd();
+                pk.writeArrayEnd();
+            }
+        }).join();
     }
 
-    private void deserialize(Map<String, byte[]> ori, Map<String, ByteIterator> des) {
-        for (String k : ori.keySet()) {
-            des.put(k, new ByteArrayByteIterator(ori.get(k)));
+    // Any node, at random among those that are up.
+    private DottedPool getServer() {
+        int index = randomGenerator.nextInt(this.servers.size());
+        for(int i = 0; i < this.servers.size(); i++) {
+            DottedPool s = this.servers.get((index + i) % this.servers.size());
+            if(!s.isDown()) {
+                return s;
+            }
         }
+        return this.servers.get(index);
     }
 
-    private Server getServer() {
-        int index = randomGenerator.nextInt(this.servers.size());
-        Server s = this.servers.get(index);
-        return s;
+    // The nodes with a replica of a key, the owner first; null if keys are not routed by token.
+    private DottedPool[] getReplicas(String table, String key) {
+        Routes r = this.routes;
+        return r == null ? null : r.replicas[r.ring.partition(table, key)];
+    }
+
+    private DottedPool[] getReplicas(String table, byte[] key, int keylen) {
+        Routes r = this.routes;
+        return r == null ? null : r.replicas[r.ring.partition(table, key, keylen)];
+    }
+
+    // The first replica after the given one that is up, in ring order from the owner; any node
+    // if no replica is, as every node can coordinate any key.
+    private DottedPool getServer(DottedPool[] replicas, DottedPool after) {
+        if(replicas != null) {
+            int start = 0;
+            for(int i = 0; i < replicas.length; i++) {
+                if(replicas[i] == after) {
+                    start = i + 1;
+                }
+            }
+            for(int i = 0; i < replicas.length; i++) {
+                DottedPool s = replicas[(start + i) % replicas.length];
+                if(!s.isDown()) {
+                    return s;
+                }
+            }
+        }
+        return getServer();
+    }
+
+    // Send an operation to a replica of its key, and again if it is lost with its connection.
+    private DBFuture send(String operation, DottedPool[] replicas, DottedConnection.Request r) {
+        return send(operation, replicas, getServer(replicas, null), r);
+    }
+
+    private DBFuture send(String operation, DottedPool[] replicas, DottedPool s, DottedConnection.Request r) {
+        if(retries > 0) {
+            r.retry = new Failover(operation, replicas, s);
+        }
+        return s.send(r);
+    }
+
+    /**
+     * Sends an operation again when it is lost with its connection, such as when its node is
+     * killed: first right away to the next replica of its key that is up, then after a backoff
+     * that doubles with each retry. An operation that was sent again is also measured, from when
+     * it was first sent to when it completed, as OPERATION-FAILOVER if it went to another node and
+     * as OPERATION-RETRY if it only went to the same one, to tell how long the operations that were
+     * disturbed took. They are still counted in the latency of OPERATION like any other.
+     */
+    private class Failover implements DottedConnection.Retry {
+        private final String operation;
+        private final DottedPool[] replicas;
+        private final DottedPool first;
+        private final long start = System.nanoTime();
+        private DottedPool last;
+        private int attempts = 0;
+        private volatile boolean failedOver = false;
+
+        Failover(String operation, DottedPool[] replicas, DottedPool first) {
+            this.operation = operation;
+            this.replicas = replicas;
+            this.first = first;
+            this.last = first;
+        }
+
+        @Override
+        public boolean resend(final DottedConnection.Request r) {
+            if(attempts >= retries) {
+                return false;
+            }
+            if(attempts == 0) {
+                r.future.addListener(new DBFuture.Listener() {
+                    @Override
+                    public void onComplete(DBFuture future, int result) {
+                        String name = operation + (failedOver ? "-FAILOVER" : "-RETRY");
+                        measurements.measure(name, measurements.fromNanos(System.nanoTime() - start));
+                        measurements.reportReturnCode(name, result);
+                    }
+                });
+            }
+            long delay = attempts == 0 ? 0 : retryBackoff << (attempts - 1);
+            attempts++;
+            if(delay == 0) {
+                resendNow(r);
+            } else {
+                RETRIER.schedule(new TimerTask() {
+                    @Override
+                    public void run() {
+                        resendNow(r);
+                    }
+                }, delay);
+            }
+            return true;
+        }
+
+        private void resendNow(DottedConnection.Request r) {
+            DottedPool s = getServer(replicas, last);
+            if(s != first) {
+                failedOver = true;
+            }
+            last = s;
+            s.send(r);
+        }
     }
 
 }
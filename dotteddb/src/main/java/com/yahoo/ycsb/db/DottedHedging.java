@@ -0,0 +1,110 @@
+package com.yahoo.ycsb.db;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The delay after which a read is hedged: sent again to another replica, the first response
+ * being used. A read to a node that is busy, such as with its anti-entropy sync, can take many
+ * times longer than the others, and hedging it bounds the tail latency of reads by that of the
+ * other replicas at the cost of a few duplicate requests.
+ *
+ * The delay is a percentile of the latency of the read requests of the process over the last
+ * second, each to its own replica rather than the hedged reads they make up, so that only about
+ * the slowest (100 - percentile)% of the reads are hedged, however fast the cluster is. Until
+ * enough reads were measured, none are hedged.
+ */
+public class DottedHedging {
+
+    private static final long REFRESH = TimeUnit.SECONDS.toNanos(1);
+    private static final int MIN_SAMPLES = 100;
+
+    // shared by all the client threads, like their latencies; guarded by the class
+    private static DottedHedging shared = null;
+
+    // sends the hedges, with a precision finer than the millisecond of a Timer
+    private static final ScheduledExecutorService HEDGER = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "DottedDB hedges");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final double percentile;
+    private final long minDelay;
+
+    // the latencies of the read requests in microseconds
+    private final Recorder recorder = new Recorder(3);
+
+    // guarded by this
+    private Histogram interval = null;
+
+    private volatile long refreshed = System.nanoTime();
+    private volatile long delay = -1;
+
+    private DottedHedging(double percentile, long minDelay) {
+        this.percentile = percentile;
+        this.minDelay = minDelay;
+    }
+
+    /**
+     * The hedging of the process, made with the given settings if there is none yet.
+     *
+     * @param percentile The percentile of the latency of the reads to hedge them after.
+     * @param minDelay The shortest delay (ns) to hedge a read after.
+     */
+    static synchronized DottedHedging get(double percentile, long minDelay) {
+        if (percentile <= 0 || percentile >= 100) {
+            throw new IllegalArgumentException("The hedge percentile must be between 0 and 100, not " + percentile);
+        }
+        if (shared == null) {
+            shared = new DottedHedging(percentile, minDelay);
+        }
+        return shared;
+    }
+
+    /**
+     * Record the latency (ns) of a read request.
+     */
+    void record(long nanos) {
+        recorder.recordValue(Math.max(TimeUnit.NANOSECONDS.toMicros(nanos), 0));
+    }
+
+    /**
+     * The delay (ns) to hedge a read after, or -1 not to hedge it.
+     */
+    long delay() {
+        long now = System.nanoTime();
+        if (now - refreshed > REFRESH) {
+            refresh(now);
+        }
+        return delay;
+    }
+
+    /**
+     * Run a task, such as sending a hedge, after a delay (ns).
+     */
+    void schedule(Runnable task, long nanos) {
+        HEDGER.schedule(task, nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private synchronized void refresh(long now) {
+        if (now - refreshed <= REFRESH) {
+            return;
+        }
+        refreshed = now;
+        interval = recorder.getIntervalHistogram(interval);
+        // too few reads in the last second keep the delay as it is
+        if (interval.getTotalCount() >= MIN_SAMPLES) {
+            long micros = interval.getValueAtPercentile(percentile);
+            delay = Math.max(minDelay, TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+    }
+}
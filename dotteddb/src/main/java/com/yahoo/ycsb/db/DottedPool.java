@@ -0,0 +1,268 @@
+package com.yahoo.ycsb.db;
+
+import com.yahoo.ycsb.DBFuture;
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The connections of the process to a DottedDB node, shared by all the client threads, so that
+ * the number of connections to a node is set on its own rather than by the number of threads.
+ *
+ * A request goes on the open connection of the pool with the fewest requests outstanding,
+ * starting the search at the next connection in turn, so that ties are spread evenly.
+ *
+ * The connections that are closed, such as when a node is killed by
+ * {@link DottedDB#DOTTED_NODE_FAILURE_RATE}, are made again once the node is back. The pool tries
+ * to reconnect as soon as a connection is lost, then backs off exponentially while the node is
+ * down, up to the interval of the health check that it otherwise runs.
+ */
+public class DottedPool {
+
+    // the pools of the process by node; guarded by the class
+    private static final Map<String, DottedPool> POOLS = new HashMap<String, DottedPool>();
+
+    // runs the health checks and reconnects of all the pools
+    private static final Timer CHECKER = new Timer("DottedDB pool health check", true);
+
+    private final String name;
+    private final String host;
+    private final int port;
+    private final boolean tagged;
+    private final AtomicReferenceArray<DottedConnection> connections;
+    private final AtomicInteger next = new AtomicInteger();
+    private final long interval;
+    private final long minBackoff;
+    private final int connectTimeout;
+
+    // guarded by the class
+    private int users = 0;
+
+    // guarded by this, so that no connection is made once the pool is closed
+    private boolean closed = false;
+    private boolean down = false;
+    private long backoff;
+    private TimerTask check = null;
+
+    private DottedPool(String name, boolean tagged, int size, long interval, long backoff, int connectTimeout) {
+        String[] ipAndPort = name.split(":");
+        this.name = name;
+        this.host = ipAndPort[0].trim();
+        this.port = Integer.parseInt(ipAndPort[1].trim());
+        this.tagged = tagged;
+        this.connections = new AtomicReferenceArray<DottedConnection>(size);
+        this.interval = interval;
+        this.minBackoff = Math.min(backoff, interval);
+        this.backoff = minBackoff;
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * The pool of connections to a node, as host:port, made if the process has none yet. Each
+     * call must be matched by a call to {@link #release()}.
+     *
+     * @param size The number of connections of a new pool.
+     * @param interval How often (ms) a new pool checks for closed connections to replace.
+     * @param backoff How long (ms) a new pool waits to reconnect after losing a connection, doubled
+     *        after each failed attempt up to the interval.
+     * @param connectTimeout How long (ms) a new pool waits for a connection to be made.
+     */
+    static DottedPool acquire(String node, boolean tagged, int size, long interval, long backoff, int connectTimeout) {
+        if (size < 1) {
+            throw new IllegalArgumentException("The pool size must be at least 1, not " + size);
+        }
+        node = node.trim();
+        String key = node + (tagged ? "/ids" : "");
+        synchronized (DottedPool.class) {
+            DottedPool pool = POOLS.get(key);
+            if (pool == null) {
+                pool = new DottedPool(node, tagged, size, interval, backoff, connectTimeout);
+                pool.check();
+                POOLS.put(key, pool);
+            }
+            pool.users++;
+            return pool;
+        }
+    }
+
+    /**
+     * Give up a pool got from {@link #acquire}. The connections are closed once no one uses them.
+     */
+    void release() {
+        synchronized (DottedPool.class) {
+            if (--users > 0) {
+                return;
+            }
+            POOLS.remove(name + (tagged ? "/ids" : ""));
+        }
+        close();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Whether none of the connections of the pool are open.
+     */
+    public boolean isDown() {
+        for (int i = 0; i < connections.length(); i++) {
+            DottedConnection c = connections.get(i);
+            if (c != null && !c.isClosed()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Whether all the connections of the pool are open.
+    private boolean isComplete() {
+        for (int i = 0; i < connections.length(); i++) {
+            DottedConnection c = connections.get(i);
+            if (c == null || c.isClosed()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Send a request on the open connection with the fewest requests outstanding.
+     *
+     * @return The future of the request, lost as with a closed connection if the node is down.
+     */
+    DBFuture send(DottedConnection.Request r) {
+        int size = connections.length();
+        int start = (next.getAndIncrement() & Integer.MAX_VALUE) % size;
+        DottedConnection best = null;
+        int least = Integer.MAX_VALUE;
+        for (int i = 0; i < size && least > 0; i++) {
+            DottedConnection c = connections.get((start + i) % size);
+            if (c != null && !c.isClosed()) {
+                int outstanding = c.outstanding();
+                if (outstanding < least) {
+                    best = c;
+                    least = outstanding;
+                }
+            }
+        }
+        if (best == null) {
+            DottedConnection.lost(r);
+            return r.future;
+        }
+        return best.send(r);
+    }
+
+    /**
+     * Called by a connection of the pool when it is closed, to reconnect soon rather than at the
+     * next health check.
+     */
+    synchronized void lost() {
+        if (!down) {
+            schedule(minBackoff);
+        }
+    }
+
+    // The health check of the pool: open the connections that are missing or closed, and check
+    // again after the interval, or after the backoff if the node is down. The connections are made
+    // without holding the lock, which the reader threads of the other connections take in lost().
+    private void check() {
+        List<Integer> missing = new ArrayList<Integer>();
+        synchronized (this) {
+            for (int i = 0; i < connections.length() && !closed; i++) {
+                DottedConnection c = connections.get(i);
+                if (c == null || c.isClosed()) {
+                    missing.add(i);
+                }
+            }
+        }
+        boolean failed = false;
+        for (int i : missing) {
+            DottedConnection c;
+            try {
+                c = new DottedConnection(host, port, tagged, this, connectTimeout);
+            } catch (UnknownHostException e) {
+                System.err.println("Don't know about host: " + name);
+                failed = true;
+                break;
+            } catch (IOException e) {
+                failed = true;
+                break;
+            }
+            boolean discard;
+            synchronized (this) {
+                discard = closed;
+                if (!discard) {
+                    connections.set(i, c);
+                }
+            }
+            if (discard) {
+                c.close();
+                return;
+            }
+        }
+        synchronized (this) {
+            checked(failed);
+        }
+    }
+
+    // Schedule the next health check after one; guarded by this.
+    private void checked(boolean failed) {
+        if (failed) {
+            if (!down) {
+                System.err.println("Couldn't get I/O for the connection to: " + name);
+                down = true;
+            }
+            schedule(backoff);
+            backoff = Math.min(backoff * 2, interval);
+        } else {
+            if (down) {
+                System.err.println("Reconnected to DottedDB node " + name);
+                down = false;
+            }
+            backoff = minBackoff;
+            // a connection lost while connecting the others is made again soon, as lost() would
+            schedule(isComplete() ? interval : minBackoff);
+        }
+    }
+
+    // Run the health check after the delay instead of when it was due; guarded by this.
+    private void schedule(long delay) {
+        if (closed) {
+            return;
+        }
+        if (check != null) {
+            check.cancel();
+        }
+        check = new TimerTask() {
+            @Override
+            public void run() {
+                check();
+            }
+        };
+        CHECKER.schedule(check, delay);
+    }
+
+    private void close() {
+        synchronized (this) {
+            closed = true;
+            if (check != null) {
+                check.cancel();
+            }
+        }
+        for (int i = 0; i < connections.length(); i++) {
+            DottedConnection c = connections.get(i);
+            if (c != null) {
+                c.close();
+            }
+        }
+    }
+}
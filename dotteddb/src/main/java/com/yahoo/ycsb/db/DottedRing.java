@@ -0,0 +1,161 @@
+package com.yahoo.ycsb.db;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The consistent hashing ring of a DottedDB cluster, which the binding uses to send each key
+ * straight to a node that owns it instead of to a coordinator that forwards it.
+ *
+ * This mirrors the partitioning of riak_core that the nodes use: the key space is the range of
+ * SHA-1 hashes, split into a power-of-two number of equal partitions. A key is hashed as the
+ * Erlang external term of {Table, Key}, where both are binaries, and belongs to the partition
+ * after the one its hash falls in. Its replicas are the owners of that partition and of the
+ * partitions following it, up to the replication factor.
+ */
+public class DottedRing {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // the Erlang external term format: version, small tuple of 2, and a binary with its length
+    private static final byte VERSION = (byte) 131;
+    private static final byte SMALL_TUPLE_EXT = 104;
+    private static final byte BINARY_EXT = 109;
+
+    private static final ThreadLocal<MessageDigest> SHA1 = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    private final String[] owners;
+    private final String[][] replicas;
+    private final int bits;
+
+    /**
+     * A ring with the given owner, as host:port, of each partition. The number of partitions
+     * must be a power of two.
+     */
+    public DottedRing(String[] owners, int replication) {
+        int size = owners.length;
+        if (size == 0 || (size & (size - 1)) != 0) {
+            throw new IllegalArgumentException("The ring size must be a power of two, not " + size);
+        }
+        if (replication < 1) {
+            throw new IllegalArgumentException("The replication factor must be at least 1, not " + replication);
+        }
+        this.owners = owners.clone();
+        this.bits = Integer.numberOfTrailingZeros(size);
+        this.replicas = new String[size][];
+        for (int p = 0; p < size; p++) {
+            // the distinct owners of the partitions from p on, in ring order
+            List<String> list = new ArrayList<String>(replication);
+            for (int i = 0; i < Math.min(replication, size); i++) {
+                String owner = owners[(p + i) & (size - 1)];
+                if (!list.contains(owner)) {
+                    list.add(owner);
+                }
+            }
+            this.replicas[p] = list.toArray(new String[list.size()]);
+        }
+    }
+
+    /**
+     * A ring of the given size whose partitions are owned by the hosts in turn, which is how a
+     * new cluster claims them.
+     */
+    public static DottedRing roundRobin(int size, List<String> hosts, int replication) {
+        String[] owners = new String[size];
+        for (int p = 0; p < size; p++) {
+            owners[p] = hosts.get(p % hosts.size());
+        }
+        return new DottedRing(owners, replication);
+    }
+
+    public int size() {
+        return owners.length;
+    }
+
+    /**
+     * The owner of each partition.
+     */
+    public String[] owners() {
+        return owners.clone();
+    }
+
+    /**
+     * All the nodes that own a partition.
+     */
+    public List<String> nodes() {
+        List<String> nodes = new ArrayList<String>();
+        for (String owner : owners) {
+            if (!nodes.contains(owner)) {
+                nodes.add(owner);
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * The nodes with a replica of the keys of a partition, the owner of the partition first.
+     * The array must not be modified.
+     */
+    public String[] replicas(int partition) {
+        return replicas[partition];
+    }
+
+    /**
+     * The partition of a key.
+     */
+    public int partition(String table, String key) {
+        byte[] k = key.getBytes(UTF8);
+        return partition(table, k, k.length);
+    }
+
+    /**
+     * The partition of a binary key.
+     */
+    public int partition(String table, byte[] key, int keylen) {
+        byte[] t = table.getBytes(UTF8);
+        MessageDigest sha = SHA1.get();
+        sha.update(VERSION);
+        sha.update(SMALL_TUPLE_EXT);
+        sha.update((byte) 2);
+        updateBinary(sha, t, t.length);
+        updateBinary(sha, key, keylen);
+        byte[] hash = sha.digest();
+        // the partition the hash falls in is given by its top bits, and the key belongs to the next
+        int top = ((hash[0] & 0xff) << 24) | ((hash[1] & 0xff) << 16) | ((hash[2] & 0xff) << 8) | (hash[3] & 0xff);
+        int in = bits == 0 ? 0 : top >>> (32 - bits);
+        return (in + 1) & (owners.length - 1);
+    }
+
+    private static void updateBinary(MessageDigest sha, byte[] b, int len) {
+        sha.update(BINARY_EXT);
+        sha.update((byte) (len >>> 24));
+        sha.update((byte) (len >>> 16));
+        sha.update((byte) (len >>> 8));
+        sha.update((byte) len);
+        sha.update(b, 0, len);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof DottedRing && Arrays.equals(owners, ((DottedRing) o).owners)
+            && Arrays.deepEquals(replicas, ((DottedRing) o).replicas);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(owners);
+    }
+}
@@ -0,0 +1,71 @@
+package com.yahoo.ycsb.db;
+
+import org.testng.annotations.Test;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+public class TestDottedRing {
+
+    private static DottedRing ring(int size) {
+        String[] owners = new String[size];
+        Arrays.fill(owners, "localhost:10017");
+        return new DottedRing(owners, 1);
+    }
+
+    /**
+     * The partitions riak_core gives the keys, with chash:responsible_index(chash:key_of({Table, Key}), Size)
+     * divided by the partition width.
+     */
+    @Test
+    public void testPartition() {
+        int[] sizes = {1, 8, 64, 1024};
+        Object[][] keys = {
+            {"usertable", "user6284781860667377211", new int[]{0, 4, 27, 418}},
+            {"usertable", "user8517097267634966620", new int[]{0, 3, 18, 273}},
+            // hashes into the last partition of the smaller rings, so belongs to the first
+            {"usertable", "user0", new int[]{0, 0, 60, 953}},
+            {"t", "k", new int[]{0, 0, 63, 1006}},
+            {"table", "", new int[]{0, 7, 55, 879}},
+        };
+        for (int s = 0; s < sizes.length; s++) {
+            DottedRing ring = ring(sizes[s]);
+            for (Object[] key : keys) {
+                int expected = ((int[]) key[2])[s];
+                assertEquals(key[1] + " in " + sizes[s], expected, ring.partition((String) key[0], (String) key[1]));
+            }
+        }
+    }
+
+    @Test
+    public void testBinaryPartition() {
+        DottedRing ring = ring(64);
+        byte[] key = "user6284781860667377211 and more".getBytes(Charset.forName("UTF-8"));
+        assertEquals(27, ring.partition("usertable", key, 23));
+    }
+
+    @Test
+    public void testReplicas() {
+        DottedRing ring = new DottedRing(new String[]{"a", "b", "a", "c"}, 3);
+        // a owns both the first and the third partition of the window of 0
+        assertTrue(Arrays.equals(new String[]{"a", "b"}, ring.replicas(0)));
+        assertTrue(Arrays.equals(new String[]{"b", "a", "c"}, ring.replicas(1)));
+        assertTrue(Arrays.equals(new String[]{"a", "c"}, ring.replicas(2)));
+        assertTrue(Arrays.equals(new String[]{"c", "a", "b"}, ring.replicas(3)));
+    }
+
+    @Test
+    public void testReplicationAboveSize() {
+        DottedRing ring = new DottedRing(new String[]{"a", "b"}, 3);
+        assertTrue(Arrays.equals(new String[]{"a", "b"}, ring.replicas(0)));
+        assertTrue(Arrays.equals(new String[]{"b", "a"}, ring.replicas(1)));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testSizeNotPowerOfTwo() {
+        new DottedRing(new String[]{"a", "b", "c"}, 1);
+    }
+}
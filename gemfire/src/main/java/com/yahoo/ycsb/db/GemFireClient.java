@@ -18,6 +18,7 @@
 package com.yahoo.ycsb.db;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -187,6 +188,52 @@ public class GemFireClient extends DB {
     return 0;
   }
 
+  @Override
+  public int batchRead(String table, List<String> keys, Set<String> fields,
+      List<HashMap<String, ByteIterator>> results) {
+    Map<String, Map<String, byte[]>> vals = getRegion(table).getAll(keys);
+    int res = SUCCESS;
+    for (int i = 0; i < keys.size(); i++) {
+      Map<String, byte[]> val = vals.get(keys.get(i));
+      if (val == null) {
+        res = ERROR;
+        continue;
+      }
+      HashMap<String, ByteIterator> result = results.get(i);
+      if (fields == null) {
+        for (String k : val.keySet()) {
+          result.put(k, new ByteArrayByteIterator(val.get(k)));
+        }
+      } else {
+        for (String field : fields) {
+          result.put(field, new ByteArrayByteIterator(val.get(field)));
+        }
+      }
+    }
+    return res;
+  }
+
+  @Override
+  public int batchUpdate(String table, List<String> keys, List<HashMap<String, ByteIterator>> values) {
+    getRegion(table).putAll(convertToBytearrayMaps(keys, values));
+    return 0;
+  }
+
+  @Override
+  public int batchInsert(String table, List<String> keys, List<HashMap<String, ByteIterator>> values) {
+    getRegion(table).putAll(convertToBytearrayMaps(keys, values));
+    return 0;
+  }
+
+  private Map<String, Map<String, byte[]>> convertToBytearrayMaps(List<String> keys,
+      List<HashMap<String, ByteIterator>> values) {
+    Map<String, Map<String, byte[]>> retVal = new HashMap<String, Map<String, byte[]>>();
+    for (int i = 0; i < keys.size(); i++) {
+      retVal.put(keys.get(i), convertToBytearrayMap(values.get(i)));
+    }
+    return retVal;
+  }
+
   private Map<String, byte[]> convertToBytearrayMap(Map<String,ByteIterator> values) {
     Map<String, byte[]> retVal = new HashMap<String, byte[]>();
     for (String key : values.keySet()) {
@@ -442,6 +442,112 @@ public class JdbcDBClient extends DB implements JdbcDBClientConstants {
     }
 	}
 
+	@Override
+	public int batchInsert(String tableName, List<String> keys, List<HashMap<String, ByteIterator>> values) {
+	  if (tableName == null) {
+	    return -1;
+	  }
+	  // one JDBC batch per statement, that is per shard and number of fields
+	  Map<StatementType, PreparedStatement> batches = new LinkedHashMap<StatementType, PreparedStatement>();
+	  try {
+	    for (int i = 0; i < keys.size(); i++) {
+	      String key = keys.get(i);
+	      if (key == null) {
+	        return -1;
+	      }
+	      HashMap<String, ByteIterator> record = values.get(i);
+	      StatementType type = new StatementType(StatementType.Type.INSERT, tableName, record.size(), getShardIndexByKey(key));
+	      PreparedStatement insertStatement = batches.get(type);
+	      if (insertStatement == null) {
+	        insertStatement = cachedStatements.get(type);
+	        if (insertStatement == null) {
+	          insertStatement = createAndCacheInsertStatement(type, key);
+	        }
+	        batches.put(type, insertStatement);
+	      }
+	      insertStatement.setString(1, key);
+	      int index = 2;
+	      for (Map.Entry<String, ByteIterator> entry : record.entrySet()) {
+	        insertStatement.setString(index++, entry.getValue().toString());
+	      }
+	      insertStatement.addBatch();
+	    }
+	    return executeBatches(batches.values());
+	  } catch (SQLException e) {
+	    System.err.println("Error in processing batch insert to table: " + tableName + e);
+	    clearBatches(batches.values());
+	    return -1;
+	  }
+	}
+
+	@Override
+	public int batchUpdate(String tableName, List<String> keys, List<HashMap<String, ByteIterator>> values) {
+	  if (tableName == null) {
+	    return -1;
+	  }
+	  // one JDBC batch per statement, that is per shard and number of fields
+	  Map<StatementType, PreparedStatement> batches = new LinkedHashMap<StatementType, PreparedStatement>();
+	  try {
+	    for (int i = 0; i < keys.size(); i++) {
+	      String key = keys.get(i);
+	      if (key == null) {
+	        return -1;
+	      }
+	      HashMap<String, ByteIterator> record = values.get(i);
+	      StatementType type = new StatementType(StatementType.Type.UPDATE, tableName, record.size(), getShardIndexByKey(key));
+	      PreparedStatement updateStatement = batches.get(type);
+	      if (updateStatement == null) {
+	        updateStatement = cachedStatements.get(type);
+	        if (updateStatement == null) {
+	          updateStatement = createAndCacheUpdateStatement(type, key);
+	        }
+	        batches.put(type, updateStatement);
+	      }
+	      int index = 1;
+	      for (Map.Entry<String, ByteIterator> entry : record.entrySet()) {
+	        updateStatement.setString(index++, entry.getValue().toString());
+	      }
+	      updateStatement.setString(index, key);
+	      updateStatement.addBatch();
+	    }
+	    return executeBatches(batches.values());
+	  } catch (SQLException e) {
+	    System.err.println("Error in processing batch update to table: " + tableName + e);
+	    clearBatches(batches.values());
+	    return -1;
+	  }
+	}
+
+	/**
+	 * Execute the batches of the statements.
+	 *
+	 * @return SUCCESS if every statement of every batch changed one row, 1 otherwise.
+	 */
+	private int executeBatches(Collection<PreparedStatement> batches) throws SQLException {
+	  int res = SUCCESS;
+	  for (PreparedStatement statement : batches) {
+	    for (int result : statement.executeBatch()) {
+	      if (result != 1 && result != Statement.SUCCESS_NO_INFO) {
+	        res = 1;
+	      }
+	    }
+	  }
+	  return res;
+	}
+
+	/**
+	 * Drop what is left in the batches after a failure, so the cached statements can be reused.
+	 */
+	private void clearBatches(Collection<PreparedStatement> batches) {
+	  for (PreparedStatement statement : batches) {
+	    try {
+	      statement.clearBatch();
+	    } catch (SQLException e) {
+	      // the statement is unusable anyway
+	    }
+	  }
+	}
+
 	@Override
 	public int delete(String tableName, String key) {
 	  if (tableName == null) {
@@ -8,11 +8,8 @@ import com.yahoo.ycsb.DBException;
 
 import org.msgpack.MessagePack;
 import org.msgpack.annotation.Message;
-import org.msgpack.template.Template;
-import static org.msgpack.template.Templates.tList;
-import static org.msgpack.template.Templates.tMap;
-import static org.msgpack.template.Templates.TString;
-import static org.msgpack.template.Templates.*;
+import org.msgpack.packer.Packer;
+import org.msgpack.unpacker.Unpacker;
 
 import java.nio.ByteBuffer;
 import java.io.*;
@@ -43,8 +40,49 @@ public class MyBasicDB extends DB {
     public static class Server {
         // public fields are serialized.
         public Socket socket = null;
-        public DataOutputStream out = null;
-        public DataInputStream in = null;
+        public OutputStream out = null;
+
+        // a codec per connection, with the OPTIONS template registered up front; the other
+        // messages are encoded and decoded by hand, into buffers reused by every operation
+        MessagePack codec = null;
+        ByteArrayOutputStream frame = null;
+        Packer packer = null;
+        Unpacker unpacker = null;
+        byte[] scratch = new byte[BUFFER_SIZE_OK];
+
+        byte[] scratch(int len) {
+            if (scratch.length < len) {
+                scratch = new byte[Math.max(len, scratch.length * 2)];
+            }
+            return scratch;
+        }
+
+        // Sends the message written to the frame.
+        void send() throws IOException {
+            packer.flush();
+            frame.writeTo(out);
+        }
+
+        // Reads a response that is only [status], without a message object.
+        int readStatus() throws IOException {
+            unpacker.readArrayBegin();
+            boolean ok = unpacker.readString().equals("OK");
+            unpacker.readArrayEnd();
+            return ok ? OK : ERROR;
+        }
+
+        // Called after an error, when the stream may be left in the middle of a message:
+        // later operations on the server fail rather than read the rest of it as a response.
+        void close() {
+            if (socket == null) {
+                return;
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                System.out.println(e);
+            }
+        }
     }
 
     @Message // Annotation
@@ -56,53 +94,6 @@ public class MyBasicDB extends DB {
         public int node_failure_rate;
     }
 
-    @Message // Annotation
-    public static class GET {
-        // public fields are serialized.
-        public String code = "GET";
-        public String table;
-        public String key;
-    }
-
-    @Message // Annotation
-    public static class PUT {
-        // public fields are serialized.
-        public String code = "PUT";
-        public String table;
-        public String key;
-        public HashMap<String,byte[]> value;
-    }
-
-    @Message // Annotation
-    public static class UPDATE {
-        // public fields are serialized.
-        public String code = "UPDATE";
-        public String table;
-        public String key;
-        public HashMap<String,byte[]> value;
-    }
-
-    @Message // Annotation
-    public static class DELETE {
-        // public fields are serialized.
-        public String code = "DELETE";
-        public String table;
-        public String key;
-    }
-
-    @Message // Annotation
-    public static class GET_RESPONSE {
-        // public fields are serialized.
-        public String status;
-        public HashMap<String,byte[]> value;
-    }
-
-    @Message // Annotation
-    public static class UPD_RESPONSE {
-        // public fields are serialized.
-        public String status;
-    }
-
     @Override
     public void init() throws DBException {
 
@@ -127,127 +118,75 @@ public class MyBasicDB extends DB {
     //Read a single record
     @Override
     public int read(String table, String key, Set<String> fields, HashMap<String,ByteIterator> result) {
-        int result_db = ERROR;
         // System.out.println("GET key:"+table+key);
+        Server s = getServer();
         try {
-            Server s = getServer();
-
-            GET get = new GET();
-            get.table = table;
-            get.key = key;
-
-            MessagePack msgpack = new MessagePack();
-            byte[] raw = msgpack.write(get);
-            s.out.write(raw);
-
-            byte[] res = new byte[BUFFER_SIZE];
-            int len = s.in.read(res);
-            if(len == -1) return ERROR;
-            byte[] res2 = Arrays.copyOf(res, len);
-            GET_RESPONSE res3 = msgpack.read(res2, GET_RESPONSE.class);
-            // System.out.println("1: Received : st: " + res3.status + " val:" + res3.value.toString());
-            if(res3.status.equals("OK")) {
-                deserialize(res3.value, result);
-                // System.out.println("2: Received : st: " + res3.status + " val:" + result.toString());
-                result_db = OK;
+            // [GET, table, key]
+            s.frame.reset();
+            Packer pk = s.packer;
+            pk.writeArrayBegin(3);
+            pk.write("GET");
+            pk.write(table);
+            pk.write(key);
+            pk.writeArrayEnd();
+            s.send();
+
+            // [status, {field: value}], decoded straight into the result
+            Unpacker u = s.unpacker;
+            u.readArrayBegin();
+            boolean ok = u.readString().equals("OK");
+            if(!u.trySkipNil()) {
+                int n = u.readMapBegin();
+                for(int i = 0; i < n; i++) {
+                    String field = u.readString();
+                    byte[] value = u.readByteArray();
+                    if(ok) {
+                        result.put(field, new ByteArrayByteIterator(value));
+                    }
+                }
+                u.readMapEnd();
             }
+            u.readArrayEnd();
+            return ok ? OK : ERROR;
         } catch(Exception e) {
             e.printStackTrace();
+            s.close();
             return ERROR;
         }
-        return result_db;
     }
 
     //Insert a single record
     @Override
     public int insert(String table, String key, HashMap<String,ByteIterator> values) {
-        int result_db = ERROR;
-        try {
-            Server s = getServer();
-
-            PUT put = new PUT();
-            put.table = table;
-            put.key = key;
-            put.value = serialize(values);
-
-            MessagePack msgpack = new MessagePack();
-            byte[] raw = msgpack.write(put);
-            s.out.write(raw);
-
-            byte[] res = new byte[BUFFER_SIZE_OK];
-            int len = s.in.read(res);
-            if(len == -1) return ERROR;
-            byte[] res2 = Arrays.copyOf(res, len);
-            UPD_RESPONSE res3 = msgpack.read(res2, UPD_RESPONSE.class);
-            if(res3.status.equals("OK")) {
-                result_db = OK;
-            }
-        } catch(Exception e) {
-            e.printStackTrace();
-            return ERROR;
-        }
-        return result_db;
+        return write("PUT", table, key, values);
     }
 
     //Update a single record
     @Override
     public int update(String table, String key, HashMap<String,ByteIterator> values) {
-        int result_db = ERROR;
-        try {
-            Server s = getServer();
-
-            UPDATE put = new UPDATE();
-            put.table = table;
-            put.key = key;
-            put.value = serialize(values);
-
-            MessagePack msgpack = new MessagePack();
-            byte[] raw = msgpack.write(put);
-            s.out.write(raw);
-
-            byte[] res = new byte[BUFFER_SIZE_OK];
-            int len = s.in.read(res);
-            if(len == -1) return ERROR;
-            byte[] res2 = Arrays.copyOf(res, len);
-            UPD_RESPONSE res3 = msgpack.read(res2, UPD_RESPONSE.class);
-            if(res3.status.equals("OK")) {
-                result_db = OK;
-            }
-        } catch(Exception e) {
-            e.printStackTrace();
-            return ERROR;
-        }
-        return result_db;
+        return write("UPDATE", table, key, values);
     }
 
     //Delete a single record
     @Override
     public int delete(String table, String key) {
-        int result_db = ERROR;
+        Server s = getServer();
         try {
-            Server s = getServer();
-
-            DELETE put = new DELETE();
-            put.table = table;
-            put.key = key;
-
-            MessagePack msgpack = new MessagePack();
-            byte[] raw = msgpack.write(put);
-            s.out.write(raw);
-
-            byte[] res = new byte[BUFFER_SIZE_OK];
-            int len = s.in.read(res);
-            if(len == -1) return ERROR;
-            byte[] res2 = Arrays.copyOf(res, len);
-            UPD_RESPONSE res3 = msgpack.read(res2, UPD_RESPONSE.class);
-            if(res3.status.equals("OK")) {
-                result_db = OK;
-            }
+            // [DELETE, table, key]
+            s.frame.reset();
+            Packer pk = s.packer;
+            pk.writeArrayBegin(3);
+            pk.write("DELETE");
+            pk.write(table);
+            pk.write(key);
+            pk.writeArrayEnd();
+            s.send();
+            return s.readStatus();
         } catch(Exception e) {
             e.printStackTrace();
+            s.close();
             return ERROR;
         }
-        return result_db;
     }
 
     //Perform a range scan
@@ -260,15 +199,8 @@ public class MyBasicDB extends DB {
     public void cleanup() throws DBException {
         // turn off killing nodes
         setDBOptions(BASIC_SYNC_INTERVAL_DEFAULT, BASIC_REPLICATION_FAILURE_RATE_DEFAULT, "0");
-        try {
-            for(Server s : this.servers) {
-                s.out.close();
-                s.in.close();
-                s.socket.close();
-            }
-        }
-        catch (IOException e) {
-            System.out.println(e);
+        for(Server s : this.servers) {
+            s.close();
         }
     }
 
@@ -285,8 +217,12 @@ public class MyBasicDB extends DB {
             try {
                 s.socket = new Socket(ip, port);
                 // s.socket.setSendBufferSize(BUFFER_SIZE);
-                s.out = new DataOutputStream(s.socket.getOutputStream());
-                s.in = new DataInputStream(s.socket.getInputStream());
+                s.out = s.socket.getOutputStream();
+                s.codec = new MessagePack();
+                s.codec.register(OPTIONS.class);
+                s.frame = new ByteArrayOutputStream(BUFFER_SIZE);
+                s.packer = s.codec.createPacker(s.frame);
+                s.unpacker = s.codec.createUnpacker(new BufferedInputStream(s.socket.getInputStream(), BUFFER_SIZE));
             } catch (UnknownHostException e) {
                 System.err.println("Don't know about host: "+h);
             } catch (IOException e) {
@@ -309,16 +245,10 @@ public class MyBasicDB extends DB {
                 opt.replication_failure_rate = repl;
                 opt.node_failure_rate = node;
 
-                MessagePack msgpack = new MessagePack();
-                byte[] raw = msgpack.write(opt);
-                s.out.write(raw);
-
-                byte[] res = new byte[BUFFER_SIZE_OK];
-                int len = s.in.read(res);
-                if(len == -1) return;
-                byte[] res2 = Arrays.copyOf(res, len);
-                UPD_RESPONSE res3 = msgpack.read(res2, UPD_RESPONSE.class);
-                if(res3.status.equals("OK")) {
+                s.frame.reset();
+                s.packer.write(opt);
+                s.send();
+                if(s.readStatus() == OK) {
                     // System.out.println("OPTIONS for |"+host+"| => sync:"+sync+" repl fail:"+repl+" node fail:"+node);
                 } else {
                     System.out.println("OPTIONS not set for |"+host+"|");
@@ -330,17 +260,38 @@ public class MyBasicDB extends DB {
     }
 
 
-    private HashMap<String, byte[]> serialize(Map<String,ByteIterator> values) {
-      HashMap<String, byte[]> retVal = new HashMap<String, byte[]>();
-      for (String key : values.keySet()) {
-        retVal.put(key, values.get(key).toArray());
-      }
-      return retVal;
-    }
-
-    private void deserialize(Map<String, byte[]> ori, Map<String, ByteIterator> des) {
-        for (String k : ori.keySet()) {
-            des.put(k, new ByteArrayByteIterator(ori.get(k)));
+    // Writes a PUT or UPDATE message without building a map of the values: each value goes
+    // from its ByteIterator to the reused frame, through the scratch array.
+    private int write(String code, String table, String key, Map<String,ByteIterator> values) {
+        Server s = getServer();
+        try {
+            // [PUT or UPDATE, table, key, {field: value}]
+            s.frame.reset();
+            Packer pk = s.packer;
+            pk.writeArrayBegin(4);
+            pk.write(code);
+            pk.write(table);
+            pk.write(key);
+            pk.writeMapBegin(values.size());
+            for(Map.Entry<String,ByteIterator> entry : values.entrySet()) {
+                pk.write(entry.getKey());
+                ByteIterator value = entry.getValue();
+                int len = (int) value.bytesLeft();
+                byte[] scratch = s.scratch(len);
+                int off = 0;
+                while(off < len) {
+                    off = value.nextBuf(scratch, off);
+                }
+                pk.write(scratch, 0, len);
+            }
+            pk.writeMapEnd();
+            pk.writeArrayEnd();
+            s.send();
+            return s.readStatus();
+        } catch(Exception e) {
+            e.printStackTrace();
+            s.close();
+            return ERROR;
         }
     }
 
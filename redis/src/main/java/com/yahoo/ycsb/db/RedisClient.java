@@ -28,6 +28,7 @@ import com.yahoo.ycsb.DBException;
 import com.yahoo.ycsb.ByteIterator;
 import com.yahoo.ycsb.StringByteIterator;
 
+import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -37,7 +38,9 @@ import java.util.Set;
 import java.util.Vector;
 
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
 import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Response;
 
 public class RedisClient extends DB {
 
@@ -129,6 +132,81 @@ public class RedisClient extends DB {
         return jedis.hmset(key, StringByteIterator.getStringMap(values)).equals("OK") ? 0 : 1;
     }
 
+    /* The batch operations send all their commands in a single pipeline,
+     * and only wait for the replies once all of them are sent.
+     */
+
+    @Override
+    public int batchRead(String table, List<String> keys, Set<String> fields,
+            List<HashMap<String, ByteIterator>> results) {
+        Pipeline pipeline = jedis.pipelined();
+        String[] fieldArray = fields == null ? null : (String[])fields.toArray(new String[fields.size()]);
+        List<Response<Map<String, String>>> all = new ArrayList<Response<Map<String, String>>>();
+        List<Response<List<String>>> some = new ArrayList<Response<List<String>>>();
+        for (String key : keys) {
+            if (fields == null) {
+                all.add(pipeline.hgetAll(key));
+            }
+            else {
+                some.add(pipeline.hmget(key, fieldArray));
+            }
+        }
+        pipeline.sync();
+
+        int res = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            HashMap<String, ByteIterator> result = results.get(i);
+            if (fields == null) {
+                StringByteIterator.putAllAsByteIterators(result, all.get(i).get());
+            }
+            else {
+                Iterator<String> valueIterator = some.get(i).get().iterator();
+                for (String field : fieldArray) {
+                    result.put(field, new StringByteIterator(valueIterator.next()));
+                }
+            }
+            if (result.isEmpty()) {
+                res = 1;
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public int batchInsert(String table, List<String> keys,
+            List<HashMap<String, ByteIterator>> values) {
+        Pipeline pipeline = jedis.pipelined();
+        List<Response<String>> replies = new ArrayList<Response<String>>();
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            replies.add(pipeline.hmset(key, StringByteIterator.getStringMap(values.get(i))));
+            pipeline.zadd(INDEX_KEY, hash(key), key);
+        }
+        pipeline.sync();
+        return allOK(replies);
+    }
+
+    @Override
+    public int batchUpdate(String table, List<String> keys,
+            List<HashMap<String, ByteIterator>> values) {
+        Pipeline pipeline = jedis.pipelined();
+        List<Response<String>> replies = new ArrayList<Response<String>>();
+        for (int i = 0; i < keys.size(); i++) {
+            replies.add(pipeline.hmset(keys.get(i), StringByteIterator.getStringMap(values.get(i))));
+        }
+        pipeline.sync();
+        return allOK(replies);
+    }
+
+    private static int allOK(List<Response<String>> replies) {
+        for (Response<String> reply : replies) {
+            if (!"OK".equals(reply.get())) {
+                return 1;
+            }
+        }
+        return 0;
+    }
+
     @Override
     public int scan(String table, String startkey, int recordcount,
             Set<String> fields, Vector<HashMap<String, ByteIterator>> result) {